@@ -0,0 +1,507 @@
+package ie.atu.sw;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+import org.encog.ml.data.basic.BasicMLData;
+import org.encog.neural.networks.BasicNetwork;
+import org.encog.persist.EncogDirectoryPersistence;
+
+/*
+ * A small JMH style benchmark suite for the simulation, feature sampling and
+ * inference. The project has no build file to pull JMH in with, so this
+ * follows JMH's methodology by hand:
+ *
+ *   Forks     every benchmark runs, once for each combination of the
+ *             parameters, in forks fresh JVMs of its own (-f, 2 by default).
+ *             Otherwise the benchmarks that ran first would decide what the
+ *             JIT makes of the shared measuring loop, which goes megamorphic
+ *             once it has called a few different operations, and a score
+ *             would depend on the order and on the filter. The JVM options of
+ *             this JVM are passed on to the forks.
+ *   Warm up   each fork runs -wi untimed iterations before the -i timed ones,
+ *             each of them -r milliseconds long, so the code is compiled.
+ *   Sink      the result of every call goes into a Blackhole, which the JIT
+ *             cannot see through, so it cannot drop a call as dead code.
+ *   Score     throughput in operations per second, the mean over the timed
+ *             iterations of every fork with a 99.9% confidence interval.
+ *   B/op      the bytes the measuring thread allocated per operation over
+ *             the timed iterations, like JMH's gc.alloc.rate.norm, which is
+ *             what the allocation-free paths such as CompiledNetwork save
+ *             even where their throughput is bound by the same Math.tanh.
+ *
+ * The time of an iteration is read from the clock every CALLS_PER_CHECK
+ * calls, so the clock adds nothing measurable to the scores.
+ *
+ * Every benchmark is run once for each combination of the parameters:
+ *
+ *   width    the number of columns in the grid
+ *   height   the number of rows in the grid
+ *   horizon  the number of columns ahead of the plane that are scanned or sampled
+ *
+ * The results can be written as JSON in the same layout as JMH's -rf json
+ * output, so they can be compared between commits with the usual JMH tools.
+ *
+ * Usage: Benchmarks [regex] [-f n] [-wi n] [-i n] [-r ms] [-p name=v1,v2,...] [-rff file]
+ */
+public class Benchmarks {
+	private static final double Z_999 = 3.291; // Two sided z value for 99.9% confidence
+	private static final int CALLS_PER_CHECK = 256; // Calls between reads of the clock
+
+	private static final int BATCH_ROWS = 256; // Rows in each call of the batch benchmarks
+
+	private static final String MODEL_FILE = "resources/trainingModel.eg";
+	// How a fork reports back, each on a line of its own
+	private static final String FORK_SCORES = "# Fork scores:";
+	private static final String FORK_ALLOCATION = "# Fork bytes per op:";
+
+	// A single operation under test. It returns a value for the Blackhole so the JIT cannot discard it.
+	interface Operation {
+		long run();
+	}
+
+	/*
+	 * Consumes the results the way JMH's Blackhole does. The two volatile
+	 * fields are never equal, but the JIT cannot know that, so it has to
+	 * compute every value to compare it with them.
+	 */
+	static final class Blackhole {
+		private volatile long l1 = 0x5eed;
+		private volatile long l2 = ~0x5eedL;
+		volatile long bait;
+
+		void consume(long value) {
+			if (value == l1 & value == l2) {
+				bait = value; // Never happens
+			}
+		}
+	}
+
+	// A benchmark creates its operation from the parameters. Each call of the
+	// operation counts as opsPerCall operations.
+	record Benchmark(String name, int opsPerCall, Function<Map<String, Integer>, Operation> setup) {
+	}
+
+	// The throughput of each timed iteration, one array per fork, and the bytes allocated per operation
+	record Result(double[][] scores, double bytesPerOp) {
+	}
+
+	private final List<Benchmark> benchmarks = new ArrayList<>();
+	private final BasicNetwork network;
+	private final Blackhole blackhole = new Blackhole();
+
+	private int forks = 2;
+	private int warmupIterations = 5;
+	private int iterations = 5;
+	private long iterationMillis = 1000;
+	private long calls; // The calls made by the last iteration
+
+	public Benchmarks() {
+		// Use the trained model when there is one, otherwise a fresh 5-34-12-3 network
+		network = new File(MODEL_FILE).exists()
+				? (BasicNetwork) EncogDirectoryPersistence.loadObject(new File(MODEL_FILE))
+				: new NeuralNetworkTrainer().createNetwork();
+
+		benchmarks.add(new Benchmark("generateNext", 1, p -> {
+			var sim = simulation(p);
+			return () -> {
+				sim.generateNext();
+				return sim.getGrid().openingTop(p.get("width") - 1, 0);
+			};
+		}));
+
+		benchmarks.add(new Benchmark("sample", 1, p -> {
+			var sim = simulation(p);
+			var vector = new double[sim.getFeatureCount()];
+			return () -> Double.doubleToRawLongBits(sim.sample(vector)[0]);
+		}));
+
+		benchmarks.add(new Benchmark("sampleLookahead", 1, p -> {
+			var sim = simulation(p);
+			int horizon = Math.min(p.get("horizon"), sim.getWidth() - sim.getPlayerColumn() - 1);
+			sim.setFeatures(new LookaheadFeatures(horizon, LookaheadFeatures.DEFAULT_HISTORY));
+			var vector = new double[sim.getFeatureCount()];
+			return () -> Double.doubleToRawLongBits(sim.sample(vector)[0]);
+		}));
+
+		benchmarks.add(new Benchmark("scanHorizon", 1, p -> {
+			var sim = simulation(p);
+			var grid = sim.getGrid();
+			int horizon = Math.min(p.get("horizon"), grid.getWidth() - sim.getPlayerColumn() - 1);
+			return () -> {
+				// The gap above and below the plane in every column of the horizon
+				long sum = 0;
+				int row = sim.getPlayerRow();
+				for (int x = 1; x <= horizon; x++) {
+					int column = sim.getPlayerColumn() + x;
+					sum += grid.gapAbove(column, row) + grid.gapBelow(column, row);
+				}
+				return sum;
+			};
+		}));
+
+		benchmarks.add(new Benchmark("getMaxIndex", 1, p -> {
+			var outputs = new double[][] { { 0.9, 0.1, -0.3 }, { -0.2, 0.7, 0.1 }, { 0.1, 0.2, 0.8 } };
+			int[] i = { 0 };
+			return () -> NetworkAutopilot.getMaxIndex(outputs[i[0]++ % outputs.length]);
+		}));
+
+		benchmarks.add(new Benchmark("encogCompute", 1, p -> {
+			var net = (BasicNetwork) network.clone();
+			var vector = simulation(p).sample();
+			return () -> Double.doubleToRawLongBits(net.compute(new BasicMLData(vector)).getData(0));
+		}));
+
+		benchmarks.add(new Benchmark("compiledCompute", 1, p -> {
+			var net = new CompiledNetwork(network);
+			var vector = simulation(p).sample();
+			return () -> Double.doubleToRawLongBits(net.compute(vector)[0]);
+		}));
+
+		benchmarks.add(new Benchmark("compiledComputeFastTanh", 1, p -> {
+			var net = new CompiledNetwork(network, true);
+			var vector = simulation(p).sample();
+			return () -> Double.doubleToRawLongBits(net.compute(vector)[0]);
+		}));
+
+		// Batches of states, counted in rows, through the scalar loops and the SIMD kernel
+		benchmarks.add(new Benchmark("compiledBatch", BATCH_ROWS, p -> batch(p, false)));
+		if (CompiledNetwork.VECTOR_API) {
+			benchmarks.add(new Benchmark("vectorBatch", BATCH_ROWS, p -> batch(p, true)));
+		}
+
+		// Whole episodes, counted in ticks. A crashed plane starts a new cave.
+		int ticksPerCall = 1000;
+		benchmarks.add(new Benchmark("episodeTicks", ticksPerCall, p -> {
+			var sim = simulation(p);
+			var pilot = new NetworkAutopilot(network);
+			long[] seed = { 0 };
+			return () -> {
+				for (int t = 0; t < ticksPerCall; t++) {
+					if (!sim.step(pilot)) {
+						sim.reset(++seed[0]);
+					}
+				}
+				return sim.getTime();
+			};
+		}));
+
+		// The planners, in ticks, each one searching every column ahead of the plane
+		benchmarks.add(
+				new Benchmark("plannerTicks", ticksPerCall, p -> episodes(p, new PlannerAutopilot(), ticksPerCall)));
+		benchmarks.add(new Benchmark("oracleTicks", ticksPerCall, p -> episodes(p, new OraclePlanner(), ticksPerCall)));
+	}
+
+	// Flies the autopilot for the given number of ticks per call. A crashed plane starts a new cave.
+	private static Operation episodes(Map<String, Integer> params, Autopilot pilot, int ticks) {
+		var sim = simulation(params);
+		long[] seed = { 0 };
+		return () -> {
+			for (int t = 0; t < ticks; t++) {
+				if (!sim.step(pilot)) {
+					sim.reset(++seed[0]);
+				}
+			}
+			return sim.getTime();
+		};
+	}
+
+	// A simulation of the size given by the parameters with a full cavern
+	private static Simulation simulation(Map<String, Integer> params) {
+		var sim = new Simulation(params.get("width"), params.get("height"), 42L);
+		for (int i = 0; i < sim.getWidth(); i++) {
+			sim.generateNext();
+		}
+		return sim;
+	}
+
+	// Runs a batch of states from a flight through the cavern through the network in one call
+	private Operation batch(Map<String, Integer> params, boolean vectorized) {
+		var net = new CompiledNetwork(network);
+		net.setVectorized(vectorized);
+		var sim = simulation(params);
+		var pilot = new NetworkAutopilot(network);
+		int n = net.getInputCount();
+		var inputs = new double[BATCH_ROWS * n];
+		var outputs = new double[BATCH_ROWS * net.getOutputCount()];
+		for (int r = 0; r < BATCH_ROWS; r++) {
+			System.arraycopy(sim.sample(), 0, inputs, r * n, n);
+			if (!sim.step(pilot)) {
+				sim.reset();
+			}
+		}
+		return () -> {
+			net.computeBatch(inputs, outputs, BATCH_ROWS);
+			return Double.doubleToRawLongBits(outputs[0]);
+		};
+	}
+
+	/*
+	 * Runs a benchmark with one set of parameters in each of the forks and
+	 * returns the throughput of each measured iteration of each fork, in
+	 * operations per second.
+	 */
+	private Result fork(Benchmark benchmark, Map<String, Integer> params) throws IOException, InterruptedException {
+		List<String> command = new ArrayList<>();
+		command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+		for (var option : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+			if (!option.startsWith("-Djdk.module.") && !option.startsWith("-Djava.class.path=")) {
+				command.add(option); // The launcher puts these in itself
+			}
+		}
+		var modulePath = System.getProperty("jdk.module.path");
+		if (Benchmarks.class.getModule().isNamed() && modulePath != null) {
+			command.addAll(List.of("-p", modulePath, "-m",
+					Benchmarks.class.getModule().getName() + "/" + Benchmarks.class.getName()));
+		} else {
+			command.addAll(List.of("-cp", System.getProperty("java.class.path"), Benchmarks.class.getName()));
+		}
+		command.addAll(List.of("-fork", benchmark.name(), "-wi", String.valueOf(warmupIterations), "-i",
+				String.valueOf(iterations), "-r", String.valueOf(iterationMillis)));
+		for (var param : params.entrySet()) {
+			command.addAll(List.of("-p", param.getKey() + "=" + param.getValue()));
+		}
+
+		var scores = new double[forks][];
+		double bytesPerOp = 0;
+		for (int f = 0; f < forks; f++) {
+			var process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+			var output = new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8);
+			try (var out = new BufferedReader(output)) {
+				String line;
+				while ((line = out.readLine()) != null) {
+					if (line.startsWith(FORK_SCORES)) {
+						scores[f] = parseScores(line.substring(FORK_SCORES.length()));
+					} else if (line.startsWith(FORK_ALLOCATION)) {
+						bytesPerOp += Double.parseDouble(line.substring(FORK_ALLOCATION.length()).trim()) / forks;
+					}
+				}
+			}
+			int exit = process.waitFor();
+			if (exit != 0 || scores[f] == null) {
+				throw new IOException("Fork " + (f + 1) + " of " + benchmark.name() + " " + params
+						+ " failed with exit code " + exit);
+			}
+		}
+		return new Result(scores, bytesPerOp);
+	}
+
+	/*
+	 * Runs a benchmark with one set of parameters in this JVM and returns the
+	 * throughput of each measured iteration in operations per second, followed
+	 * by the bytes allocated per operation.
+	 */
+	private double[] measure(Benchmark benchmark, Map<String, Integer> params) {
+		var op = benchmark.setup().apply(params);
+		for (int i = 0; i < warmupIterations; i++) {
+			iteration(op, benchmark.opsPerCall());
+		}
+
+		var threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		var scores = new double[iterations + 1];
+		long ops = 0;
+		long allocated = threads.getCurrentThreadAllocatedBytes();
+		for (int i = 0; i < iterations; i++) {
+			scores[i] = iteration(op, benchmark.opsPerCall());
+			ops += calls * benchmark.opsPerCall();
+		}
+		scores[iterations] = (double) (threads.getCurrentThreadAllocatedBytes() - allocated) / ops;
+		return scores;
+	}
+
+	// Calls the operation for iterationMillis and returns the operations per second
+	private double iteration(Operation op, int opsPerCall) {
+		var blackhole = this.blackhole;
+		long calls = 0;
+		long start = System.nanoTime();
+		long end = start + iterationMillis * 1_000_000;
+		long now;
+		do {
+			for (int i = 0; i < CALLS_PER_CHECK; i++) {
+				blackhole.consume(op.run());
+			}
+			calls += CALLS_PER_CHECK;
+			now = System.nanoTime();
+		} while (now < end);
+		this.calls = calls;
+		return calls * (double) opsPerCall / ((now - start) / 1e9);
+	}
+
+	// Every combination of the parameter values, in the order given
+	private static List<Map<String, Integer>> combinations(Map<String, int[]> params) {
+		List<Map<String, Integer>> result = new ArrayList<>();
+		result.add(new LinkedHashMap<>());
+		for (var param : params.entrySet()) {
+			List<Map<String, Integer>> next = new ArrayList<>();
+			for (var partial : result) {
+				for (int value : param.getValue()) {
+					var combination = new LinkedHashMap<>(partial);
+					combination.put(param.getKey(), value);
+					next.add(combination);
+				}
+			}
+			result = next;
+		}
+		return result;
+	}
+
+	private static int[] parseValues(String values) {
+		var parts = values.split(",");
+		var result = new int[parts.length];
+		for (int i = 0; i < parts.length; i++) {
+			result[i] = Integer.parseInt(parts[i].trim());
+		}
+		return result;
+	}
+
+	private static double[] parseScores(String scores) {
+		return Arrays.stream(scores.trim().split(" ")).mapToDouble(Double::parseDouble).toArray();
+	}
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		var suite = new Benchmarks();
+		Map<String, int[]> params = new LinkedHashMap<>();
+		params.put("width", new int[] { Simulation.MODEL_WIDTH });
+		params.put("height", new int[] { Simulation.MODEL_HEIGHT });
+		params.put("horizon", new int[] { 2 });
+		Pattern filter = Pattern.compile(".*");
+		String resultFile = null;
+		String forked = null; // The benchmark to run in this JVM when it is a fork
+
+		for (int i = 0; i < args.length; i++) {
+			switch (args[i]) {
+			case "-f" -> suite.forks = Integer.parseInt(args[++i]);
+			case "-fork" -> forked = args[++i];
+			case "-wi" -> suite.warmupIterations = Integer.parseInt(args[++i]);
+			case "-i" -> suite.iterations = Integer.parseInt(args[++i]);
+			case "-r" -> suite.iterationMillis = Long.parseLong(args[++i]);
+			case "-rff" -> resultFile = args[++i];
+			case "-p" -> {
+				var param = args[++i].split("=", 2);
+				if (!params.containsKey(param[0])) {
+					throw new IllegalArgumentException("Unknown parameter: " + param[0]);
+				}
+				params.put(param[0], parseValues(param[1]));
+			}
+			default -> filter = Pattern.compile(args[i]);
+			}
+		}
+		if (suite.forks < 1 || suite.iterations < 1 || suite.iterationMillis < 1) {
+			throw new IllegalArgumentException("Need at least 1 fork, 1 iteration and 1ms per iteration");
+		}
+
+		if (forked != null) {
+			// A fork runs a single benchmark with the single value of each parameter it was given
+			var name = forked;
+			var benchmark = suite.benchmarks.stream().filter(b -> b.name().equals(name)).findFirst()
+					.orElseThrow(() -> new IllegalArgumentException("Unknown benchmark: " + name));
+			var scores = suite.measure(benchmark, combinations(params).get(0));
+			var line = new StringBuilder(FORK_SCORES);
+			for (int i = 0; i < scores.length - 1; i++) {
+				line.append(' ').append(scores[i]);
+			}
+			System.out.println(line);
+			System.out.println(FORK_ALLOCATION + " " + scores[scores.length - 1]);
+			return;
+		}
+
+		var json = new StringBuilder("[\n");
+		System.out.printf("%-24s %-32s %4s %16s %14s  %-6s %10s%n", "Benchmark", "(params)", "Cnt", "Score", "Error",
+				"Units", "B/op");
+		for (var benchmark : suite.benchmarks) {
+			if (!filter.matcher(benchmark.name()).find()) {
+				continue;
+			}
+			for (var combination : combinations(params)) {
+				var result = suite.fork(benchmark, combination);
+				double[] scores = Arrays.stream(result.scores()).flatMapToDouble(Arrays::stream).toArray();
+				double mean = 0;
+				for (double s : scores) {
+					mean += s;
+				}
+				mean /= scores.length;
+				double variance = 0;
+				for (double s : scores) {
+					variance += (s - mean) * (s - mean);
+				}
+				double error = scores.length > 1 ? Z_999 * Math.sqrt(variance / (scores.length - 1) / scores.length)
+						: Double.NaN;
+
+				System.out.printf(Locale.ROOT, "%-24s %-32s %4d %16.1f %14.1f  ops/s  %10.1f%n", benchmark.name(),
+						combination, scores.length, mean, error, result.bytesPerOp());
+				appendJson(json, benchmark.name(), combination, result, scores.length, mean, error);
+			}
+		}
+		if (json.length() > 2) {
+			json.setLength(json.length() - 2); // Drop the trailing comma
+			json.append('\n');
+		}
+		json.append("]\n");
+
+		if (resultFile != null) {
+			try (var out = new FileWriter(resultFile)) {
+				out.write(json.toString());
+			}
+			System.out.println("Results written to " + resultFile);
+		}
+	}
+
+	// Appends one result in the layout of JMH's JSON output
+	private static void appendJson(StringBuilder json, String name, Map<String, Integer> params, Result result,
+			int count, double mean, double error) {
+		var scores = result.scores();
+		json.append("  {\n");
+		json.append("    \"benchmark\" : \"ie.atu.sw.Benchmarks.").append(name).append("\",\n");
+		json.append("    \"mode\" : \"thrpt\",\n");
+		json.append("    \"forks\" : ").append(scores.length).append(",\n");
+		json.append("    \"measurementIterations\" : ").append(count / scores.length).append(",\n");
+		json.append("    \"params\" : {");
+		var separator = " ";
+		for (var param : params.entrySet()) {
+			json.append(separator).append('"').append(param.getKey()).append("\" : \"").append(param.getValue())
+					.append('"');
+			separator = ", ";
+		}
+		json.append(" },\n");
+		json.append("    \"primaryMetric\" : {\n");
+		json.append("      \"score\" : ").append(number(mean)).append(",\n");
+		json.append("      \"scoreError\" : ").append(number(error)).append(",\n");
+		json.append("      \"scoreUnit\" : \"ops/s\",\n");
+		json.append("      \"rawData\" : [");
+		for (int f = 0; f < scores.length; f++) {
+			json.append(f == 0 ? " [" : ", [");
+			for (int i = 0; i < scores[f].length; i++) {
+				json.append(i == 0 ? " " : ", ").append(number(scores[f][i]));
+			}
+			json.append(" ]");
+		}
+		json.append(" ]\n");
+		json.append("    },\n");
+		json.append("    \"secondaryMetrics\" : {\n");
+		json.append("      \"gc.alloc.rate.norm\" : {\n");
+		json.append("        \"score\" : ").append(number(result.bytesPerOp())).append(",\n");
+		json.append("        \"scoreUnit\" : \"B/op\"\n");
+		json.append("      }\n");
+		json.append("    }\n");
+		json.append("  },\n");
+	}
+
+	// JSON has no NaN, so JMH writes it as a string
+	private static String number(double value) {
+		return Double.isNaN(value) ? "\"NaN\"" : String.format(Locale.ROOT, "%.3f", value);
+	}
+}
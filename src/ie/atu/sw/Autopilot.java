@@ -0,0 +1,11 @@
+package ie.atu.sw;
+
+/*
+ * Anything that can fly the plane. The simulation calls nextMove() once per
+ * tick, after the cavern has scrolled and before the collision check.
+ */
+@FunctionalInterface
+public interface Autopilot {
+	// Decide on a move: -1 (up), 0 (nowhere), 1 (down)
+	int nextMove(Simulation sim);
+}
@@ -0,0 +1,242 @@
+package ie.atu.sw;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.encog.ml.data.MLData;
+import org.encog.ml.data.MLDataPair;
+import org.encog.ml.data.MLDataSet;
+import org.encog.ml.data.basic.BasicMLData;
+import org.encog.ml.data.basic.BasicMLDataPair;
+
+/*
+ * Training data in a compact columnar binary file that is memory-mapped rather
+ * than read, so a dataset of tens of millions of ticks opens instantly and
+ * costs (almost) nothing on the heap. The file layout is little endian:
+ *
+ *   int    magic ("ATUB")
+ *   int    version
+ *   long   number of rows
+ *   int    number of features per row
+ *   int    number of classes
+ *   8      bytes reserved (header is 32 bytes)
+ *   float  features x rows values, one whole column per feature
+ *   byte   rows labels, each the index of the class (action + 1)
+ *
+ * The file is exposed to Encog as a read-only MLDataSet. Records are decoded
+ * straight from the mapped file into the pair passed to getRecord(), which is
+ * how Encog's trainers read their data, so no per-row objects are created.
+ * Each feature column is mapped on its own, so up to 2^29 rows are supported.
+ *
+ * Usage: BinaryDataSet <csvFile> <binFile> (converts a CSV file of samples)
+ */
+public class BinaryDataSet implements MLDataSet {
+	private static final int MAGIC = 0x41545542; // "ATUB"
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 32;
+	private static final int DEFAULT_CLASSES = 3; // up, stay, down
+
+	private final long rows;
+	private final int features;
+	private final int classes;
+	private final FloatBuffer[] columns;
+	private final ByteBuffer labels;
+
+	private BinaryDataSet(long rows, int features, int classes, FloatBuffer[] columns, ByteBuffer labels) {
+		this.rows = rows;
+		this.features = features;
+		this.classes = classes;
+		this.columns = columns;
+		this.labels = labels;
+	}
+
+	// Memory-maps a file written by convert()
+	public static BinaryDataSet open(Path path) throws IOException {
+		try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			var header = channel.map(MapMode.READ_ONLY, 0, HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+				throw new IOException("Not a binary data set: " + path);
+			}
+			long rows = header.getLong();
+			int features = header.getInt();
+			int classes = header.getInt();
+
+			// The mappings stay valid after the channel is closed
+			var columns = new FloatBuffer[features];
+			long offset = HEADER_SIZE;
+			for (int f = 0; f < features; f++) {
+				columns[f] = channel.map(MapMode.READ_ONLY, offset, rows * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN)
+						.asFloatBuffer();
+				offset += rows * Float.BYTES;
+			}
+			var labels = channel.map(MapMode.READ_ONLY, offset, rows);
+			return new BinaryDataSet(rows, features, classes, columns, labels);
+		}
+	}
+
+	/*
+	 * Converts a CSV file of samples (a header line, then the features and the
+	 * action of one sample per line) into the binary format. The CSV file is read
+	 * twice, once to size the output and once to fill it in, so the whole dataset
+	 * never has to fit on the heap.
+	 */
+	public static void convert(Path csv, Path bin) throws IOException {
+		long rows = 0;
+		int features;
+		try (var in = Files.newBufferedReader(csv)) {
+			features = in.readLine().split(",").length - 1;
+			while (nextLine(in) != null) {
+				rows++;
+			}
+		}
+
+		long size = HEADER_SIZE + rows * features * Float.BYTES + rows;
+		try (var channel = FileChannel.open(bin, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+				var in = Files.newBufferedReader(csv)) {
+			var header = channel.map(MapMode.READ_WRITE, 0, HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			header.putInt(MAGIC).putInt(VERSION).putLong(rows).putInt(features).putInt(DEFAULT_CLASSES);
+
+			var columns = new FloatBuffer[features];
+			for (int f = 0; f < features; f++) {
+				columns[f] = channel.map(MapMode.READ_WRITE, HEADER_SIZE + f * rows * Float.BYTES, rows * Float.BYTES)
+						.order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+			}
+			var labels = channel.map(MapMode.READ_WRITE, size - rows, rows);
+
+			in.readLine(); // Skip the header
+			String line;
+			int row = 0;
+			while ((line = nextLine(in)) != null) {
+				var values = line.split(",");
+				for (int f = 0; f < features; f++) {
+					columns[f].put(row, Float.parseFloat(values[f]));
+				}
+				int action = (int) Double.parseDouble(values[features]);
+				labels.put(row, (byte) (action + 1)); // Actions -1, 0, 1 become classes 0, 1, 2
+				row++;
+			}
+		}
+	}
+
+	// Reads the next line that is not blank
+	private static String nextLine(BufferedReader in) throws IOException {
+		String line;
+		while ((line = in.readLine()) != null && line.isBlank()) {
+			// Skip blank lines
+		}
+		return line;
+	}
+
+	// Returns the value of feature f in the given row
+	public float getFeature(long row, int f) {
+		return columns[f].get((int) row);
+	}
+
+	// Returns the class index of the given row
+	public int getLabel(long row) {
+		return labels.get((int) row);
+	}
+
+	/*
+	 * Decodes a row into the input and ideal arrays of the pair, with the label
+	 * one-hot encoded. Reads only use absolute positions, so any number of
+	 * threads can share the mapped buffers.
+	 */
+	public void getRecord(long index, MLDataPair pair) {
+		int row = (int) index;
+		double[] input = pair.getInputArray();
+		for (int f = 0; f < features; f++) {
+			input[f] = columns[f].get(row);
+		}
+		double[] ideal = pair.getIdealArray();
+		int label = labels.get(row);
+		for (int c = 0; c < classes; c++) {
+			ideal[c] = c == label ? 1 : 0;
+		}
+		pair.setSignificance(1.0);
+	}
+
+	public int getIdealSize() {
+		return classes;
+	}
+
+	public int getInputSize() {
+		return features;
+	}
+
+	public boolean isSupervised() {
+		return true;
+	}
+
+	public long getRecordCount() {
+		return rows;
+	}
+
+	// The mapped buffers are read-only and thread safe, so they can be shared
+	public MLDataSet openAdditional() {
+		return new BinaryDataSet(rows, features, classes, columns, labels);
+	}
+
+	public void add(MLData data) {
+		throw new UnsupportedOperationException("Binary data sets are read-only");
+	}
+
+	public void add(MLData input, MLData ideal) {
+		throw new UnsupportedOperationException("Binary data sets are read-only");
+	}
+
+	public void add(MLDataPair pair) {
+		throw new UnsupportedOperationException("Binary data sets are read-only");
+	}
+
+	public void close() {
+		// The mapping is released when the buffers are garbage collected
+	}
+
+	public int size() {
+		return (int) rows;
+	}
+
+	// Returns a new pair holding the given row
+	public MLDataPair get(int index) {
+		var pair = new BasicMLDataPair(new BasicMLData(features), new BasicMLData(classes));
+		getRecord(index, pair);
+		return pair;
+	}
+
+	public Iterator<MLDataPair> iterator() {
+		return new Iterator<>() {
+			private int next = 0;
+
+			public boolean hasNext() {
+				return next < rows;
+			}
+
+			public MLDataPair next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				return get(next++);
+			}
+		};
+	}
+
+	public static void main(String[] args) throws IOException {
+		long start = System.nanoTime();
+		convert(Path.of(args[0]), Path.of(args[1]));
+		var data = open(Path.of(args[1]));
+		System.out.println("Converted " + data.getRecordCount() + " rows of " + data.getInputSize() + " features to "
+				+ args[1] + " in " + (System.nanoTime() - start) / 1_000_000 + "ms");
+	}
+}
@@ -0,0 +1,48 @@
+package ie.atu.sw;
+
+/*
+ * Decides the shape of each new column of the cavern. A column is described by
+ * its opening: the rows from getTop() (inclusive) to getBottom() (exclusive) are
+ * carved out and everything else is wall. A generator that forks the cave into
+ * several lanes describes each opening of the column, from the top down, with
+ * getOpeningCount(), getTop(i) and getBottom(i).
+ *
+ * A generator created from the same seed must always produce the same sequence
+ * of columns, so that any episode can be replayed.
+ */
+public interface CavernGenerator {
+	// Works out the opening of the next column
+	void next();
+
+	// The first open row of the last column generated
+	int getTop();
+
+	// The first solid row below the opening of the last column generated
+	int getBottom();
+
+	// The number of openings in the last column generated
+	default int getOpeningCount() {
+		return 1;
+	}
+
+	// The first open row of opening i of the last column generated
+	default int getTop(int i) {
+		return getTop();
+	}
+
+	// The first solid row below opening i of the last column generated
+	default int getBottom(int i) {
+		return getBottom();
+	}
+
+	// The most openings a column can ever have
+	default int getMaxOpenings() {
+		return 1;
+	}
+
+	// The seed the current sequence of columns was generated from
+	long getSeed();
+
+	// Starts a new sequence of columns from the given seed
+	void reseed(long seed);
+}
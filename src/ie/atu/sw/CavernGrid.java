@@ -0,0 +1,277 @@
+package ie.atu.sw;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/*
+ * The game grid as a fixed ring buffer of columns. Each column is packed into
+ * as many longs as it needs, with bit y set when row y is wall, so the grid can
+ * be any number of rows high and a 20 row column is still a single word.
+ * Scrolling the cavern only moves the head of the ring, and any column on
+ * screen is found in constant time from the head offset.
+ *
+ * Screen column 0 is the oldest column on the left and column width - 1 is the
+ * newest one on the right. Anything outside of the grid counts as wall to
+ * isSolid() and has no gap above or below it. The methods that read whole
+ * columns throw an IndexOutOfBoundsException for a column off the grid.
+ *
+ * A column can have several openings when the cave forks. The bounds of every
+ * opening are kept next to the bits when the column is carved, so code that
+ * looks far ahead (see LookaheadFeatures) or draws whole columns (see
+ * CavernRenderer) reads them back instead of scanning the bits again.
+ */
+public class CavernGrid {
+	private final int width;
+	private final int height;
+	private final int words; // The longs in each column
+	private final int maxOpenings;
+
+	private final long[] columns; // The words of each column in the ring, one after another
+	private final int[] tops; // The first open row of each opening, maxOpenings per column
+	private final int[] bottoms; // The row below the last open row of each opening
+	private final int[] openings; // The number of openings in each column
+	private int head; // The index of screen column 0 in the ring
+
+	public CavernGrid(int width, int height) {
+		this(width, height, 1);
+	}
+
+	public CavernGrid(int width, int height, int maxOpenings) {
+		if (width < 1 || height < 1 || maxOpenings < 1) {
+			throw new IllegalArgumentException("Grid must be at least 1x1 with 1 opening: " + width + "x" + height
+					+ ", " + maxOpenings + " openings");
+		}
+		this.width = width;
+		this.height = height;
+		this.words = (height + Long.SIZE - 1) / Long.SIZE;
+		this.maxOpenings = maxOpenings;
+		this.columns = new long[width * words];
+		this.tops = new int[width * maxOpenings];
+		this.bottoms = new int[width * maxOpenings];
+		this.openings = new int[width];
+		clear();
+	}
+
+	// A copy of the grid that does not change when this one does
+	private CavernGrid(CavernGrid other) {
+		this.width = other.width;
+		this.height = other.height;
+		this.words = other.words;
+		this.maxOpenings = other.maxOpenings;
+		this.columns = other.columns.clone();
+		this.tops = other.tops.clone();
+		this.bottoms = other.bottoms.clone();
+		this.openings = other.openings.clone();
+		this.head = other.head;
+	}
+
+	/*
+	 * Scrolls the cavern one column to the left. The oldest column drops off the
+	 * left of the screen and a new column is added on the right, with everything
+	 * outside of the rows from top (inclusive) to bottom (exclusive) filled in.
+	 */
+	public void push(int top, int bottom) {
+		pushWall();
+		carve(top, bottom);
+	}
+
+	// Scrolls the cavern one column to the left and adds a column of solid wall, ready to be carved
+	public void pushWall() {
+		int c = head;
+		head = (head + 1 == width) ? 0 : head + 1;
+		int from = c * words;
+		Arrays.fill(columns, from, from + words, -1L);
+		int spare = words * Long.SIZE - height;
+		if (spare > 0) {
+			columns[from + words - 1] = -1L >>> spare; // No bits beyond the last row
+		}
+		openings[c] = 0;
+	}
+
+	/*
+	 * Opens the rows from top (inclusive) to bottom (exclusive) of the newest
+	 * column. The openings of a column must be carved from the top down and must
+	 * not touch, or they would be a single opening.
+	 */
+	public void carve(int top, int bottom) {
+		int c = index(width - 1);
+		int n = openings[c];
+		if (n == maxOpenings) {
+			throw new IllegalStateException("A column can only have " + maxOpenings + " openings");
+		}
+		top = Math.max(0, top);
+		bottom = Math.min(height, bottom);
+		for (int y = top; y < bottom;) {
+			int w = y >>> 6;
+			int end = Math.min(bottom, (w + 1) << 6);
+			long mask = rowsBelow(end - (w << 6)) & ~rowsBelow(y - (w << 6));
+			columns[c * words + w] &= ~mask;
+			y = end;
+		}
+		tops[c * maxOpenings + n] = top;
+		bottoms[c * maxOpenings + n] = bottom;
+		openings[c] = n + 1;
+	}
+
+	// Returns true if the cell at column x and row y of the grid is a wall
+	public boolean isSolid(int x, int y) {
+		return x < 0 || x >= width || y < 0 || y >= height || (columns[index(x) * words + (y >>> 6)] >>> y & 1) != 0;
+	}
+
+	/*
+	 * Counts the open cells directly above the given row in column x before
+	 * reaching a wall or the top of the grid.
+	 */
+	public int gapAbove(int x, int row) {
+		if (x < 0 || x >= width || row <= 0 || row >= height) {
+			return 0;
+		}
+		int from = index(x) * words;
+		int w = (row - 1) >>> 6;
+		long above = columns[from + w] & rowsBelow(row - (w << 6)); // The rows above row in this word
+		while (above == 0 && w > 0) {
+			above = columns[from + --w];
+		}
+		if (above == 0) {
+			return row;
+		}
+		int wall = (w << 6) + 63 - Long.numberOfLeadingZeros(above);
+		return row - 1 - wall;
+	}
+
+	/*
+	 * Counts the open cells directly below the given row in column x before
+	 * reaching a wall or the bottom of the grid.
+	 */
+	public int gapBelow(int x, int row) {
+		if (x < 0 || x >= width || row < 0 || row >= height - 1) {
+			return 0;
+		}
+		int from = index(x) * words;
+		int w = (row + 1) >>> 6;
+		long below = columns[from + w] & ~rowsBelow(row + 1 - (w << 6)); // The rows below row in this word
+		while (below == 0 && w < words - 1) {
+			below = columns[from + ++w];
+		}
+		if (below == 0) {
+			return height - row - 1;
+		}
+		int wall = (w << 6) + Long.numberOfTrailingZeros(below);
+		return wall - row - 1;
+	}
+
+	/*
+	 * Copies the open rows of column x into mask as bits, bit y of word y / 64 set
+	 * when row y is open, i.e. the opposite of the wall bits. The mask needs
+	 * getWords() longs from offset on, and bits beyond the last row stay clear.
+	 */
+	public void openRows(int x, long[] mask, int offset) {
+		int from = index(x) * words;
+		for (int w = 0; w < words; w++) {
+			mask[offset + w] = ~columns[from + w];
+		}
+		int spare = words * Long.SIZE - height;
+		if (spare > 0) {
+			mask[offset + words - 1] &= -1L >>> spare;
+		}
+	}
+
+	// The number of openings in the given screen column
+	public int openings(int x) {
+		return openings[index(x)];
+	}
+
+	// Returns the first open row of opening i of the given screen column, counting from the top
+	public int openingTop(int x, int i) {
+		return tops[index(x) * maxOpenings + i];
+	}
+
+	// Returns the row just below the last open row of opening i of the given screen column
+	public int openingBottom(int x, int i) {
+		return bottoms[index(x) * maxOpenings + i];
+	}
+
+	/*
+	 * Returns the opening of the given screen column that the row is in, or else
+	 * the one closest to it, with ties going to the upper one. A column of solid
+	 * wall has none and gives -1.
+	 */
+	public int nearestOpening(int x, int row) {
+		int c = index(x);
+		int n = openings[c];
+		int best = -1;
+		int bestDistance = Integer.MAX_VALUE;
+		for (int i = 0; i < n; i++) {
+			int top = tops[c * maxOpenings + i];
+			int bottom = bottoms[c * maxOpenings + i];
+			int distance = row < top ? top - row : row >= bottom ? row - bottom + 1 : 0;
+			if (distance < bestDistance) {
+				best = i;
+				bestDistance = distance;
+			}
+		}
+		return best;
+	}
+
+	// True if screen column x of this grid has the same openings as column otherX of the other grid
+	public boolean sameColumn(int x, CavernGrid other, int otherX) {
+		int c = index(x);
+		int o = other.index(otherX);
+		int n = openings[c];
+		if (n != other.openings[o]) {
+			return false;
+		}
+		for (int i = 0; i < n; i++) {
+			if (tops[c * maxOpenings + i] != other.tops[o * other.maxOpenings + i]
+					|| bottoms[c * maxOpenings + i] != other.bottoms[o * other.maxOpenings + i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	// Empties the whole grid
+	public void clear() {
+		Arrays.fill(columns, 0);
+		Arrays.fill(openings, 1);
+		for (int c = 0; c < width; c++) {
+			tops[c * maxOpenings] = 0;
+			bottoms[c * maxOpenings] = height;
+		}
+		head = 0;
+	}
+
+	// A snapshot of the grid, e.g. for drawing on another thread
+	public CavernGrid copy() {
+		return new CavernGrid(this);
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	// The number of longs that the rows of a column are packed into
+	public int getWords() {
+		return words;
+	}
+
+	public int getMaxOpenings() {
+		return maxOpenings;
+	}
+
+	// The index in the ring of the given screen column, which must be on the grid
+	private int index(int x) {
+		Objects.checkIndex(x, width);
+		int i = head + x;
+		return i >= width ? i - width : i;
+	}
+
+	// A mask with the bits of the given number of lowest rows of a word set
+	private static long rowsBelow(int rows) {
+		return rows >= Long.SIZE ? -1L : (1L << rows) - 1;
+	}
+}
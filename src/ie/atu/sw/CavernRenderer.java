@@ -0,0 +1,128 @@
+package ie.atu.sw;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.GraphicsEnvironment;
+import java.awt.font.FontRenderContext;
+import java.awt.font.TextLayout;
+import java.awt.image.BufferedImage;
+
+/*
+ * Draws the cavern of GameLoop frames into a back buffer that is kept from one
+ * frame to the next. The cavern only ever scrolls, so when the frame is n
+ * ticks on from the last one drawn the buffer is shifted left by n columns with
+ * copyArea() and only the n new columns on the right are drawn. A column is
+ * drawn from the openings that CavernGrid keeps, as one rectangle of wall and
+ * one per opening, however many rows it has. Anything that is not a plain
+ * scroll, such as a reset or a jump of more than a screen, redraws the whole
+ * buffer.
+ *
+ * The cost of a frame is one blit plus the new columns, so it stays flat as the
+ * grid or the scaling factor grows. The buffer is a compatible image for the
+ * screen when there is one, which Java2D keeps in video memory as a managed
+ * image, so the blit onto the screen is cheap too.
+ *
+ * The HUD text changes at most once a second of game time, so its TextLayout
+ * is kept until the text changes.
+ *
+ * Not thread safe. Only call it from the event dispatch thread.
+ */
+public class CavernRenderer {
+	private static final Color OPEN = Color.WHITE;
+	private static final Color WALL = Color.BLACK;
+
+	private final int width;
+	private final int height;
+	private final int scale;
+	private final BufferedImage buffer;
+	private final Graphics2D g;
+
+	// The grid and time of the frame in the buffer, or null if nothing is drawn yet
+	private CavernGrid drawn;
+	private long drawnTime;
+
+	// The HUD text and its layout
+	private final Font font;
+	private String text;
+	private TextLayout layout;
+
+	public CavernRenderer(int width, int height, int scale, Font font) {
+		this.width = width;
+		this.height = height;
+		this.scale = scale;
+		this.font = font;
+		this.buffer = GraphicsEnvironment.isHeadless()
+				? new BufferedImage(width * scale, height * scale, BufferedImage.TYPE_INT_RGB)
+				: GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice()
+						.getDefaultConfiguration().createCompatibleImage(width * scale, height * scale);
+		this.g = buffer.createGraphics();
+	}
+
+	/*
+	 * Brings the back buffer up to date with the frame and returns it. The image
+	 * is reused, so it must be drawn before the next call.
+	 */
+	public BufferedImage render(GameLoop.Frame frame) {
+		var grid = frame.grid();
+		if (grid.getWidth() != width || grid.getHeight() != height) {
+			throw new IllegalArgumentException("Cannot draw a " + grid.getWidth() + "x" + grid.getHeight()
+					+ " grid on a " + width + "x" + height + " renderer");
+		}
+		long shift = drawn == null ? -1 : frame.time() - drawnTime;
+		if (shift == 0 && sameShift(grid, 0)) {
+			return buffer; // Nothing has scrolled
+		}
+
+		if (shift > 0 && shift < width && sameShift(grid, (int) shift)) {
+			// Scroll what is already drawn and add the new columns on the right
+			int kept = width - (int) shift;
+			g.copyArea((int) shift * scale, 0, kept * scale, height * scale, -(int) shift * scale, 0);
+			for (int x = kept; x < width; x++) {
+				drawColumn(grid, x);
+			}
+		} else {
+			for (int x = 0; x < width; x++) {
+				drawColumn(grid, x);
+			}
+		}
+		drawn = grid;
+		drawnTime = frame.time();
+		return buffer;
+	}
+
+	// True if the drawn columns, moved left by shift, are the first columns of the new grid
+	private boolean sameShift(CavernGrid grid, int shift) {
+		for (int x = shift; x < width; x++) {
+			if (!drawn.sameColumn(x, grid, x - shift)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	// Draws a single column of the cavern as wall with its openings cut out
+	private void drawColumn(CavernGrid grid, int x) {
+		int left = x * scale;
+		g.setColor(WALL);
+		g.fillRect(left, 0, scale, height * scale);
+		g.setColor(OPEN);
+		for (int i = 0, n = grid.openings(x); i < n; i++) {
+			int top = grid.openingTop(x, i);
+			g.fillRect(left, top * scale, scale, (grid.openingBottom(x, i) - top) * scale);
+		}
+	}
+
+	// The layout of the HUD text, laid out again only when the text changes
+	public TextLayout hud(String text, FontRenderContext context) {
+		if (!text.equals(this.text)) {
+			this.text = text;
+			this.layout = new TextLayout(text, font, context);
+		}
+		return layout;
+	}
+
+	public int getScale() {
+		return scale;
+	}
+}
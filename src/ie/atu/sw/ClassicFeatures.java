@@ -0,0 +1,55 @@
+package ie.atu.sw;
+
+/*
+ * The original 5 features, which only look at the next two columns:
+ *
+ *   0  the open cells above the plane in the next column / height
+ *   1  the open cells below the plane in the next column / height
+ *   2  1 if the cell straight ahead of the plane is wall, else 0
+ *   3  the row of the plane / height
+ *   4  1 if the cell two columns ahead of the plane is wall, else 0
+ *
+ * These are the features that the shipped model and game_data.csv use.
+ */
+public class ClassicFeatures implements FeatureExtractor {
+	public static final ClassicFeatures INSTANCE = new ClassicFeatures();
+
+	private static final String[] NAMES = { "DistanceAbove", "DistanceBelow", "ObstacleDirectlyAhead",
+			"PlayerRowNormalized", "ObstacleSecondColumnAhead" };
+
+	private ClassicFeatures() {
+	}
+
+	public int getFeatureCount() {
+		return NAMES.length;
+	}
+
+	public String[] getFeatureNames() {
+		return NAMES.clone();
+	}
+
+	public String getSpec() {
+		return "classic";
+	}
+
+	public int getHorizon() {
+		return 2;
+	}
+
+	public double[] extract(Simulation sim, double[] vector) {
+		var grid = sim.getGrid();
+		int height = sim.getHeight();
+		int row = sim.getPlayerRow();
+
+		// Calculate distance to the nearest obstacle above and below in the next column
+		int nextColumn = sim.getPlayerColumn() + 1;
+		vector[0] = grid.gapAbove(nextColumn, row) / (double) height;
+		vector[1] = grid.gapBelow(nextColumn, row) / (double) height;
+
+		// Check if there's an obstacle directly ahead and in the second column ahead
+		vector[2] = grid.isSolid(nextColumn, row) ? 1.0 : 0.0;
+		vector[3] = row / (double) height; // Normalized player row position
+		vector[4] = grid.isSolid(nextColumn + 1, row) ? 1.0 : 0.0;
+		return vector;
+	}
+}
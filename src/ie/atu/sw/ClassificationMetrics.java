@@ -0,0 +1,182 @@
+package ie.atu.sw;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.function.ToDoubleFunction;
+
+import org.encog.ml.data.MLDataSet;
+import org.encog.ml.data.basic.BasicMLData;
+import org.encog.ml.data.basic.BasicMLDataPair;
+import org.encog.neural.networks.BasicNetwork;
+
+/*
+ * A confusion matrix and the metrics that come out of it: accuracy, and the
+ * precision, recall and F1 of each class. Accuracy, precision and recall are
+ * proportions, so each is given with a 95% Wilson score interval, which stays
+ * inside 0..1 and still means something for the small classes of a few dozen
+ * samples.
+ *
+ * A class that is never predicted (or never occurs) has no precision (or
+ * recall). It is reported as 0 with the interval 0..1 rather than as NaN, so
+ * the numbers can always be compared and written out.
+ *
+ * The folds of a cross-validation are summed up by spread(), which gives the
+ * mean and standard deviation of each metric over the folds.
+ */
+public class ClassificationMetrics {
+	private static final double Z_95 = 1.96; // Two sided z value for 95% confidence
+
+	private final int classes;
+	private final long[][] confusion; // [actual][predicted]
+
+	public ClassificationMetrics(int classes) {
+		this.classes = classes;
+		this.confusion = new long[classes][classes];
+	}
+
+	// Counts the prediction of the network for every row of the dataset
+	public static ClassificationMetrics evaluate(BasicNetwork network, MLDataSet dataSet) {
+		var metrics = new ClassificationMetrics(dataSet.getIdealSize());
+		var pair = new BasicMLDataPair(new BasicMLData(dataSet.getInputSize()),
+				new BasicMLData(dataSet.getIdealSize()));
+		var output = new double[dataSet.getIdealSize()];
+		var flat = network.getFlat();
+		for (long row = 0; row < dataSet.getRecordCount(); row++) {
+			dataSet.getRecord(row, pair);
+			flat.compute(pair.getInputArray(), output);
+			metrics.add(NetworkAutopilot.getMaxIndex(pair.getIdealArray()), NetworkAutopilot.getMaxIndex(output));
+		}
+		return metrics;
+	}
+
+	public void add(int actual, int predicted) {
+		confusion[actual][predicted]++;
+	}
+
+	// Adds the counts of another set of metrics, e.g. to pool the folds of a cross-validation
+	public void add(ClassificationMetrics other) {
+		for (int a = 0; a < classes; a++) {
+			for (int p = 0; p < classes; p++) {
+				confusion[a][p] += other.confusion[a][p];
+			}
+		}
+	}
+
+	public long getTotal() {
+		long total = 0;
+		for (int a = 0; a < classes; a++) {
+			total += support(a);
+		}
+		return total;
+	}
+
+	public long getCorrect() {
+		long correct = 0;
+		for (int c = 0; c < classes; c++) {
+			correct += confusion[c][c];
+		}
+		return correct;
+	}
+
+	public double getAccuracy() {
+		return ratio(getCorrect(), getTotal());
+	}
+
+	// The number of rows that belong to the class
+	public long support(int c) {
+		long n = 0;
+		for (int p = 0; p < classes; p++) {
+			n += confusion[c][p];
+		}
+		return n;
+	}
+
+	// The number of rows that were predicted to be the class
+	private long predicted(int c) {
+		long n = 0;
+		for (int a = 0; a < classes; a++) {
+			n += confusion[a][c];
+		}
+		return n;
+	}
+
+	public double precision(int c) {
+		return ratio(confusion[c][c], predicted(c));
+	}
+
+	public double recall(int c) {
+		return ratio(confusion[c][c], support(c));
+	}
+
+	public double f1(int c) {
+		double precision = precision(c), recall = recall(c);
+		return precision + recall == 0 ? 0 : 2 * precision * recall / (precision + recall);
+	}
+
+	private static double ratio(long count, long total) {
+		return total == 0 ? 0 : (double) count / total;
+	}
+
+	/*
+	 * The 95% Wilson score interval of a proportion of count out of total, as
+	 * { low, high }. With no samples at all the proportion could be anything, so
+	 * the interval is 0..1.
+	 */
+	static double[] wilson(long count, long total) {
+		if (total == 0) {
+			return new double[] { 0, 1 };
+		}
+		double p = (double) count / total;
+		double z2 = Z_95 * Z_95;
+		double centre = (p + z2 / (2 * total)) / (1 + z2 / total);
+		double margin = Z_95 / (1 + z2 / total) * Math.sqrt(p * (1 - p) / total + z2 / (4.0 * total * total));
+		return new double[] { Math.max(0, centre - margin), Math.min(1, centre + margin) };
+	}
+
+	// A proportion with its interval, e.g. "0.884 (0.831-0.922)"
+	private static String withInterval(long count, long total) {
+		double[] ci = wilson(count, total);
+		return String.format(Locale.ROOT, "%.3f (%.3f-%.3f)", ratio(count, total), ci[0], ci[1]);
+	}
+
+	// The metrics as lines of text, headed by the name of the set they were measured on
+	public String report(String name) {
+		var text = new StringBuilder();
+		text.append(name).append(" Accuracy: ").append(withInterval(getCorrect(), getTotal())).append(", n = ")
+				.append(getTotal()).append('\n');
+		for (int c = 0; c < classes; c++) {
+			text.append("Class ").append(c).append(": Precision = ").append(withInterval(confusion[c][c], predicted(c)))
+					.append(", Recall = ").append(withInterval(confusion[c][c], support(c)))
+					.append(String.format(Locale.ROOT, ", F1 = %.3f", f1(c))).append(", Support = ")
+					.append(support(c)).append('\n');
+		}
+		return text.toString();
+	}
+
+	/*
+	 * The mean and standard deviation over the folds of a cross-validation of
+	 * the accuracy and of the precision, recall and F1 of each class, as lines
+	 * of text like report().
+	 */
+	public static String spread(ClassificationMetrics[] folds, String name) {
+		var text = new StringBuilder();
+		text.append(name).append(" Accuracy: ").append(spread(folds, ClassificationMetrics::getAccuracy))
+				.append(", folds = ").append(folds.length).append('\n');
+		for (int c = 0; c < folds[0].classes; c++) {
+			int k = c;
+			text.append("Class ").append(c).append(": Precision = ").append(spread(folds, m -> m.precision(k)))
+					.append(", Recall = ").append(spread(folds, m -> m.recall(k))).append(", F1 = ")
+					.append(spread(folds, m -> m.f1(k))).append('\n');
+		}
+		return text.toString();
+	}
+
+	// A metric over the folds as its mean and sample standard deviation, e.g. "0.884 +/- 0.021"
+	private static String spread(ClassificationMetrics[] folds, ToDoubleFunction<ClassificationMetrics> metric) {
+		double[] values = Arrays.stream(folds).mapToDouble(metric).toArray();
+		double mean = Arrays.stream(values).average().orElse(0);
+		double squares = Arrays.stream(values).map(v -> (v - mean) * (v - mean)).sum();
+		double deviation = values.length > 1 ? Math.sqrt(squares / (values.length - 1)) : 0;
+		return String.format(Locale.ROOT, "%.3f +/- %.3f", mean, deviation);
+	}
+}
@@ -0,0 +1,316 @@
+package ie.atu.sw;
+
+import java.util.Arrays;
+
+import org.encog.engine.network.activation.ActivationFunction;
+import org.encog.engine.network.activation.ActivationLinear;
+import org.encog.engine.network.activation.ActivationReLU;
+import org.encog.engine.network.activation.ActivationTANH;
+import org.encog.neural.networks.BasicNetwork;
+
+/*
+ * A feed-forward network compiled down to flat arrays of primitives for fast
+ * inference. The weights are copied out of a trained BasicNetwork once and the
+ * forward pass then runs into buffers that are allocated up front, so computing
+ * an output does not create any objects at all.
+ *
+ * Encog stores its layers from the output back to the input. This class keeps
+ * them in the order that the data flows through them, with the weights of each
+ * layer as a row-major matrix of (outputs x inputs), where the last input is
+ * the bias neuron.
+ *
+ * Only tanh, ReLU and linear activations are supported, which covers every
+ * network built by NeuralNetworkTrainer. With fastTanh enabled, tanh is replaced by a
+ * rational approximation whose absolute error is below 1e-4 for every input.
+ * The error grows a little as it passes through the layers (under 1e-3 at the
+ * output of the 5-34-12-3 autopilot network), so the winning action only
+ * changes when two outputs are practically tied.
+ *
+ * Batches go through the SIMD kernel in VectorKernel when the JVM is started
+ * with --add-modules jdk.incubator.vector, and through the plain loops below
+ * when it is not. Both give the same sums, so the outputs only differ where
+ * tanh is rounded differently, well below 1e-12.
+ *
+ * The weights are shared and never modified, but the buffers are not, so an
+ * instance must not be used by more than one thread. Use copy() to get another
+ * instance for another thread.
+ */
+public class CompiledNetwork {
+	// True if the Vector API module was added to the JVM, so VectorKernel can be used
+	public static final boolean VECTOR_API = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+
+	private final double[] weights; // Every layer's weight matrix, one after another
+	private final int[] weightOffsets; // Where each layer's weights start
+	private final int[] layerSizes; // The neurons in each layer, not counting bias
+	private final boolean[] hasBias; // Whether each layer feeds a bias neuron forward
+	private final double[] biasValues; // The activation of that bias neuron
+	private final boolean[] tanh; // Whether each layer is squashed with tanh
+	private final boolean[] relu; // Whether each layer is cut off with ReLU
+	private final double[] reluThresholds; // The value below which ReLU clamps
+	private final boolean fastTanh;
+
+	// The working buffers for a single input, one per layer
+	private final double[][] buffers;
+
+	// The working buffers for batches, grown on demand
+	private double[][] batchBuffers;
+	private int batchCapacity;
+
+	// The working buffers of the SIMD kernel, one feature after another, and their stride
+	private double[][] vectorBuffers;
+	private int vectorStride;
+	private boolean vectorized = VECTOR_API;
+
+	public CompiledNetwork(BasicNetwork network) {
+		this(network, false);
+	}
+
+	public CompiledNetwork(BasicNetwork network, boolean fastTanh) {
+		var flat = network.getFlat();
+		if (flat.getHasContext()) {
+			throw new IllegalArgumentException("Recurrent networks cannot be compiled");
+		}
+
+		int[] counts = flat.getLayerCounts();
+		int[] feedCounts = flat.getLayerFeedCounts();
+		int[] weightIndex = flat.getWeightIndex();
+		double[] bias = flat.getBiasActivation();
+		ActivationFunction[] activations = flat.getActivationFunctions();
+		int layers = counts.length;
+
+		this.weights = flat.getWeights().clone();
+		this.weightOffsets = new int[layers - 1];
+		this.layerSizes = new int[layers];
+		this.hasBias = new boolean[layers];
+		this.biasValues = new double[layers];
+		this.tanh = new boolean[layers];
+		this.relu = new boolean[layers];
+		this.reluThresholds = new double[layers];
+		this.fastTanh = fastTanh;
+
+		// Walk Encog's layers backwards so that layer 0 is the input layer
+		for (int i = 0; i < layers; i++) {
+			int l = layers - 1 - i;
+			layerSizes[i] = feedCounts[l];
+			hasBias[i] = counts[l] > feedCounts[l];
+			biasValues[i] = bias[l];
+
+			if (i > 0) {
+				weightOffsets[i - 1] = weightIndex[l];
+				if (activations[l] instanceof ActivationTANH) {
+					tanh[i] = true;
+				} else if (activations[l] instanceof ActivationReLU r) {
+					// Encog replaces anything at or below the threshold with the threshold
+					relu[i] = true;
+					reluThresholds[i] = r.getThresholdLow();
+				} else if (!(activations[l] instanceof ActivationLinear)) {
+					throw new IllegalArgumentException(
+							"Unsupported activation function: " + activations[l].getClass().getSimpleName());
+				}
+			}
+		}
+		this.buffers = createBuffers(1);
+	}
+
+	// Creates a new instance that shares the weights of the given one
+	private CompiledNetwork(CompiledNetwork other) {
+		this(other, other.weights);
+	}
+
+	// Creates a new instance with the layout of the given one and other weights
+	private CompiledNetwork(CompiledNetwork other, double[] weights) {
+		this.weights = weights;
+		this.weightOffsets = other.weightOffsets;
+		this.layerSizes = other.layerSizes;
+		this.hasBias = other.hasBias;
+		this.biasValues = other.biasValues;
+		this.tanh = other.tanh;
+		this.relu = other.relu;
+		this.reluThresholds = other.reluThresholds;
+		this.fastTanh = other.fastTanh;
+		this.vectorized = other.vectorized;
+		this.buffers = createBuffers(1);
+	}
+
+	// Returns another instance with the same weights for use on another thread
+	public CompiledNetwork copy() {
+		return new CompiledNetwork(this);
+	}
+
+	/*
+	 * Returns an instance with the same layers but the given weights, which are
+	 * in the order of Encog's FlatNetwork.getWeights(). The array is used as it
+	 * is, not copied.
+	 */
+	public CompiledNetwork withWeights(double[] weights) {
+		if (weights.length != this.weights.length) {
+			throw new IllegalArgumentException("Expected " + this.weights.length + " weights, got " + weights.length);
+		}
+		return new CompiledNetwork(this, weights);
+	}
+
+	/*
+	 * Computes the output of the network for a single input. The returned array
+	 * is owned by the network and is overwritten by the next call.
+	 */
+	public double[] compute(double[] input) {
+		System.arraycopy(input, 0, buffers[0], 0, layerSizes[0]);
+		for (int l = 1; l < layerSizes.length; l++) {
+			computeLayer(l, buffers[l - 1], 0, buffers[l], 0);
+		}
+		return buffers[buffers.length - 1];
+	}
+
+	// Computes the output for a single input and returns the index of the winner
+	public int classify(double[] input) {
+		return NetworkAutopilot.getMaxIndex(compute(input));
+	}
+
+	/*
+	 * Computes the outputs for a batch of inputs in one go. The inputs are stored
+	 * row after row in a flat array of count x getInputCount() values, and the
+	 * outputs are written the same way into count x getOutputCount() values.
+	 * The batch is pushed through the network one layer at a time, so each
+	 * weight matrix is only streamed through the cache once per batch.
+	 */
+	public void computeBatch(double[] inputs, double[] outputs, int count) {
+		if (vectorized) {
+			computeBatchVectorized(inputs, outputs, count);
+			return;
+		}
+		if (count > batchCapacity) {
+			batchCapacity = Math.max(count, batchCapacity * 2);
+			batchBuffers = createBuffers(batchCapacity);
+		}
+
+		int last = layerSizes.length - 1;
+		for (int l = 1; l <= last; l++) {
+			double[] in = l == 1 ? inputs : batchBuffers[l - 1];
+			double[] out = l == last ? outputs : batchBuffers[l];
+			for (int r = 0; r < count; r++) {
+				computeLayer(l, in, r * layerSizes[l - 1], out, r * layerSizes[l]);
+			}
+		}
+	}
+
+	/*
+	 * The batch through VectorKernel. The inputs are turned around so that each
+	 * feature's values for the whole batch lie next to each other, pushed
+	 * through every layer a vector of rows at a time, and the outputs are turned
+	 * back into rows at the end.
+	 */
+	private void computeBatchVectorized(double[] inputs, double[] outputs, int count) {
+		int stride = VectorKernel.stride(count);
+		if (stride > vectorStride) {
+			vectorStride = Math.max(stride, VectorKernel.stride(vectorStride * 2));
+			vectorBuffers = createBuffers(vectorStride);
+		}
+		stride = vectorStride;
+
+		int n = layerSizes[0];
+		double[] first = vectorBuffers[0];
+		for (int r = 0; r < count; r++) {
+			for (int i = 0; i < n; i++) {
+				first[i * stride + r] = inputs[r * n + i];
+			}
+		}
+
+		int last = layerSizes.length - 1;
+		for (int l = 1; l <= last; l++) {
+			VectorKernel.layer(weights, weightOffsets[l - 1], layerSizes[l - 1], layerSizes[l], hasBias[l - 1],
+					biasValues[l - 1], tanh[l], fastTanh, relu[l], reluThresholds[l], vectorBuffers[l - 1],
+					vectorBuffers[l], stride);
+		}
+
+		n = layerSizes[last];
+		double[] result = vectorBuffers[last];
+		for (int r = 0; r < count; r++) {
+			for (int o = 0; o < n; o++) {
+				outputs[r * n + o] = result[o * stride + r];
+			}
+		}
+	}
+
+	// Feeds the values of layer l - 1 at inOffset into layer l at outOffset
+	private void computeLayer(int l, double[] in, int inOffset, double[] out, int outOffset) {
+		int inputs = layerSizes[l - 1];
+		int outputs = layerSizes[l];
+		boolean bias = hasBias[l - 1];
+		int w = weightOffsets[l - 1];
+		int columns = inputs + (bias ? 1 : 0);
+
+		for (int o = 0; o < outputs; o++) {
+			double sum = 0;
+			for (int i = 0; i < inputs; i++) {
+				sum += weights[w + i] * in[inOffset + i];
+			}
+			if (bias) {
+				sum += weights[w + inputs] * biasValues[l - 1];
+			}
+			w += columns;
+
+			if (tanh[l]) {
+				sum = fastTanh ? fastTanh(sum) : Math.tanh(sum);
+			} else if (relu[l]) {
+				sum = Math.max(reluThresholds[l], sum);
+			}
+			out[outOffset + o] = sum;
+		}
+	}
+
+	// Allocates one buffer per layer with room for the given number of rows
+	private double[][] createBuffers(int rows) {
+		var result = new double[layerSizes.length][];
+		for (int l = 0; l < layerSizes.length; l++) {
+			result[l] = new double[rows * layerSizes[l]];
+		}
+		return result;
+	}
+
+	/*
+	 * A rational (Pade style) approximation of tanh with an absolute error below
+	 * 1e-4 over the whole real line. Beyond |x| = 4.97 tanh is within 1e-4 of
+	 * +/-1, so the input is clamped there, which also keeps the polynomials from
+	 * overflowing.
+	 */
+	public static double fastTanh(double x) {
+		if (x >= 4.97) {
+			return 1;
+		} else if (x <= -4.97) {
+			return -1;
+		}
+		double x2 = x * x;
+		double y = x * (135135 + x2 * (17325 + x2 * (378 + x2))) / (135135 + x2 * (62370 + x2 * (3150 + x2 * 28)));
+		return Math.max(-1, Math.min(1, y));
+	}
+
+	public int getInputCount() {
+		return layerSizes[0];
+	}
+
+	public int getOutputCount() {
+		return layerSizes[layerSizes.length - 1];
+	}
+
+	// The number of neurons in each layer from the input to the output, without bias
+	public int[] getLayerSizes() {
+		return Arrays.copyOf(layerSizes, layerSizes.length);
+	}
+
+	public boolean isFastTanh() {
+		return fastTanh;
+	}
+
+	// True if batches go through VectorKernel
+	public boolean isVectorized() {
+		return vectorized;
+	}
+
+	// Chooses between VectorKernel and the scalar loops for batches, e.g. to compare the two
+	public void setVectorized(boolean vectorized) {
+		if (vectorized && !VECTOR_API) {
+			throw new IllegalStateException("The Vector API needs --add-modules jdk.incubator.vector");
+		}
+		this.vectorized = vectorized;
+	}
+}
@@ -0,0 +1,180 @@
+package ie.atu.sw;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.IntStream;
+
+/*
+ * Generates training data without anyone at the keyboard. Workers fly the
+ * plane through freshly carved caverns headless, and every state that is
+ * sampled is labelled with the move of the OraclePlanner, which can see the
+ * whole cavern ahead and never crashes when it is left to fly.
+ *
+ * A pilot that only ever flies perfectly never sees the states a network gets
+ * itself into after a mistake, so with probability explore the worker makes a
+ * random move instead of the oracle's. The state is still labelled with the
+ * oracle's move, which shows how to recover.
+ *
+ * The workers are spread across the cores with a fork-join pool and stream
+ * their rows into a single file through a TrainingDataWriter. Each row is
+ * hashed and kept in a LongHashSet, striped so the workers rarely wait for
+ * each other, and any row that was seen before, in this run or already in the
+ * file, is dropped. The rows come out in no particular order, which does not
+ * matter for training.
+ *
+ * Usage: DataFarm [--samples n] [--workers n] [--out file] [--features spec]
+ *   [--explore p] [--maxTicks n] [--seed s] [world settings]
+ */
+public class DataFarm {
+	private static final int CHUNK = 4096; // Samples a worker claims at a time
+	private static final int STRIPES = 64; // Locks over the set of rows seen
+
+	private long samples = 1_000_000;
+	private int workers = Runtime.getRuntime().availableProcessors();
+	private String out = "resources/oracle_data.csv";
+	private FeatureExtractor features = ClassicFeatures.INSTANCE;
+	private double explore = 0.1;
+	private long maxTicks = 10_000; // An episode ends here if the plane has not crashed
+	private long seed = 42;
+	private WorldConfig world = new WorldConfig();
+
+	private final LongHashSet[] seen = new LongHashSet[STRIPES];
+	private final AtomicLong claimed = new AtomicLong();
+	private final AtomicLong duplicates = new AtomicLong();
+	private final AtomicLong episodes = new AtomicLong();
+	private final AtomicLongArray classes = new AtomicLongArray(3); // Unique rows per move, up to down
+
+	public DataFarm() {
+		for (int i = 0; i < STRIPES; i++) {
+			seen[i] = new LongHashSet();
+		}
+	}
+
+	// Labels the given number of samples and appends the ones not seen before to the output file
+	public void run() throws IOException {
+		var path = Paths.get(out);
+		var headers = TrainingDataWriter.headers(features);
+		long start;
+		try (var writer = new TrainingDataWriter(path, 65536, 8192, 1000, headers)) {
+			long existing = loadExisting(path);
+			System.out.println("Labelling " + samples + " " + features.getSpec() + " samples with " + workers
+					+ " workers, exploring " + explore + ", " + world
+					+ (existing > 0 ? ", " + existing + " rows already in " + out : ""));
+
+			start = System.nanoTime();
+			var pool = new ForkJoinPool(workers);
+			try {
+				pool.submit(() -> IntStream.range(0, workers).parallel().forEach(w -> work(w, writer))).join();
+			} finally {
+				pool.shutdown();
+			}
+		}
+
+		// Closing the writer flushed every row, so the time includes writing them out
+		double seconds = (System.nanoTime() - start) / 1e9;
+		long unique = classes.get(0) + classes.get(1) + classes.get(2);
+		System.out.printf("Labelled %d samples over %d episodes in %.2fs (%.0f samples/s)%n", samples,
+				episodes.get(), seconds, samples / seconds);
+		System.out.printf("Wrote %d new rows to %s, dropped %d duplicates%n", unique, out, duplicates.get());
+		System.out.printf("Moves: up %d, straight %d, down %d%n", classes.get(0), classes.get(1), classes.get(2));
+	}
+
+	// The body of a worker, which flies episodes until every sample has been claimed
+	private void work(int worker, TrainingDataWriter writer) {
+		var random = new SplitMix64(seed + worker * 0x632be59bd9b4e019L);
+		var oracle = new OraclePlanner();
+		var sim = world.newSimulation(random.nextLong());
+		sim.setFeatures(features);
+		episodes.incrementAndGet();
+		try {
+			long first;
+			while ((first = claimed.getAndAdd(CHUNK)) < samples) {
+				long n = Math.min(CHUNK, samples - first);
+				for (long i = 0; i < n; i++) {
+					sim.tick();
+					var state = sim.sample();
+					int move = oracle.nextMove(sim);
+					sim.move(random.nextDouble() < explore ? random.nextInt(3) - 1 : move);
+					if (sim.checkCollision() || sim.getTime() >= maxTicks) {
+						sim.reset(random.nextLong());
+						episodes.incrementAndGet();
+					}
+
+					long key = key(state, move);
+					var stripe = seen[(int) (key >>> 58)];
+					boolean added;
+					synchronized (stripe) {
+						added = stripe.add(key);
+					}
+					if (added) {
+						classes.incrementAndGet(move + 1);
+						writer.put(state, move);
+					} else {
+						duplicates.incrementAndGet();
+					}
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	// A 64-bit hash of a row, equal for rows that are written the same
+	static long key(double[] features, int action) {
+		long hash = action;
+		for (double value : features) {
+			hash = SplitMix64.mix(hash * 31 + Double.doubleToLongBits(value + 0.0)); // Adding 0.0 makes -0.0 0.0
+		}
+		return hash;
+	}
+
+	// Marks the rows already in the file as seen, so a run only adds new ones, and returns their number
+	private long loadExisting(Path path) throws IOException {
+		long rows = 0;
+		var values = new double[features.getFeatureCount()];
+		try (var lines = Files.lines(path, StandardCharsets.UTF_8)) {
+			for (var line : (Iterable<String>) lines.skip(1)::iterator) {
+				var fields = line.split(",");
+				for (int i = 0; i < values.length; i++) {
+					values[i] = Double.parseDouble(fields[i]);
+				}
+				long key = key(values, (int) Double.parseDouble(fields[values.length]));
+				seen[(int) (key >>> 58)].add(key);
+				rows++;
+			}
+		}
+		return rows;
+	}
+
+	public static void main(String[] args) throws IOException {
+		List<String> rest = new ArrayList<>();
+		var farm = new DataFarm();
+		farm.world = WorldConfig.from(TrainerConfig.extract(args, WorldConfig.NAMES, rest));
+		var options = TrainerConfig.extract(rest.toArray(new String[0]),
+				List.of("samples", "workers", "out", "features", "explore", "maxTicks", "seed"), new ArrayList<>());
+		for (var name : options.stringPropertyNames()) {
+			var value = options.getProperty(name);
+			switch (name) {
+			case "samples" -> farm.samples = Long.parseLong(value);
+			case "workers" -> farm.workers = Integer.parseInt(value);
+			case "out" -> farm.out = value;
+			case "features" -> farm.features = FeatureExtractor.forName(value);
+			case "explore" -> farm.explore = Double.parseDouble(value);
+			case "maxTicks" -> farm.maxTicks = Long.parseLong(value);
+			case "seed" -> farm.seed = Long.parseLong(value);
+			}
+		}
+		if (farm.samples < 1 || farm.workers < 1 || farm.explore < 0 || farm.explore > 1) {
+			throw new IllegalArgumentException("Need at least 1 sample and 1 worker, and explore between 0 and 1");
+		}
+		farm.run();
+	}
+}
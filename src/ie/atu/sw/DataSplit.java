@@ -0,0 +1,209 @@
+package ie.atu.sw;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.encog.ml.data.MLData;
+import org.encog.ml.data.MLDataPair;
+import org.encog.ml.data.MLDataSet;
+import org.encog.ml.data.basic.BasicMLData;
+import org.encog.ml.data.basic.BasicMLDataPair;
+
+/*
+ * Stratified splits of a dataset, for a train/validation/test holdout or for
+ * the folds of a cross-validation. Every class is shuffled on its own and then
+ * dealt out, so each part has (to within a row) the same mix of up, stay and
+ * down as the whole dataset. The shuffles come from a seeded SplitMix64, so a
+ * seed always gives the same split.
+ *
+ * The parts are views that hold only the row numbers and read the rows from
+ * the original dataset when asked, so a memory-mapped BinaryDataSet stays off
+ * the heap.
+ */
+public class DataSplit {
+	// The three parts of a holdout split
+	public record Holdout(MLDataSet train, MLDataSet validation, MLDataSet test) {
+	}
+
+	private DataSplit() {
+	}
+
+	/*
+	 * Splits the rows into training, validation and test sets, holding out the
+	 * given percentages of each class for validation and testing.
+	 */
+	public static Holdout holdout(MLDataSet data, int validationPercent, int testPercent, long seed) {
+		int[][] byClass = shuffledByClass(data, seed);
+		int[] train = new int[(int) data.getRecordCount()];
+		int[] validation = new int[train.length];
+		int[] test = new int[train.length];
+		int trainCount = 0, validationCount = 0, testCount = 0;
+		for (int[] rows : byClass) {
+			int testRows = (int) Math.round(rows.length * testPercent / 100.0);
+			int validationRows = (int) Math.round(rows.length * validationPercent / 100.0);
+			for (int i = 0; i < rows.length; i++) {
+				if (i < testRows) {
+					test[testCount++] = rows[i];
+				} else if (i < testRows + validationRows) {
+					validation[validationCount++] = rows[i];
+				} else {
+					train[trainCount++] = rows[i];
+				}
+			}
+		}
+		Arrays.sort(train, 0, trainCount); // Read the rows in file order
+		Arrays.sort(validation, 0, validationCount);
+		Arrays.sort(test, 0, testCount);
+		return new Holdout(subset(data, train, trainCount), subset(data, validation, validationCount),
+				subset(data, test, testCount));
+	}
+
+	// Deals the rows of each class round the k folds and returns the rows of each fold
+	public static int[][] folds(MLDataSet data, int k, long seed) {
+		int[][] folds = new int[k][(int) (data.getRecordCount() / k + 1)];
+		int[] counts = new int[k];
+		int next = 0;
+		for (int[] rows : shuffledByClass(data, seed)) {
+			for (int row : rows) {
+				folds[next][counts[next]++] = row;
+				next = (next + 1) % k; // Carry on from where the last class stopped
+			}
+		}
+		for (int f = 0; f < k; f++) {
+			folds[f] = Arrays.copyOf(folds[f], counts[f]);
+		}
+		return folds;
+	}
+
+	// Every row that is not in the given fold
+	public static MLDataSet allBut(MLDataSet data, int[][] folds, int fold) {
+		var rows = new int[(int) data.getRecordCount()];
+		int count = 0;
+		for (int f = 0; f < folds.length; f++) {
+			if (f != fold) {
+				System.arraycopy(folds[f], 0, rows, count, folds[f].length);
+				count += folds[f].length;
+			}
+		}
+		Arrays.sort(rows, 0, count); // Read the rows in file order
+		return subset(data, rows, count);
+	}
+
+	// A view of the first count of the given rows of the dataset
+	public static MLDataSet subset(MLDataSet data, int[] rows, int count) {
+		return new Subset(data, Arrays.copyOf(rows, count));
+	}
+
+	// The row numbers of each class, each class shuffled on its own
+	private static int[][] shuffledByClass(MLDataSet data, long seed) {
+		int classes = data.getIdealSize();
+		int rows = (int) data.getRecordCount();
+		var labels = new int[rows];
+		var counts = new int[classes];
+		var pair = new BasicMLDataPair(new BasicMLData(data.getInputSize()), new BasicMLData(classes));
+		for (int row = 0; row < rows; row++) {
+			data.getRecord(row, pair);
+			labels[row] = NetworkAutopilot.getMaxIndex(pair.getIdealArray());
+			counts[labels[row]]++;
+		}
+
+		var byClass = new int[classes][];
+		for (int c = 0; c < classes; c++) {
+			byClass[c] = new int[counts[c]];
+			counts[c] = 0;
+		}
+		for (int row = 0; row < rows; row++) {
+			byClass[labels[row]][counts[labels[row]]++] = row;
+		}
+
+		var random = new SplitMix64(seed);
+		for (int[] members : byClass) {
+			for (int i = members.length - 1; i > 0; i--) {
+				int j = random.nextInt(i + 1);
+				int swap = members[i];
+				members[i] = members[j];
+				members[j] = swap;
+			}
+		}
+		return byClass;
+	}
+
+	// A read-only view of some of the rows of another dataset
+	private static class Subset implements MLDataSet {
+		private final MLDataSet data;
+		private final int[] rows;
+
+		Subset(MLDataSet data, int[] rows) {
+			this.data = data;
+			this.rows = rows;
+		}
+
+		public void getRecord(long index, MLDataPair pair) {
+			data.getRecord(rows[(int) index], pair);
+		}
+
+		public int getIdealSize() {
+			return data.getIdealSize();
+		}
+
+		public int getInputSize() {
+			return data.getInputSize();
+		}
+
+		public boolean isSupervised() {
+			return data.isSupervised();
+		}
+
+		public long getRecordCount() {
+			return rows.length;
+		}
+
+		// Encog's threaded trainers give each worker its own view
+		public MLDataSet openAdditional() {
+			return new Subset(data.openAdditional(), rows);
+		}
+
+		public void add(MLData data) {
+			throw new UnsupportedOperationException("Data splits are read-only");
+		}
+
+		public void add(MLData input, MLData ideal) {
+			throw new UnsupportedOperationException("Data splits are read-only");
+		}
+
+		public void add(MLDataPair pair) {
+			throw new UnsupportedOperationException("Data splits are read-only");
+		}
+
+		public void close() {
+		}
+
+		public int size() {
+			return rows.length;
+		}
+
+		public MLDataPair get(int index) {
+			var pair = new BasicMLDataPair(new BasicMLData(getInputSize()), new BasicMLData(getIdealSize()));
+			getRecord(index, pair);
+			return pair;
+		}
+
+		public Iterator<MLDataPair> iterator() {
+			return new Iterator<>() {
+				private int next = 0;
+
+				public boolean hasNext() {
+					return next < rows.length;
+				}
+
+				public MLDataPair next() {
+					if (!hasNext()) {
+						throw new NoSuchElementException();
+					}
+					return get(next++);
+				}
+			};
+		}
+	}
+}
@@ -0,0 +1,265 @@
+package ie.atu.sw;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import org.encog.ml.data.MLDataPair;
+import org.encog.ml.data.MLDataSet;
+import org.encog.ml.data.basic.BasicMLData;
+import org.encog.ml.data.basic.BasicMLDataPair;
+import org.encog.ml.data.basic.BasicMLDataSet;
+
+/*
+ * Shrinks a training set before it is trained on. The features are coarse,
+ * multiples of 0.05 for the classic ones, and the game logs a stay sample every
+ * second whether anything happens or not, so most rows of a recording are
+ * copies of others. Every row is hashed (see DataFarm.key()) into a
+ * LongIntHashMap of the rows kept so far, and a row seen before only adds to
+ * the weight of the first one, which Encog's trainers take as the significance
+ * of the pair. A row whose hash is already taken by a different row is kept
+ * under the hash of the hash instead, and so on, so its copies still find it.
+ * An epoch then costs one pass over the distinct rows, and the
+ * error and gradients weigh each of them as often as it was recorded.
+ *
+ * The weights can also even out the classes, as there are far more stay rows
+ * than up or down:
+ *
+ *   DEDUPE    only collapses the copies, the weights are the counts
+ *   WEIGHT    scales the weights so every class weighs the same in total
+ *   RESAMPLE  draws as many rows as there were, with replacement and in
+ *             proportion to the class weights, and keeps the number of times
+ *             each row was drawn. Rows that were never drawn are dropped.
+ *
+ * The weights are scaled to average 1 over the rows that are kept, so the
+ * gradients point the same way as on the raw data but a full-batch epoch
+ * steps only as far as on a dataset of the distinct rows, and backprop may
+ * want a higher learningRate. Encog squares the significance in the training
+ * error it reports, though not in the gradients, so that error reads high on
+ * weighted rows. Only the training split is preprocessed, so the validation
+ * error that picks the best epoch, and the test set, keep the mix of rows they
+ * were recorded with.
+ *
+ * Usage: DatasetPreprocessor [dataFile] [--features spec] [--preprocess mode] [--seed s]
+ *   (prints what the mode, dedupe unless given, would make of the data file)
+ */
+public class DatasetPreprocessor {
+	// What is done to the rows before training, chosen with --preprocess
+	public enum Mode {
+		NONE, DEDUPE, WEIGHT, RESAMPLE
+	}
+
+	private final Mode mode;
+	private final long seed;
+
+	// What the last call of process() found
+	private long rows;
+	private int unique;
+	private int ambiguous; // Distinct rows whose features were also recorded with another move
+	private int collisions; // Distinct rows whose hash was taken by another row
+	private double[] rowsPerClass;
+	private int[] uniquePerClass;
+	private double[] weightPerClass;
+	private int kept;
+
+	public DatasetPreprocessor(Mode mode, long seed) {
+		this.mode = mode;
+		this.seed = seed;
+	}
+
+	/*
+	 * Returns the distinct rows of the dataset, weighted as the mode says. The
+	 * dataset with mode NONE is returned as it is.
+	 */
+	public MLDataSet process(MLDataSet data) {
+		if (mode == Mode.NONE) {
+			return data;
+		}
+		int inputs = data.getInputSize();
+		int classes = data.getIdealSize();
+		var pair = new BasicMLDataPair(new BasicMLData(inputs), new BasicMLData(classes));
+		var index = new LongIntHashMap((int) Math.min(data.getRecordCount(), 1 << 20));
+		List<double[]> features = new ArrayList<>();
+		var labels = new int[1024];
+		var counts = new double[1024];
+
+		rows = data.getRecordCount();
+		rowsPerClass = new double[classes];
+		collisions = 0;
+		for (long row = 0; row < rows; row++) {
+			data.getRecord(row, pair);
+			var input = pair.getInputArray();
+			int label = NetworkAutopilot.getMaxIndex(pair.getIdealArray());
+			rowsPerClass[label] += pair.getSignificance();
+
+			long hash = DataFarm.key(input, label - 1);
+			long key = probe(index, hash, features, labels, input, label);
+			int i = index.get(key);
+			if (i >= 0) {
+				counts[i] += pair.getSignificance();
+				continue;
+			}
+			collisions += key != hash ? 1 : 0;
+			index.put(key, features.size());
+			int n = features.size();
+			if (n == labels.length) {
+				labels = Arrays.copyOf(labels, n * 2);
+				counts = Arrays.copyOf(counts, n * 2);
+			}
+			features.add(input.clone());
+			labels[n] = label;
+			counts[n] = pair.getSignificance();
+		}
+		unique = features.size();
+
+		// A row is ambiguous if the same features come with another move
+		ambiguous = 0;
+		uniquePerClass = new int[classes];
+		for (int i = 0; i < unique; i++) {
+			uniquePerClass[labels[i]]++;
+			for (int other = 0; other < classes; other++) {
+				if (other != labels[i] && index.get(probe(index, DataFarm.key(features.get(i), other - 1), features,
+						labels, features.get(i), other)) >= 0) {
+					ambiguous++;
+					break;
+				}
+			}
+		}
+
+		var weights = weigh(counts, labels, classes);
+		return weighted(features, labels, weights, classes);
+	}
+
+	/*
+	 * Returns the key of the row in the index, or the key to put it under if it
+	 * is not there yet. The hash of the row is tried first, then the hash of
+	 * that, until a key is free or holds the same row.
+	 */
+	private static long probe(LongIntHashMap index, long key, List<double[]> features, int[] labels, double[] input,
+			int label) {
+		for (int i; (i = index.get(key)) >= 0; key = SplitMix64.mix(key)) {
+			if (labels[i] == label && Arrays.equals(features.get(i), input)) {
+				break;
+			}
+		}
+		return key;
+	}
+
+	// The weight of each distinct row under the mode, scaled to average 1 over the rows with any weight
+	private double[] weigh(double[] counts, int[] labels, int classes) {
+		double total = Arrays.stream(rowsPerClass).sum();
+		int present = (int) Arrays.stream(rowsPerClass).filter(r -> r > 0).count();
+		var classWeights = new double[classes];
+		for (int c = 0; c < classes; c++) {
+			classWeights[c] = mode == Mode.DEDUPE || rowsPerClass[c] == 0 ? 1 : total / (present * rowsPerClass[c]);
+		}
+
+		var weights = new double[unique];
+		for (int i = 0; i < unique; i++) {
+			weights[i] = counts[i] * classWeights[labels[i]];
+		}
+		if (mode == Mode.RESAMPLE) {
+			weights = resample(weights, Math.round(total));
+		}
+
+		double sum = 0;
+		kept = 0;
+		for (double weight : weights) {
+			sum += weight;
+			kept += weight > 0 ? 1 : 0;
+		}
+		weightPerClass = new double[classes];
+		for (int i = 0; i < unique; i++) {
+			weights[i] *= kept / sum;
+			weightPerClass[labels[i]] += weights[i];
+		}
+		return weights;
+	}
+
+	// Draws the given number of rows in proportion to their weights and returns how often each was drawn
+	private double[] resample(double[] weights, long draws) {
+		var cumulative = new double[weights.length];
+		double sum = 0;
+		for (int i = 0; i < weights.length; i++) {
+			sum += weights[i];
+			cumulative[i] = sum;
+		}
+		var drawn = new double[weights.length];
+		var random = new SplitMix64(seed);
+		for (long d = 0; d < draws; d++) {
+			int i = Arrays.binarySearch(cumulative, random.nextDouble() * sum);
+			drawn[Math.min(i < 0 ? -i - 1 : i + 1, weights.length - 1)]++;
+		}
+		return drawn;
+	}
+
+	// The rows with any weight as a dataset whose pairs keep their weights
+	private static MLDataSet weighted(List<double[]> features, int[] labels, double[] weights, int classes) {
+		List<MLDataPair> pairs = new ArrayList<>();
+		for (int i = 0; i < features.size(); i++) {
+			if (weights[i] > 0) {
+				var ideal = new double[classes];
+				ideal[labels[i]] = 1; // One-hot encoding
+				var pair = new BasicMLDataPair(new BasicMLData(features.get(i)), new BasicMLData(ideal));
+				pair.setSignificance(weights[i]);
+				pairs.add(pair);
+			}
+		}
+		return new Weighted(pairs);
+	}
+
+	// What the last call of process() made of the data, as lines of text
+	public String report() {
+		var text = new StringBuilder();
+		text.append(String.format(Locale.ROOT, "Preprocessed %d rows (%s): %d distinct, %.1f%% copies", rows,
+				mode.name().toLowerCase(Locale.ROOT), unique, rows == 0 ? 0 : 100.0 * (rows - unique) / rows));
+		text.append(", ").append(ambiguous).append(" ambiguous");
+		if (collisions > 0) {
+			text.append(", ").append(collisions).append(" hash collisions");
+		}
+		if (kept != unique) {
+			text.append(", ").append(kept).append(" kept");
+		}
+		text.append('\n');
+		for (int c = 0; c < rowsPerClass.length; c++) {
+			text.append(String.format(Locale.ROOT, "Class %d: Rows = %.0f, Distinct = %d, Weight = %.1f%%%n", c,
+					rowsPerClass[c], uniquePerClass[c], kept == 0 ? 0 : 100.0 * weightPerClass[c] / kept));
+		}
+		return text.toString();
+	}
+
+	/*
+	 * A dataset that passes the weight of each pair on in getRecord(), which
+	 * is how Encog's trainers read it. BasicMLDataSet only copies the arrays.
+	 */
+	private static class Weighted extends BasicMLDataSet {
+		private static final long serialVersionUID = 1L;
+
+		Weighted(List<MLDataPair> pairs) {
+			super(pairs);
+		}
+
+		public void getRecord(long index, MLDataPair pair) {
+			super.getRecord(index, pair);
+			pair.setSignificance(getData().get((int) index).getSignificance());
+		}
+
+		// Encog's threaded trainers give each worker its own view
+		public MLDataSet openAdditional() {
+			return new Weighted(getData());
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		var config = TrainerConfig.parse(args);
+		var preprocessor = new DatasetPreprocessor(config.preprocess == Mode.NONE ? Mode.DEDUPE : config.preprocess,
+				config.seed);
+		var data = new NeuralNetworkTrainer().loadData(config.dataFile, FeatureExtractor.forName(config.features));
+		long start = System.nanoTime();
+		preprocessor.process(data);
+		System.out.print(preprocessor.report());
+		System.out.println("Preprocessed " + config.dataFile + " in " + (System.nanoTime() - start) / 1_000_000 + "ms");
+	}
+}
@@ -0,0 +1,211 @@
+package ie.atu.sw;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/*
+ * A compact recording of one episode of the game. The cavern is fully
+ * determined by the world it was carved in and the seed of its generator, so
+ * the only other thing needed to replay an episode is how far the plane moved
+ * in each tick.
+ *
+ * The moves are run-length encoded, as the plane spends most of its time
+ * repeating the same move. The file format is:
+ *
+ *   int   magic ("ATUE")
+ *   byte  version
+ *   int   width, height, playerColumn, topMargin, bottomMargin, minSpace, lanes
+ *   double forkChance (the WorldConfig, since version 2)
+ *   long  seed
+ *   long  number of ticks
+ *   then, until every tick is accounted for, one run per move:
+ *   byte  the move made in each tick of the run
+ *   var   the length of the run (7 bits per byte, high bit set on all but the last)
+ *
+ * Replaying skips the autopilot and the timer entirely, so it runs many times
+ * faster than real time. Logs of version 1 were all recorded in the original
+ * 30x20 world and still replay.
+ *
+ * Usage: EpisodeLog <logFile> [tick]
+ */
+public class EpisodeLog {
+	private static final int MAGIC = 0x41545545; // "ATUE"
+	private static final byte VERSION = 2;
+	private static final byte VERSION_1 = 1; // Before the world was saved
+
+	private final WorldConfig world;
+	private final long seed;
+	private long ticks;
+
+	// The encoded runs and the run currently being recorded
+	private byte[] runs = new byte[64];
+	private int length;
+	private int runMove;
+	private long runLength;
+
+	// A log of an episode in the original 30x20 world
+	public EpisodeLog(long seed) {
+		this(new WorldConfig(), seed);
+	}
+
+	// A log of an episode in the given world, whose cave was carved from the seed
+	public EpisodeLog(WorldConfig world, long seed) {
+		this.world = world;
+		this.seed = seed;
+	}
+
+	// Records the total distance the plane moved during the next tick
+	public void record(int move) {
+		if (runLength > 0 && move != runMove) {
+			flushRun();
+		}
+		runMove = move;
+		runLength++;
+		ticks++;
+	}
+
+	// Appends the current run to the encoded runs
+	private void flushRun() {
+		ensureCapacity(11); // One byte for the move and at most ten for the length
+		runs[length++] = (byte) runMove;
+		long n = runLength;
+		while ((n & ~0x7FL) != 0) {
+			runs[length++] = (byte) ((n & 0x7F) | 0x80);
+			n >>>= 7;
+		}
+		runs[length++] = (byte) n;
+		runLength = 0;
+	}
+
+	private void ensureCapacity(int extra) {
+		if (length + extra > runs.length) {
+			runs = Arrays.copyOf(runs, Math.max(runs.length * 2, length + extra));
+		}
+	}
+
+	/*
+	 * Plays the recorded moves back through a fresh simulation for up to the
+	 * given number of ticks and returns it, so the state of the game at any
+	 * (seed, tick) pair can be inspected.
+	 */
+	public Simulation replay(long untilTick) {
+		var sim = world.newSimulation(seed);
+		long limit = Math.min(untilTick, ticks);
+
+		int pos = 0;
+		long remaining = 0;
+		int move = 0;
+		for (long t = 0; t < limit; t++) {
+			if (remaining == 0) {
+				if (pos < length) {
+					// Decode the next run
+					move = runs[pos++];
+					remaining = 0;
+					int shift = 0;
+					byte b;
+					do {
+						b = runs[pos++];
+						remaining |= (long) (b & 0x7F) << shift;
+						shift += 7;
+					} while ((b & 0x80) != 0);
+				} else {
+					// The run that is still being recorded
+					move = runMove;
+					remaining = runLength;
+				}
+			}
+			remaining--;
+
+			sim.tick();
+			sim.move(move);
+			sim.checkCollision();
+		}
+		return sim;
+	}
+
+	// Replays the whole episode
+	public Simulation replay() {
+		return replay(ticks);
+	}
+
+	public WorldConfig getWorld() {
+		return world;
+	}
+
+	public long getSeed() {
+		return seed;
+	}
+
+	public long getTicks() {
+		return ticks;
+	}
+
+	// Writes the log to the given file, replacing it if it exists
+	public void save(Path path) throws IOException {
+		if (runLength > 0) {
+			flushRun();
+		}
+		try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+			out.writeInt(MAGIC);
+			out.writeByte(VERSION);
+			out.writeInt(world.width);
+			out.writeInt(world.height);
+			out.writeInt(world.playerColumn);
+			out.writeInt(world.topMargin);
+			out.writeInt(world.bottomMargin);
+			out.writeInt(world.minSpace);
+			out.writeInt(world.lanes);
+			out.writeDouble(world.forkChance);
+			out.writeLong(seed);
+			out.writeLong(ticks);
+			out.write(runs, 0, length);
+		}
+	}
+
+	// Reads a log written by save()
+	public static EpisodeLog load(Path path) throws IOException {
+		try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+			int magic = in.readInt();
+			byte version = in.readByte();
+			if (magic != MAGIC || (version != VERSION && version != VERSION_1)) {
+				throw new IOException("Not an episode log: " + path);
+			}
+			var world = new WorldConfig();
+			if (version == VERSION) {
+				world.width = in.readInt();
+				world.height = in.readInt();
+				world.playerColumn = in.readInt();
+				world.topMargin = in.readInt();
+				world.bottomMargin = in.readInt();
+				world.minSpace = in.readInt();
+				world.lanes = in.readInt();
+				world.forkChance = in.readDouble();
+				world.validate();
+			}
+			var log = new EpisodeLog(world, in.readLong());
+			log.ticks = in.readLong();
+			log.runs = in.readAllBytes();
+			log.length = log.runs.length;
+			return log;
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		var log = load(Path.of(args[0]));
+		long tick = args.length > 1 ? Long.parseLong(args[1]) : log.getTicks();
+
+		long start = System.nanoTime();
+		var sim = log.replay(tick);
+		double elapsed = (System.nanoTime() - start) / 1e6;
+
+		System.out.println(log.getWorld() + ", Seed: " + log.getSeed() + ", Ticks recorded: " + log.getTicks());
+		System.out.println("Replayed to tick " + sim.getTime() + " in " + elapsed + "ms, Player row: "
+				+ sim.getPlayerRow() + ", Crashed: " + sim.isGameOver());
+	}
+}
@@ -0,0 +1,214 @@
+package ie.atu.sw;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+import org.encog.neural.networks.BasicNetwork;
+import org.encog.persist.EncogDirectoryPersistence;
+
+/*
+ * Trains the autopilot by self-play instead of from recorded keystrokes, with
+ * evolution strategies over the weights of the network. The only thing that
+ * counts is how long the plane survives, so there is no dataset and nobody
+ * has to sit at the keyboard.
+ *
+ * Every generation, population copies of the current weights are jittered
+ * with Gaussian noise of size sigma (in mirrored pairs, +noise and -noise).
+ * Each copy flies the same episodes, all in caverns freshly carved from the
+ * generation's seeds, and its fitness is the mean number of ticks it survived.
+ * The fitnesses are turned into ranks, and the noise weighted by rank is a
+ * gradient estimate that Adam follows with step size alpha.
+ *
+ * Each copy flies its episodes as one SimulationBatch, so the states of all
+ * its planes go through the network together each tick. The copies are spread
+ * across the cores with a fork-join pool.
+ *
+ * Every evalEvery generations the current weights fly a fixed set of
+ * evaluation caverns, and whenever they do better than ever before the network
+ * is saved to the model file, ready for GameView to load.
+ *
+ * Training starts from a new network shaped by the trainer settings (hidden,
+ * activation and features), or from a trained model with --init, which keeps
+ * the features it was trained with. Starting from the supervised model is by
+ * far the quickest way to a good pilot.
+ *
+ * Usage: EvolutionTrainer [--generations n] [--population n] [--sigma s]
+ *   [--alpha a] [--episodes n] [--maxTicks n] [--evalEvery n]
+ *   [--evalEpisodes n] [--init modelFile] [trainer settings]
+ */
+public class EvolutionTrainer {
+	private static final double BETA1 = 0.9; // Adam's decay of the mean of the gradient
+	private static final double BETA2 = 0.999; // Adam's decay of the mean of its square
+	private static final double EPSILON = 1e-8;
+
+	private final TrainerConfig config;
+	private final BasicNetwork network;
+
+	private int generations = 200;
+	private int population = 64;
+	private double sigma = 0.1; // A new network wants more, e.g. 0.5, to make any move at all
+	private double alpha = 0.02;
+	private int episodes = 16;
+	private long maxTicks = 5_000;
+	private int evalEvery = 10;
+	private int evalEpisodes = 200;
+
+	public EvolutionTrainer(TrainerConfig config, BasicNetwork network) {
+		this.config = config;
+		this.network = network;
+	}
+
+	// Evolves the weights of the network and returns the best evaluated mean survival in ticks
+	public double train() {
+		var template = new CompiledNetwork(network);
+		double[] weights = network.getFlat().getWeights().clone();
+		int n = weights.length;
+		int pairs = Math.max(1, population / 2);
+
+		double[][] noise = new double[pairs][n];
+		double[] fitness = new double[pairs * 2];
+		double[] gradient = new double[n];
+		double[] m = new double[n];
+		double[] v = new double[n];
+
+		var random = new SplitMix64(config.seed);
+		var evalSeeds = ModelEvaluator.episodeSeeds(evalEpisodes, config.seed);
+		double best = -1;
+		int workers = Runtime.getRuntime().availableProcessors();
+		var features = FeatureExtractor.forNetwork(network);
+		ThreadLocal<SimulationBatch> batches = ThreadLocal.withInitial(() -> new SimulationBatch(episodes, features));
+
+		System.out.println("Evolving " + n + " weights: population " + pairs * 2 + ", sigma " + sigma + ", alpha "
+				+ alpha + ", " + episodes + " episodes of up to " + maxTicks + " ticks each");
+		long start = System.nanoTime();
+		var pool = new ForkJoinPool(workers);
+		try {
+			for (int generation = 1; generation <= generations; generation++) {
+				long generationStart = System.nanoTime();
+				// Draw the noise and the caverns that every member flies this generation
+				for (double[] row : noise) {
+					for (int i = 0; i < n; i++) {
+						row[i] = random.nextGaussian();
+					}
+				}
+				var seeds = ModelEvaluator.episodeSeeds(episodes, random.nextLong());
+
+				// Member 2p flies the weights plus noise p and member 2p + 1 the weights minus it
+				pool.submit(() -> IntStream.range(0, pairs * 2).parallel().forEach(member -> {
+					double sign = member % 2 == 0 ? sigma : -sigma;
+					double[] jittered = new double[n];
+					double[] row = noise[member / 2];
+					for (int i = 0; i < n; i++) {
+						jittered[i] = weights[i] + sign * row[i];
+					}
+					long[] ticks = batches.get().play(template.withWeights(jittered), seeds, maxTicks);
+					fitness[member] = Arrays.stream(ticks).average().orElse(0);
+				})).join();
+
+				// Follow the rank weighted noise uphill with Adam
+				double[] ranks = centredRanks(fitness);
+				Arrays.fill(gradient, 0);
+				for (int p = 0; p < pairs; p++) {
+					double weight = ranks[2 * p] - ranks[2 * p + 1];
+					for (int i = 0; i < n; i++) {
+						gradient[i] += weight * noise[p][i];
+					}
+				}
+				double correction1 = 1 - Math.pow(BETA1, generation);
+				double correction2 = 1 - Math.pow(BETA2, generation);
+				for (int i = 0; i < n; i++) {
+					double g = gradient[i] / (2 * pairs * sigma);
+					m[i] = BETA1 * m[i] + (1 - BETA1) * g;
+					v[i] = BETA2 * v[i] + (1 - BETA2) * g * g;
+					weights[i] += alpha * (m[i] / correction1) / (Math.sqrt(v[i] / correction2) + EPSILON);
+				}
+				Metrics.trainingIteration("evolution", generation, Arrays.stream(fitness).average().orElse(0),
+						System.nanoTime() - generationStart);
+
+				if (generation % evalEvery == 0 || generation == generations) {
+					var net = template.withWeights(weights.clone());
+					double mean = pool.submit(() -> evaluate(net, evalSeeds, batches)).join();
+					double seconds = (System.nanoTime() - start) / 1e9;
+					System.out.printf(Locale.ROOT,
+							"Generation #%d Fitness mean %.1f max %.1f, Evaluation %.1fs survival (%.1f generations/s)%n",
+							generation, Arrays.stream(fitness).average().orElse(0),
+							Arrays.stream(fitness).max().orElse(0), ModelEvaluator.toSeconds(Math.round(mean)),
+							generation / seconds);
+					if (mean > best) {
+						best = mean;
+						System.arraycopy(weights, 0, network.getFlat().getWeights(), 0, n);
+						NeuralNetworkTrainer.saveModel(network, config.modelFile);
+						System.out.println("Saved to " + config.modelFile);
+					}
+				}
+			}
+		} finally {
+			pool.shutdown();
+		}
+		return best;
+	}
+
+	// The mean survival over the evaluation seeds, split into batches across the pool
+	private double evaluate(CompiledNetwork net, long[] seeds, ThreadLocal<SimulationBatch> batches) {
+		int chunk = Math.max(1, episodes);
+		List<long[]> parts = new ArrayList<>();
+		for (int from = 0; from < seeds.length; from += chunk) {
+			parts.add(Arrays.copyOfRange(seeds, from, Math.min(seeds.length, from + chunk)));
+		}
+		return parts.parallelStream().flatMapToLong(part -> Arrays.stream(batches.get().play(net.copy(), part,
+				maxTicks))).average().orElse(0);
+	}
+
+	/*
+	 * Replaces each fitness by its rank, scaled to -0.5 for the worst up to 0.5
+	 * for the best. Ranks make the update ignore how far apart the fitnesses are,
+	 * so a single lucky episode cannot swamp the rest of the population.
+	 */
+	static double[] centredRanks(double[] fitness) {
+		Integer[] order = new Integer[fitness.length];
+		for (int i = 0; i < order.length; i++) {
+			order[i] = i;
+		}
+		Arrays.sort(order, (a, b) -> Double.compare(fitness[a], fitness[b]));
+		double[] ranks = new double[fitness.length];
+		for (int r = 0; r < order.length; r++) {
+			ranks[order[r]] = order.length > 1 ? (double) r / (order.length - 1) - 0.5 : 0;
+		}
+		return ranks;
+	}
+
+	public static void main(String[] args) throws IOException {
+		// Take out the settings of the evolution and leave the rest to TrainerConfig
+		List<String> rest = new ArrayList<>();
+		var options = TrainerConfig.extract(args, List.of("generations", "population", "sigma", "alpha",
+				"episodes", "maxTicks", "evalEvery", "evalEpisodes", "init"), rest);
+		var config = TrainerConfig.parse(rest.toArray(new String[0]));
+
+		BasicNetwork network = options.containsKey("init")
+				? (BasicNetwork) EncogDirectoryPersistence.loadObject(new File(options.getProperty("init")))
+				: new NeuralNetworkTrainer().createNetwork(config);
+		var trainer = new EvolutionTrainer(config, network);
+		for (var name : options.stringPropertyNames()) {
+			var value = options.getProperty(name);
+			switch (name) {
+			case "generations" -> trainer.generations = Integer.parseInt(value);
+			case "population" -> trainer.population = Integer.parseInt(value);
+			case "sigma" -> trainer.sigma = Double.parseDouble(value);
+			case "alpha" -> trainer.alpha = Double.parseDouble(value);
+			case "episodes" -> trainer.episodes = Integer.parseInt(value);
+			case "maxTicks" -> trainer.maxTicks = Long.parseLong(value);
+			case "evalEvery" -> trainer.evalEvery = Integer.parseInt(value);
+			case "evalEpisodes" -> trainer.evalEpisodes = Integer.parseInt(value);
+			}
+		}
+
+		double best = trainer.train();
+		System.out.printf(Locale.ROOT, "Best evaluation: %.1fs mean survival%n", ModelEvaluator.toSeconds(Math.round(best)));
+	}
+}
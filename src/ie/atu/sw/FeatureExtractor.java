@@ -0,0 +1,58 @@
+package ie.atu.sw;
+
+import org.encog.neural.networks.BasicNetwork;
+
+/*
+ * Turns the state of a Simulation into the feature vector that a network is
+ * trained on and flies with. Every extractor has a spec, a short string that
+ * names it and its settings, which is all that is needed to build it again:
+ *
+ *   classic                      the original 5 features (ClassicFeatures)
+ *   lookahead:horizon:history    the gap in each of the next horizon columns
+ *                                and the last history moves (LookaheadFeatures)
+ *
+ * The spec travels with everything made from the features: a trained network
+ * stores it as its "features" property, and recorded data carries the feature
+ * names in the header of the CSV file. That way a model always flies with the
+ * features it was trained on.
+ *
+ * Extractors hold no state of their own, so one instance can be shared by any
+ * number of simulations and threads.
+ */
+public interface FeatureExtractor {
+	// The name of the network property that holds the spec
+	String PROPERTY = "features";
+
+	// The number of values written by extract()
+	int getFeatureCount();
+
+	// The name of each feature, as used in the header of a data file
+	String[] getFeatureNames();
+
+	// The number of columns ahead of the plane that extract() reads
+	int getHorizon();
+
+	// The spec that forName() turns back into this extractor
+	String getSpec();
+
+	// Writes the features of the current state of the simulation into the vector and returns it
+	double[] extract(Simulation sim, double[] vector);
+
+	// Builds the extractor described by a spec
+	static FeatureExtractor forName(String spec) {
+		var parts = spec.trim().split(":");
+		return switch (parts[0]) {
+		case "classic" -> ClassicFeatures.INSTANCE;
+		case "lookahead" -> new LookaheadFeatures(
+				parts.length > 1 ? Integer.parseInt(parts[1]) : LookaheadFeatures.DEFAULT_HORIZON,
+				parts.length > 2 ? Integer.parseInt(parts[2]) : LookaheadFeatures.DEFAULT_HISTORY);
+		default -> throw new IllegalArgumentException("Unknown features: " + spec);
+		};
+	}
+
+	// The extractor a network was trained with. Older models without the property use the classic features.
+	static FeatureExtractor forNetwork(BasicNetwork network) {
+		var spec = network.getPropertyString(PROPERTY);
+		return spec == null ? ClassicFeatures.INSTANCE : forName(spec);
+	}
+}
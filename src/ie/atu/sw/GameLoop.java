@@ -0,0 +1,282 @@
+package ie.atu.sw;
+
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.ObjIntConsumer;
+import java.util.function.ObjLongConsumer;
+
+/*
+ * Runs a Simulation on a thread of its own at a fixed timestep, so that the
+ * game plays the same however long painting or inference takes. Each tick is
+ * TIMER_INTERVAL ms of game time, and the speed decides how much wall time it
+ * gets: 1x plays in real time, 10x ten times faster and uncapped as fast as
+ * the CPU allows. When the loop falls behind it drops the lost time instead of
+ * rushing through a burst of ticks to catch up.
+ *
+ * The simulation belongs to the loop thread, autopilot included, so inference
+ * never runs on the event dispatch thread. Everything else talks to the loop
+ * in one of three ways:
+ *
+ *   move()     queues a move from the keyboard for the next tick
+ *   submit()   runs a command, e.g. a reset, on the loop thread between ticks
+ *   getFrame() the latest immutable snapshot of the game, for painting
+ *
+ * A frame is published after every tick, or at most once per FRAME_NANOS when
+ * uncapped, and the frame listener is told about it (GameView repaints). The
+ * tick listener is told about every tick the plane survives, on the loop
+ * thread, so anything done per tick of game time keeps pace with the game at
+ * any speed. Once the plane crashes the loop waits for a command, such as a
+ * reset, and any key pressed meanwhile is forgotten.
+ *
+ * Every tick is timed for Metrics, which counts a tick that ends after its
+ * slot as missed and works out why.
+ */
+public class GameLoop {
+	private static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(Simulation.TIMER_INTERVAL);
+	private static final long FRAME_NANOS = TimeUnit.MILLISECONDS.toNanos(16); // About the refresh rate of a display
+	private static final int MAX_LAG_TICKS = 5; // Behind by more than this, the lost time is dropped
+
+	// How fast game time passes compared to real time
+	public enum Speed {
+		NORMAL("1x", 1), FAST("10x", 10), UNCAPPED("uncapped", 0);
+
+		private final String label;
+		private final int factor; // 0 for no limit
+
+		Speed(String label, int factor) {
+			this.label = label;
+			this.factor = factor;
+		}
+
+		public String toString() {
+			return label;
+		}
+	}
+
+	/*
+	 * A snapshot of the game after a tick. The grid is a copy of the simulation's
+	 * and the features are what was sampled at the start of the tick. Nothing in
+	 * a frame is changed once it is published.
+	 */
+	public record Frame(CavernGrid grid, int playerColumn, int playerRow, long time, boolean gameOver, Speed speed,
+			double[] features) {
+		// Returns true if the cell at column x and row y is a wall
+		public boolean isSolid(int x, int y) {
+			return grid.isSolid(x, y);
+		}
+	}
+
+	private final Simulation sim;
+	private final Queue<Integer> moves = new ConcurrentLinkedQueue<>();
+	private final BlockingQueue<Runnable> commands = new LinkedBlockingQueue<>();
+
+	private volatile Speed speed = Speed.NORMAL;
+	private volatile Autopilot autopilot;
+	private volatile Frame frame;
+
+	private volatile Consumer<Frame> frameListener;
+	private volatile ObjIntConsumer<double[]> moveListener;
+	private volatile ObjLongConsumer<double[]> tickListener;
+	private volatile Runnable crashListener;
+
+	private Thread thread;
+	private volatile boolean running;
+
+	// How long the parts of the current tick took, for Metrics
+	private long sampleNanos;
+	private long autopilotNanos;
+
+	public GameLoop(Simulation sim) {
+		this.sim = sim;
+	}
+
+	// Starts the loop thread. The simulation must not be touched by any other thread from now on.
+	public synchronized void start() {
+		if (thread != null) {
+			return;
+		}
+		running = true;
+		Metrics.gcMillis(); // Sets up the metrics before the first tick is timed
+		publish(sim.sample());
+		thread = new Thread(this::run, "game-loop");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	// Stops the loop thread and waits for it to finish its tick
+	public synchronized void stop() throws InterruptedException {
+		if (thread == null) {
+			return;
+		}
+		running = false;
+		thread.interrupt();
+		thread.join();
+		thread = null;
+	}
+
+	// The body of the loop thread
+	private void run() {
+		long next = System.nanoTime();
+		long lastFrame = next;
+		long due = next; // When the loop meant to wake up for this tick
+		try {
+			while (running) {
+				// A crashed game waits for something to happen, e.g. a reset
+				if (sim.isGameOver()) {
+					commands.take().run();
+					moves.clear(); // Keys pressed at the wreck are not moves of the next game
+					publish(sim.sample());
+					next = lastFrame = due = System.nanoTime();
+					continue;
+				}
+				Runnable command;
+				while ((command = commands.poll()) != null) {
+					command.run();
+				}
+
+				var current = speed;
+				long start = System.nanoTime();
+				long gcBefore = Metrics.gcMillis();
+				var features = step();
+				var ticked = tickListener;
+				if (ticked != null && !sim.isGameOver()) {
+					ticked.accept(features, sim.getTime());
+				}
+				long now = System.nanoTime();
+				long published = now;
+				if (current.factor > 0 || sim.isGameOver() || now - lastFrame >= FRAME_NANOS) {
+					// Uncapped, only publish as many frames as the display can show
+					publish(features);
+					lastFrame = now;
+					published = System.nanoTime();
+					Metrics.PUBLISH.record(published - now);
+				}
+				long tick = current.factor == 0 ? 0 : TICK_NANOS / current.factor;
+				Metrics.tick(sim.getTime(), Math.max(0, start - due), published - start,
+						sampleNanos, autopilotNanos, published - now, gcBefore, tick);
+				if (sim.isGameOver() && crashListener != null) {
+					crashListener.run();
+				}
+
+				due = now;
+				if (current.factor == 0) {
+					next = now;
+				} else {
+					next += tick;
+					if (now - next > MAX_LAG_TICKS * tick) {
+						next = now; // Too far behind to catch up without a burst of ticks
+					} else if (next > now) {
+						due = next;
+						TimeUnit.NANOSECONDS.sleep(next - now);
+					}
+				}
+			}
+		} catch (InterruptedException e) {
+			// Stopped
+		}
+	}
+
+	/*
+	 * Plays one tick: scroll the cavern, let the autopilot and then the keyboard
+	 * move the plane, and check for a crash. Returns the features sampled at the
+	 * start of the tick.
+	 */
+	private double[] step() {
+		sim.tick();
+		long start = System.nanoTime();
+		var features = sim.sample();
+		long sampled = System.nanoTime();
+		sampleNanos = sampled - start;
+		Metrics.SAMPLE.record(sampleNanos);
+
+		var pilot = autopilot;
+		autopilotNanos = 0;
+		if (pilot != null) {
+			// Validate the action before moving
+			int action = pilot.nextMove(sim);
+			autopilotNanos = System.nanoTime() - sampled;
+			Metrics.AUTOPILOT.record(autopilotNanos);
+			if (action >= -1 && action <= 1) {
+				sim.move(action);
+			} else {
+				System.err.println("Warning: Invalid action received: " + action);
+			}
+		}
+
+		// Every key press is logged with the state that it was made in
+		Integer move;
+		while ((move = moves.poll()) != null) {
+			var listener = moveListener;
+			if (listener != null) {
+				listener.accept(sim.sample(), move);
+			}
+			sim.move(move);
+		}
+
+		sim.checkCollision();
+		return features;
+	}
+
+	// Takes a snapshot of the simulation and hands it to the frame listener
+	private void publish(double[] features) {
+		var snapshot = new Frame(sim.getGrid().copy(), sim.getPlayerColumn(), sim.getPlayerRow(), sim.getTime(),
+				sim.isGameOver(), speed, features);
+		frame = snapshot;
+		var listener = frameListener;
+		if (listener != null) {
+			listener.accept(snapshot);
+		}
+	}
+
+	// Queues a move of the plane for the next tick
+	public void move(int step) {
+		moves.add(step);
+	}
+
+	// Runs the command on the loop thread before the next tick, or right away once the game is over
+	public void submit(Runnable command) {
+		commands.add(command);
+	}
+
+	// The latest snapshot of the game, or null before the loop has started
+	public Frame getFrame() {
+		return frame;
+	}
+
+	public Speed getSpeed() {
+		return speed;
+	}
+
+	public void setSpeed(Speed speed) {
+		this.speed = speed;
+	}
+
+	// Flies the plane with the autopilot, or leaves it to the keyboard if null
+	public void setAutopilot(Autopilot autopilot) {
+		this.autopilot = autopilot;
+	}
+
+	// Called on the loop thread with every published frame
+	public void setFrameListener(Consumer<Frame> frameListener) {
+		this.frameListener = frameListener;
+	}
+
+	// Called on the loop thread with the state and the move for every key press
+	public void setMoveListener(ObjIntConsumer<double[]> moveListener) {
+		this.moveListener = moveListener;
+	}
+
+	// Called on the loop thread with the features sampled at the start of every tick the plane survives, and its time
+	public void setTickListener(ObjLongConsumer<double[]> tickListener) {
+		this.tickListener = tickListener;
+	}
+
+	// Called on the loop thread when the plane crashes
+	public void setCrashListener(Runnable crashListener) {
+		this.crashListener = crashListener;
+	}
+}
@@ -1,7 +1,5 @@
 package ie.atu.sw;
 
-import static java.lang.Math.max;
-import static java.lang.Math.min;
 import static java.util.concurrent.ThreadLocalRandom.current;
 
 import java.awt.Color;
@@ -9,98 +7,147 @@ import java.awt.Dimension;
 import java.awt.Font;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
-import java.awt.event.ActionEvent;
-import java.awt.event.ActionListener;
-import java.util.Arrays;
-import java.util.LinkedList;
+import java.awt.image.BufferedImage;
 
 import javax.swing.JPanel;
-import javax.swing.Timer;
 
-import org.encog.neural.networks.BasicNetwork;
-import org.encog.persist.EncogDirectoryPersistence;
-import org.encog.ml.data.MLData;
-import org.encog.ml.data.basic.BasicMLData;
-
-import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
+import java.io.UncheckedIOException;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ObjIntConsumer;
+import java.util.function.ObjLongConsumer;
 
-public class GameView extends JPanel implements ActionListener {
+public class GameView extends JPanel {
 	// Some constants
 	private static final long serialVersionUID = 1L;
-	private static final int MODEL_WIDTH = 30;
-	private static final int MODEL_HEIGHT = 20;
-	private static final int SCALING_FACTOR = 30;
-
-	private static final int MIN_TOP = 2;
-	private static final int MIN_BOTTOM = 18;
-	private static final int PLAYER_COLUMN = 15;
-	private static final int TIMER_INTERVAL = 100;
+	private static final int SCALING_FACTOR = SpriteAtlas.SPRITE_CELL; // The size of a cell, unless the world is too big for it
+	private static final int MAX_VIEW_WIDTH = 1800;
+	private static final int MAX_VIEW_HEIGHT = 1000;
 
-	private static final byte ONE_SET = 1;
-	private static final byte ZERO_SET = 0;
+	private static final int TIMER_INTERVAL = Simulation.TIMER_INTERVAL;
+	private static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(TIMER_INTERVAL);
 
 	/*
-	 * The 30x20 game grid is implemented using a linked list of 30 elements, where
-	 * each element contains a byte[] of size 20.
+	 * The cavern, the plane and the collision check all live in the headless
+	 * simulation, which the game loop plays on a thread of its own. This class
+	 * only draws the frames that the loop publishes and passes input to it.
 	 */
-	private LinkedList<byte[]> model = new LinkedList<>();
-
-	// These two variables are used by the cavern generator.
-	private int prevTop = MIN_TOP;
-	private int prevBot = MIN_BOTTOM;
+	private final WorldConfig world;
+	private final Simulation sim;
+	private final GameLoop loop;
+	private EpisodeLog episode;
 
-	// Once the timer stops, the game is over
-	private Timer timer;
-	private long time;
-
-	private int playerRow = 11;
-	private int index = MODEL_WIDTH - 1; // Start generating at the end
 	private Dimension dim;
+	private int scale; // The size of a cell in pixels
+
+	// Keeps the cavern drawn between frames
+	private CavernRenderer renderer;
 
 	// Some fonts for the UI display
 	private Font font = new Font("Dialog", Font.BOLD, 50);
 	private Font over = new Font("Dialog", Font.BOLD, 100);
+	private Font small = new Font(Font.MONOSPACED, Font.PLAIN, 14);
+
+	// The metrics overlay, off until M is pressed
+	private static final Color OVERLAY = new Color(0, 0, 0, 180);
+	private volatile boolean overlay;
 
 	// The player and a sprite for an exploding plane
 	private Sprite sprite;
 	private Sprite dyingSprite;
 
+	// The frame the plane crashed in and when it was first painted, for the explosion
+	private GameLoop.Frame crashFrame;
+	private long crashNanos;
+
 	private boolean auto;
+	private final HotSwapAutopilot autopilot;
+	private ModelWatcher watcher; // Reloads the models when their files change, until the view is disposed
+
+	// Flies instead of the models while planning is true, as a baseline to compare them with
+	private final PlannerAutopilot planner = new PlannerAutopilot();
+	private volatile boolean planning;
 
 	public GameView(boolean auto) throws Exception {
+		this(auto, new WorldConfig());
+	}
+
+	// A view of a world of any size. Cells shrink until the world fits on the screen.
+	public GameView(boolean auto, WorldConfig world) throws Exception {
+		this(auto, world, new HotSwapAutopilot(world));
+	}
+
+	/*
+	 * A view flown by the given models. If slot A is empty the model is loaded
+	 * here, on the calling thread, so Runner loads it before the window is built
+	 * to keep the parsing off the event dispatch thread.
+	 */
+	public GameView(boolean auto, WorldConfig world, HotSwapAutopilot autopilot) throws Exception {
 		this.auto = auto; // Use the autopilot
+		this.autopilot = autopilot;
+		this.world = world;
+		this.sim = world.newSimulation(current().nextLong());
+		this.loop = new GameLoop(sim);
 		setBackground(Color.LIGHT_GRAY);
 		setDoubleBuffered(true);
 
-		// Creates a viewing area of 900 x 600 pixels
-		dim = new Dimension(MODEL_WIDTH * SCALING_FACTOR, MODEL_HEIGHT * SCALING_FACTOR);
+		// Creates a viewing area of 900 x 600 pixels for the original world
+		int width = sim.getWidth();
+		int height = sim.getHeight();
+		scale = Math.max(1, Math.min(SCALING_FACTOR, Math.min(MAX_VIEW_WIDTH / width, MAX_VIEW_HEIGHT / height)));
+		dim = new Dimension(width * scale, height * scale);
 		super.setPreferredSize(dim);
 		super.setMinimumSize(dim);
 		super.setMaximumSize(dim);
+		setOpaque(true); // Every pixel is painted, so Swing need not paint what is behind
+		renderer = new CavernRenderer(width, height, scale, font);
 
-		initModel();
+		startRecording();
 
-		timer = new Timer(TIMER_INTERVAL, this); // Timer calls actionPerformed() every second
-		timer.start();
+		// The model decides which features are sampled, so load it first.
+		// Models swapped in later fly with their own features, but the data
+		// file keeps the features it was opened with.
+		if (autopilot.get(HotSwapAutopilot.A) == null) {
+			loadModel();
+		}
+		sim.setFeatures(autopilot.get(HotSwapAutopilot.A).pilot().getFeatures());
 
 		// Ensure the data file exists or create it with the header
 		initializeDataFile();
 
-		loadModel();
+		// Repaint whenever the loop has a new frame and save the episode on a crash
+		loop.setAutopilot(auto ? autopilot : null);
+		loop.setFrameListener(frame -> repaint());
+		loop.setCrashListener(this::saveEpisode);
+
+		// Swap in a model as soon as its file is rewritten, e.g. by a trainer
+		try {
+			watcher = autopilot.watch();
+		} catch (IOException e) {
+			System.err.println("Error watching the model files, models will not be reloaded: " + e.getMessage());
+		}
 	}
 
-	// Build our game grid
-	private void initModel() {
-		for (int i = 0; i < MODEL_WIDTH; i++) {
-			model.add(new byte[MODEL_HEIGHT]);
+	// Stops watching the model files once the window the view is in has been disposed
+	public void removeNotify() {
+		super.removeNotify();
+		if (watcher != null) {
+			try {
+				watcher.close();
+			} catch (IOException e) {
+				System.err.println("Error closing the model watcher: " + e.getMessage());
+			}
+			watcher = null;
 		}
 	}
 
+	// Starts playing. Call once the sprites are set.
+	public void start() {
+		loop.start();
+	}
+
 	public void setSprite(Sprite s) {
 		this.sprite = s;
 	}
@@ -109,303 +156,239 @@ public class GameView extends JPanel implements ActionListener {
 		this.dyingSprite = s;
 	}
 
-	// Called every second by actionPerformed(). Paint methods are usually ugly.
+	// Paints the latest frame from the game loop. Paint methods are usually ugly.
 	public void paintComponent(Graphics g) {
-		super.paintComponent(g);
+		var frame = loop.getFrame();
+		if (frame == null) {
+			super.paintComponent(g);
+			return; // Not started yet
+		}
+		long start = System.nanoTime();
 		var g2 = (Graphics2D) g;
 
-		g2.setColor(Color.WHITE);
-		g2.fillRect(0, 0, dim.width, dim.height);
-
-		int x1 = 0, y1 = 0;
-		for (int x = 0; x < MODEL_WIDTH; x++) {
-			for (int y = 0; y < MODEL_HEIGHT; y++) {
-				x1 = x * SCALING_FACTOR;
-				y1 = y * SCALING_FACTOR;
-
-				if (model.get(x)[y] != 0) {
-					if (y == playerRow && x == PLAYER_COLUMN) {
-						timer.stop(); // Crash...
-					}
-					g2.setColor(Color.BLACK);
-					g2.fillRect(x1, y1, SCALING_FACTOR, SCALING_FACTOR);
-				}
-
-				if (x == PLAYER_COLUMN && y == playerRow) {
-					if (timer.isRunning()) {
-						g2.drawImage(sprite.getNext(), x1, y1, null);
-					} else {
-						g2.drawImage(dyingSprite.getNext(), x1, y1, null);
-					}
-
+		// The renderer only draws the columns that scrolled in since the last frame
+		g2.drawImage(renderer.render(frame), 0, 0, null);
+
+		// The sprites come from the SpriteAtlas already scaled for the cells and made
+		// for the screen the view is on, and animate with game time. Game time stops
+		// at a crash, so the explosion runs on the clock at one frame per tick of
+		// normal speed.
+		int x1 = frame.playerColumn() * scale;
+		int y1 = frame.playerRow() * scale;
+		if (sprite != null && dyingSprite != null) {
+			var config = getGraphicsConfiguration();
+			BufferedImage image;
+			if (frame.gameOver()) {
+				if (crashFrame != frame) {
+					crashFrame = frame;
+					crashNanos = System.nanoTime();
 				}
+				image = dyingSprite.getFrame((System.nanoTime() - crashNanos) / TICK_NANOS, scale, config);
+				repaint(TIMER_INTERVAL);
+			} else {
+				image = sprite.getFrame(frame.time(), scale, config);
 			}
+			g2.drawImage(image, x1, y1, null);
 		}
 
 		/*
-		 * Not pretty, but good enough for this project... The compiler will tidy up and
-		 * optimise all of the arithmetics with constants below.
+		 * Not pretty, but good enough for this project... The HUD sits in the same
+		 * place from the bottom left whatever the size of the world.
 		 */
-		g2.setFont(font);
 		g2.setColor(Color.RED);
-		g2.fillRect(1 * SCALING_FACTOR, 15 * SCALING_FACTOR, 400, 3 * SCALING_FACTOR);
+		g2.fillRect(30, dim.height - 150, 400, 90);
 		g2.setColor(Color.WHITE);
-		g2.drawString("Time: " + (int) (time * (TIMER_INTERVAL / 1000.0d)) + "s", 1 * SCALING_FACTOR + 10,
-				(15 * SCALING_FACTOR) + (2 * SCALING_FACTOR));
+		var hud = renderer.hud("Time: " + (int) (frame.time() * (TIMER_INTERVAL / 1000.0d)) + "s"
+				+ (frame.speed() != GameLoop.Speed.NORMAL ? " " + frame.speed() : ""), g2.getFontRenderContext());
+		hud.draw(g2, 40, dim.height - 90);
+
+		// Samples the data writer could not keep up with, so the player knows the recording has gaps
+		long dropped = dataWriter == null ? 0 : dataWriter.getDropped();
+		if (dropped > 0) {
+			g2.setFont(small);
+			g2.setColor(Color.RED);
+			g2.drawString(dropped + " samples dropped while recording", 30, dim.height - 160);
+		}
 
-		if (!timer.isRunning()) {
+		if (frame.gameOver()) {
 			g2.setFont(over);
 			g2.setColor(Color.RED);
-			g2.drawString("Game Over!", MODEL_WIDTH / 5 * SCALING_FACTOR, MODEL_HEIGHT / 2 * SCALING_FACTOR);
+			g2.drawString("Game Over!", dim.width / 5, dim.height / 2);
 		}
-	}
-
-	BasicNetwork network;
-
-	// Load the trained model by NeuralNetworkTrainer
-	public void loadModel() {
-		network = (BasicNetwork) EncogDirectoryPersistence.loadObject(new File("resources/trainingModel.eg"));
-	}
 
-	// Move the plane up or down
-	public void move(int step) {
-		playerRow += step;
+		if (overlay) {
+			drawOverlay(g2);
+		}
+		Metrics.paint(System.nanoTime() - start);
 	}
 
-	/*
-	 * ---------- AUTOPILOT! ---------- The following implementation randomly picks
-	 * a -1, 0, 1 to control the plane. You should plug the trained neural network
-	 * in here. This method is called by the timer every TIMER_INTERVAL units of
-	 * time from actionPerformed(). There are other ways of wiring your neural
-	 * network into the application, but this way might be the easiest.
-	 * 
-	 */
-	private void autoMove() {
-		// Sample the current game state before making a move
-		double[] currentState = sample();
-
-		// Encog requires MLData for input
-		MLData input = new BasicMLData(currentState);
-		MLData output = network.compute(input);
-
-		// Determine the action with the highest output value
-		int actionIndex = getMaxIndex(output.getData());
-		int action = indexToAction(actionIndex); // Convert index to action (-1, 0, 1)
-
-		// Validate the action before moving
-		if (action >= -1 && action <= 1) {
-			move(action);
-		} else {
-			// Error handling if incase conversion is incorrect
-			System.err.println("Warning: Invalid action received: " + action);
+	// Draws the latest Metrics in the top left corner
+	private void drawOverlay(Graphics2D g2) {
+		var lines = new ArrayList<>(Metrics.overlay());
+		lines.add(planning ? "*" + planner + "  " + autopilot : autopilot.toString());
+		var metrics = g2.getFontMetrics(small);
+		int width = lines.stream().mapToInt(metrics::stringWidth).max().orElse(0);
+		int lineHeight = metrics.getHeight();
+		g2.setColor(OVERLAY);
+		g2.fillRect(10, 10, width + 10, lines.size() * lineHeight + 10);
+		g2.setFont(small);
+		g2.setColor(Color.GREEN);
+		for (int i = 0; i < lines.size(); i++) {
+			g2.drawString(lines.get(i), 15, 10 + (i + 1) * lineHeight);
 		}
+	}
 
-		// Remove this commented out code to launch the game in autopilot with random
-		// movement
-		// Decide on a move: -1 (up), 0 (nowhere), 1 (down)
-		// int action = current().nextInt(-1, 2);
-		// Log the game state and the action taken
-		// logData(currentState, action);
+	// Shows or hides the metrics overlay
+	public void toggleOverlay() {
+		overlay = !overlay;
+		repaint();
 	}
 
-	private int indexToAction(int index) {
-		// Map the neural network's output index back to game action
-		return index - 1; // indexes 0, 1, 2 map to actions -1, 0, 1
+	// The model trained by NeuralNetworkTrainer, which flies the plane unless another is given
+	public static final String MODEL_FILE = "resources/trainingModel.eg";
+
+	// Load the trained model by NeuralNetworkTrainer into slot A. This blocks while the file is parsed.
+	public void loadModel() {
+		autopilot.load(HotSwapAutopilot.A, Paths.get(MODEL_FILE));
 	}
 
-	// Find the index of the maximum value in the array
-	private int getMaxIndex(double[] array) {
-		int maxIndex = 0;
-		// Iterate through the array starting from the second element
-		for (int i = 1; i < array.length; i++) {
-			// Check if the current element is greater than the maximum value
-			if (array[i] > array[maxIndex]) {
-				// Update the index of the maximum value
-				maxIndex = i;
+	// Lets the model in slot A or B fly the plane from the next tick on
+	public void selectModel(int slot) {
+		if (autopilot.get(slot) != null) {
+			autopilot.select(slot);
+			planning = false;
+			if (auto) {
+				loop.setAutopilot(autopilot);
 			}
+			System.out.println("Model " + HotSwapAutopilot.name(slot) + " is flying: " + autopilot.get(slot));
 		}
-		return maxIndex;
 	}
 
-	// Called every second by the timer
-	public void actionPerformed(ActionEvent e) {
-		time++; // Update our timer
-		this.repaint(); // Repaint the cavern
-
-		// Update the next index to generate
-		index++;
-		index = (index == MODEL_WIDTH) ? 0 : index;
-
-		generateNext(); // Generate the next part of the cave
-		if (auto)
-			autoMove();
-
-		/*
-		 * Use something like the following to extract training data. It might be a good
-		 * idea to submit the double[] returned by the sample() method to an executor
-		 * and then write it out to file. You'll need to label the data too and perhaps
-		 * add some more features... Finally, you do not have to sample the data every
-		 * TIMER_INTERVAL units of time. Use some modular arithmetic as shown below.
-		 * Alternatively, add a key stroke to fire an event that starts the sampling.
-		 */
-		if (time % 10 == 0) {
-			/*
-			 * double[] trainingRow = sample();
-			 * System.out.println(Arrays.toString(trainingRow));
-			 */
+	// Lets the PlannerAutopilot fly the plane from the next tick on, until a model is selected again
+	public void selectPlanner() {
+		planning = true;
+		if (auto) {
+			loop.setAutopilot(planner);
 		}
+		System.out.println(planner + " is flying");
 	}
 
-	/*
-	 * Generate the next layer of the cavern. Use the linked list to move the
-	 * current head element to the tail and then randomly decide whether to increase
-	 * or decrease the cavern.
-	 */
-	private void generateNext() {
-		var next = model.pollFirst();
-		model.addLast(next); // Move the head to the tail
-		Arrays.fill(next, ONE_SET); // Fill everything in
-
-		// Flip a coin to determine if we could grow or shrink the cave
-		var minspace = 4; // Smaller values will create a cave with smaller spaces
-		prevTop += current().nextBoolean() ? 1 : -1;
-		prevBot += current().nextBoolean() ? 1 : -1;
-		prevTop = max(MIN_TOP, min(prevTop, prevBot - minspace));
-		prevBot = min(MIN_BOTTOM, max(prevBot, prevTop + minspace));
-
-		// Fill in the array with the carved area
-		Arrays.fill(next, prevTop, prevBot, ZERO_SET);
+	// Move the plane up or down at the next tick of the game loop
+	public void move(int step) {
+		loop.move(step);
 	}
 
 	/*
-	 * Use this method to get a snapshot of the 30x20 matrix of values that make up
-	 * the game grid. The grid is flat-mapped into a single dimension double
-	 * array... (somewhat) ready to be used by a neural net. You can experiment
-	 * around with how much of this you actually will need. The plane is always
-	 * somewhere in column PLAYER_COLUMN and you probably do not need any of the
-	 * columns behind this. You can consider all of the columns ahead of
-	 * PLAYER_COLUMN as your horizon and this value can be reduced to save space and
-	 * time if needed, e.g. just look 1, 2 or 3 columns ahead.
-	 * 
-	 * You may also want to track the last player movement, i.e. up, down or no
-	 * change. Depending on how you design your neural network, you may also want to
-	 * label the data as either okay or dead. Alternatively, the label might be the
-	 * movement (up, down or straight).
-	 * 
+	 * ---------- AUTOPILOT! ---------- The trained neural network is plugged in
+	 * through the NetworkAutopilot, which the game loop asks for a move every
+	 * tick on its own thread, so a slow network never holds up painting. The
+	 * same autopilot can fly a headless Simulation without any of the Swing
+	 * machinery. It sits in a slot of the HotSwapAutopilot, so a retrained
+	 * model takes over between two ticks without restarting the game. The P key
+	 * hands the controls to a PlannerAutopilot instead, which searches the
+	 * cavern ahead and shows what the models could be doing.
 	 */
 
-	// Samples the current game state and generates a feature vector for the neural
-	// network input.
-	public double[] sample() {
-		// Initialize the feature vector with 5 elements
-		var vector = new double[5];
-
-		// Initialize variables to track obstacle positions and distances
-		boolean obstacleDirectlyAhead = false;
-		double distanceAbove = 0.0;
-		double distanceBelow = 0.0;
-
-		// Calculate distance to the nearest obstacle above and below in the next column
-		byte[] nextColumn = model.get((PLAYER_COLUMN + 1) % MODEL_WIDTH);
-		for (int i = playerRow - 1; i >= 0; i--) {
-			if (nextColumn[i] == ONE_SET) {
-				break;
-			}
-			distanceAbove += 1.0;
-		}
-
-		for (int i = playerRow + 1; i < MODEL_HEIGHT; i++) {
-			if (nextColumn[i] == ONE_SET) {
-				break;
-			}
-			distanceBelow += 1.0;
-		}
-
-		// Check if there's an obstacle directly ahead in the immediate next column
-		if (nextColumn[playerRow] == ONE_SET) {
-			obstacleDirectlyAhead = true;
-		}
-
-		// Normalize the distances
-		distanceAbove /= MODEL_HEIGHT; // Normalize
-		distanceBelow /= MODEL_HEIGHT; // Normalize
+	// Sets how fast the game plays: 1x, 10x or uncapped
+	public void setSpeed(GameLoop.Speed speed) {
+		loop.setSpeed(speed);
+	}
 
-		// Populate the feature vector
-		vector[0] = distanceAbove; // Normalized distance to the nearest obstacle above
-		vector[1] = distanceBelow; // Normalized distance to the nearest obstacle below
-		vector[2] = obstacleDirectlyAhead ? 1.0 : 0.0; // Binary flag for immediate obstacle
-		vector[3] = playerRow / (double) MODEL_HEIGHT; // Normalized player row position
+	// Called on the game loop thread with the state and move of every key press
+	public void setMoveListener(ObjIntConsumer<double[]> listener) {
+		loop.setMoveListener(listener);
+	}
 
-		// Check if theres an obstacle in the second column ahead
-		byte[] secondColumn = model.get((PLAYER_COLUMN + 2) % MODEL_WIDTH);
-		boolean obstacleInSecondColumnAhead = secondColumn[playerRow] == ONE_SET;
-		vector[4] = obstacleInSecondColumnAhead ? 1.0 : 0.0; // Binary flag for obstacle in the second column ahead
+	// Called on the game loop thread with the state at the start of every tick the plane survives, and its time
+	public void setTickListener(ObjLongConsumer<double[]> listener) {
+		loop.setTickListener(listener);
+	}
 
-		return vector;
+	// The features sampled at the start of the latest tick. See FeatureExtractor for the features.
+	public double[] sample() {
+		var frame = loop.getFrame();
+		return frame != null ? frame.features().clone() : new double[sim.getFeatureCount()];
 	}
 
 	/*
 	 * Resets and restarts the game when the "S" key is pressed
 	 */
 	public void reset() {
-		model.stream() // Zero out the grid
-				.forEach(n -> Arrays.fill(n, 0, n.length, ZERO_SET));
-		playerRow = 11; // Centre the plane
-		time = 0; // Reset the clock
-		timer.restart(); // Start the animation
+		long seed = current().nextLong();
+		loop.submit(() -> {
+			sim.reset(seed); // Zero out the grid, centre the plane and carve a new cave
+			startRecording();
+		});
 	}
 
-	// Path to the CSV file used for logging game data.
-	private static final String DATA_FILE_PATH = "resources/game_data.csv";
+	// Path to the file that the last episode is saved to when the plane crashes.
+	private static final String EPISODE_FILE_PATH = "resources/last_episode.log";
 
-	// Logs the game state data along with the action taken by the player.
-	public void logData(double[] gameState, int action) {
-		try (FileWriter fw = new FileWriter(DATA_FILE_PATH, true)) {
-			// Write the game state features and the action to the CSV file
-			for (double value : gameState) {
-				fw.append(Double.toString(value)).append(",");
-			}
-			fw.append(Integer.toString(action)).append("\n");
-			// Debug log
-			System.out.println("Logged game data: " + Arrays.toString(gameState) + ", Action: " + action);
+	// Starts recording the moves of the current episode so a crash can be replayed
+	private void startRecording() {
+		episode = new EpisodeLog(world, sim.getSeed());
+		sim.setRecorder(episode);
+	}
+
+	// Saves the episode that just ended so it can be replayed with EpisodeLog
+	private void saveEpisode() {
+		try {
+			episode.save(Paths.get(EPISODE_FILE_PATH));
+			System.out.println("Game over after " + sim.getTime() + " ticks (seed " + sim.getSeed()
+					+ "), episode saved to " + EPISODE_FILE_PATH);
 		} catch (IOException e) {
-			System.err.println("Error writing to game data file: " + e.getMessage());
-			e.printStackTrace(); // Print stack trace for debugging
+			System.err.println("Error saving episode: " + e.getMessage());
 		}
 	}
 
-	// Initializes the game data file if it does not exist, adding headers for the
-	// features and action.
+	// Path to the CSV file used for logging game data with the classic features.
+	private static final String DATA_FILE_PATH = "resources/game_data.csv";
+
+	// Data sampled with any other features goes into a file of its own, e.g.
+	// resources/game_data_lookahead_6_2.csv, so the columns never get mixed up
+	private static String dataFilePath(FeatureExtractor features) {
+		return features instanceof ClassicFeatures ? DATA_FILE_PATH
+				: "resources/game_data_" + features.getSpec().replace(':', '_') + ".csv";
+	}
+
+	// Writes the logged samples to the data file on a background thread
+	private TrainingDataWriter dataWriter;
+
+	/*
+	 * Logs the game state data along with the action taken by the player. This is
+	 * called on the game loop thread, so the sample is only queued here and
+	 * written out in batches by the TrainingDataWriter. Rather than hold up the
+	 * game, a sample that does not fit in the queue is dropped, and false is
+	 * returned. The HUD shows how many were dropped while recording.
+	 */
+	public boolean logData(double[] gameState, int action) {
+		return dataWriter != null && dataWriter.submit(gameState, action);
+	}
+
+	// Opens the game data file for logging, creating it with headers for the
+	// features and action if it does not exist.
 	private void initializeDataFile() {
-		Path path = Paths.get(DATA_FILE_PATH);
-		if (!Files.exists(path)) {
-			try {
-				// Create directories for the file if they do not exist
-				Files.createDirectories(path.getParent());
-				// Create the file
-				Files.createFile(path);
-				try (FileWriter fw = new FileWriter(DATA_FILE_PATH, true)) {
-					// Headers for the 5 features plus the action
-					String[] headers = new String[] { "DistanceAbove", "DistanceBelow", "ObstacleDirectlyAhead",
-							"PlayerRowNormalized", "ObstacleSecondColumnAhead", "Action" };
-
-					for (int i = 0; i < headers.length; i++) {
-						fw.append(headers[i]);
-						if (i < headers.length - 1) { // Append comma after all but the last header
-							fw.append(",");
-						}
-					}
-					fw.append("\n"); // New line after the header
+		try {
+			var features = sim.getFeatures();
+			dataWriter = new TrainingDataWriter(Paths.get(dataFilePath(features)), TrainingDataWriter.headers(features));
+			Metrics.watch(dataWriter);
+			// Write out whatever is still queued when the window is closed
+			Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+				try {
+					dataWriter.close();
+				} catch (UncheckedIOException e) {
+					// The writer printed the error when it stopped
 				}
-			} catch (IOException e) {
-				System.err.println("Error initializing game data file: " + e.getMessage());
-			}
+			}));
+		} catch (IOException e) {
+			System.err.println("Error initializing game data file: " + e.getMessage());
 		}
 	}
 
-	// Checks if the game is over by determining if the timer is running.
+	// Checks if the game is over by looking at the latest frame of the game loop.
 	public boolean isGameOver() {
-		return !timer.isRunning();
+		var frame = loop.getFrame();
+		return frame != null && frame.gameOver();
 	}
 
 }
\ No newline at end of file
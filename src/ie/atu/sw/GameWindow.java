@@ -1,44 +1,55 @@
 package ie.atu.sw;
 
 import java.awt.FlowLayout;
-import java.awt.event.ActionEvent;
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
-import javax.swing.Timer;
-import java.awt.event.ActionListener;
 
 import javax.swing.JFrame;
 
 public class GameWindow implements KeyListener {
+	// A stay sample is logged once per second of game time
+	private static final int TICKS_PER_LOG = 1000 / Simulation.TIMER_INTERVAL;
+
 	private GameView view;
-	private Timer logTimer;
 	/*
 	 * Set this to false to be able to do autopilot with trained data To collect
 	 * data set it to true, can also set GameView to false to collect manual data
 	 */
-	private boolean manualPlayMode = false;
+	private volatile boolean manualPlayMode = false;
 
 	public GameWindow() throws Exception {
-		view = new GameView(true); // Use true to get the plane to fly in autopilot mode...
+		this(new WorldConfig());
+	}
+
+	// A window onto a world of the given size and cave rules
+	public GameWindow(WorldConfig world) throws Exception {
+		this(world, new HotSwapAutopilot(world));
+	}
+
+	// A window flown by the models already loaded into the autopilot
+	public GameWindow(WorldConfig world, HotSwapAutopilot autopilot) throws Exception {
+		view = new GameView(true, world, autopilot); // Use true to get the plane to fly in autopilot mode...
 		init();
 		loadSprites();
 
-		// Create a timer to log game state periodically
-		logTimer = new Timer(1000, new ActionListener() { // Adjust the interval as needed
-			public void actionPerformed(ActionEvent e) {
-				logGameState(); // Log game state periodically
+		// Every key press is logged on the game loop thread with the state that led to it
+		view.setMoveListener((gameState, step) -> {
+			if (manualPlayMode) {
+				view.logData(gameState, step); // Log data only in manual play mode
 			}
 		});
-		logTimer.start(); // Start the log timer
-	}
 
-	// Method to log game state
-	public void logGameState() {
-		// Sample the current state before any movement
-		double[] gameState = view.sample();
+		// The state is also logged once per second of game time, on the game loop
+		// thread, so the stay samples keep pace with the game at any speed
+		view.setTickListener((gameState, time) -> logGameState(gameState, time));
+		view.start();
+	}
 
-		// Log the state and action only if the game is not over and in manual play mode
-		if (!view.isGameOver() && manualPlayMode) {
+	// Method to log game state. The state was sampled at the start of the tick, before any movement.
+	public void logGameState(double[] gameState, long time) {
+		// Log the state and action only once a second and in manual play mode. The loop only calls this while
+		// the game is not over.
+		if (time % TICKS_PER_LOG == 0 && manualPlayMode) {
 			view.logData(gameState, 0); // Log action as 0 (no movement)
 		}
 	}
@@ -72,7 +83,9 @@ public class GameWindow implements KeyListener {
 
 	/*
 	 * KEYBOARD OPTIONS ---------------- UP Arrow Key: Moves plane up DOWN Arrow
-	 * Key: Moves plane down S: Resets and restarts the game
+	 * Key: Moves plane down S: Resets and restarts the game 1, 2, 3: Plays at
+	 * 1x, 10x or uncapped speed M: Shows or hides the metrics overlay A, B: Flies
+	 * model A or model B P: Flies the planner instead of a model
 	 * 
 	 * Maybe consider adding options for "start sampling" and "end sampling"
 	 * 
@@ -84,23 +97,41 @@ public class GameWindow implements KeyListener {
 			return;
 		}
 
+		if (e.getKeyCode() == KeyEvent.VK_A || e.getKeyCode() == KeyEvent.VK_B) { // Press "A" or "B" to pick a model
+			view.selectModel(e.getKeyCode() == KeyEvent.VK_A ? HotSwapAutopilot.A : HotSwapAutopilot.B);
+			return;
+		}
+
+		if (e.getKeyCode() == KeyEvent.VK_P) { // Press "P" to let the planner fly
+			view.selectPlanner();
+			return;
+		}
+
+		if (e.getKeyCode() == KeyEvent.VK_M) { // Press "M" for the metrics overlay
+			view.toggleOverlay();
+			return;
+		}
+
+		var speed = switch (e.getKeyCode()) {
+		case KeyEvent.VK_1 -> GameLoop.Speed.NORMAL;
+		case KeyEvent.VK_2 -> GameLoop.Speed.FAST;
+		case KeyEvent.VK_3 -> GameLoop.Speed.UNCAPPED;
+		default -> null;
+		};
+		if (speed != null) {
+			view.setSpeed(speed);
+			return;
+		}
+
 		int step = switch (e.getKeyCode()) {
 		case KeyEvent.VK_UP -> -1; // Press "UP Arrow"
 		case KeyEvent.VK_DOWN -> 1; // Press "DOWN Arrow"
 		default -> 0; // No change. Fly straight
 		};
 
-		// Before moving, sample the current state before it changes due to the action
-		// This step is crucial as it captures the state that led to the decision
-		double[] gameState = view.sample(); 
-		
-		// Perform the move
+		// The move is made at the next tick of the game loop, which samples the state
+		// that led to the decision before moving and hands both to the move listener
 		view.move(step);
-
-		// Log the state and action after the move is made
-		if (manualPlayMode) {
-			view.logData(gameState, step); // Log data only in manual play mode
-		}
 	}
 
 	public void keyReleased(KeyEvent e) {
@@ -0,0 +1,96 @@
+package ie.atu.sw;
+
+import java.util.Arrays;
+
+import org.encog.mathutil.randomize.factory.BasicRandomFactory;
+import org.encog.ml.CalculateScore;
+import org.encog.ml.MLMethod;
+import org.encog.ml.genetic.MLMethodGeneticAlgorithm;
+import org.encog.neural.networks.BasicNetwork;
+
+/*
+ * Evolves a population of networks with Encog's genetic algorithm, scoring
+ * each network by how long it keeps the plane flying rather than by how well
+ * it copies recorded keystrokes. The networks have the layers chosen in the
+ * config, so the winner is an ordinary BasicNetwork that GameView can load.
+ *
+ * Every network flies the same fixed set of caverns, carved from seeds derived
+ * from the config's seed, so scores are comparable between networks and
+ * between runs. Its score is the mean number of ticks survived, capped at
+ * maxTicks. Encog scores the members of the population on threads of its own
+ * (config.threads, 0 for every core). Each thread flies its networks as one
+ * SimulationBatch, so scoring scales with the number of cores.
+ *
+ * Encog's NEAT trainer would evolve the topology as well, but it produces a
+ * NEATNetwork that GameView cannot load, so the topology comes from the config
+ * and only the weights evolve.
+ */
+public class GeneticTrainer implements CalculateScore {
+	private final TrainerConfig config;
+	private final NeuralNetworkTrainer trainer;
+	private final long[] seeds;
+	private final SplitMix64 random;
+
+	// Every scoring thread flies its own batch of simulations
+	private final ThreadLocal<SimulationBatch> batches;
+
+	public GeneticTrainer(TrainerConfig config, NeuralNetworkTrainer trainer) {
+		this.config = config;
+		this.trainer = trainer;
+		this.seeds = ModelEvaluator.episodeSeeds(config.episodes, config.seed);
+		this.random = new SplitMix64(config.seed);
+		var features = FeatureExtractor.forName(config.features);
+		this.batches = ThreadLocal.withInitial(() -> new SimulationBatch(seeds.length, features));
+	}
+
+	// Evolves the population for up to maxEpochs generations and returns the best network
+	public BasicNetwork train() {
+		var genetic = new MLMethodGeneticAlgorithm(this::createNetwork, this, config.population);
+		genetic.setThreadCount(config.threads);
+		genetic.getGenetic().setRandomNumberFactory(new BasicRandomFactory(config.seed));
+
+		System.out.println("Evolving " + config.population + " networks, each flying " + seeds.length
+				+ " caverns of up to " + config.maxTicks + " ticks");
+		long start = System.nanoTime();
+		int generation = 1;
+		do {
+			long generationStart = System.nanoTime();
+			genetic.iteration();
+			Metrics.trainingIteration("genetic", generation, genetic.getError(), System.nanoTime() - generationStart);
+			if (generation % config.logEvery == 0) {
+				System.out.printf("Generation #%d Best survival: %.1fs%n", generation,
+						ModelEvaluator.toSeconds(Math.round(genetic.getError())));
+			}
+			generation++;
+		} while (genetic.getError() < config.maxTicks && generation <= config.maxEpochs);
+		genetic.finishTraining();
+
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.out.printf("Evolved %d generations in %.2fs (%.1f generations/s), best survival: %.1fs%n",
+				generation - 1, seconds, (generation - 1) / seconds,
+				ModelEvaluator.toSeconds(Math.round(genetic.getError())));
+		return (BasicNetwork) genetic.getMethod();
+	}
+
+	// Creates a member of the first generation, seeded so a run can be repeated
+	private synchronized MLMethod createNetwork() {
+		var network = trainer.createNetwork(config);
+		network.reset((int) random.nextLong());
+		return network;
+	}
+
+	// The mean number of ticks the network survives over the fixed set of caverns
+	public double calculateScore(MLMethod method) {
+		var network = new CompiledNetwork((BasicNetwork) method);
+		return Arrays.stream(batches.get().play(network, seeds, config.maxTicks)).average().orElse(0);
+	}
+
+	// Longer flights are better
+	public boolean shouldMinimize() {
+		return false;
+	}
+
+	public boolean requireSingleThreaded() {
+		return false;
+	}
+}
@@ -0,0 +1,157 @@
+package ie.atu.sw;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.encog.neural.networks.BasicNetwork;
+import org.encog.persist.EncogDirectoryPersistence;
+
+/*
+ * An autopilot whose model can be replaced while the game is running. There
+ * are two slots, A and B, each holding a NetworkAutopilot behind a volatile
+ * reference. A new model is parsed and compiled on whichever thread loads it,
+ * usually the ModelWatcher's, and only then put in its slot, so the game loop
+ * picks it up at the start of its next tick and never sees a model half set
+ * up. The episode in progress carries on.
+ *
+ * One slot flies the plane and the other, if it holds a model, is asked for
+ * its move on the same state every tick without acting on it. The share of
+ * ticks the two agree on is kept, which makes it easy to A/B a new model live
+ * against the old one and then switch over to it with select(). The counts
+ * are only ever changed by the game loop, which zeroes them at the start of
+ * the tick after a model is loaded or selected, so no count is lost to a
+ * reset from another thread.
+ *
+ * nextMove() must only be called by a single thread, the game loop's.
+ */
+public class HotSwapAutopilot implements Autopilot {
+	public static final int A = 0;
+	public static final int B = 1;
+
+	// A loaded model, the file it came from and how many times that slot has been loaded
+	public record Model(NetworkAutopilot pilot, Path file, int version) {
+		public String toString() {
+			return file.getFileName() + " #" + version + " (" + pilot.getFeatures().getSpec() + ")";
+		}
+	}
+
+	private final int maxHorizon; // The furthest the features of a model may look ahead in this world
+	private volatile Model a;
+	private volatile Model b;
+	private volatile int active = A;
+
+	// How often the shadow model agreed with the one flying, since either last changed
+	private volatile long compared;
+	private volatile long agreed;
+	private final AtomicBoolean restart = new AtomicBoolean(); // Set when the counts are to be zeroed
+
+	public HotSwapAutopilot(WorldConfig world) {
+		this.maxHorizon = world.getWidth() - world.getPlayerColumn() - 1;
+	}
+
+	public int nextMove(Simulation sim) {
+		if (restart.compareAndSet(true, false)) {
+			compared = agreed = 0;
+		}
+		int slot = active;
+		var flying = slot == A ? a : b;
+		var shadow = slot == A ? b : a;
+		if (flying == null) {
+			return 0; // Fly straight until there is a model
+		}
+		int move = flying.pilot().nextMove(sim);
+		if (shadow != null) {
+			if (shadow.pilot().nextMove(sim) == move) {
+				agreed++;
+			}
+			compared++;
+		}
+		return move;
+	}
+
+	/*
+	 * Parses the model in the file and puts it in the slot, replacing whatever
+	 * was there. This blocks while the file is read, so keep it off the event
+	 * dispatch thread. A model that cannot fly in this world leaves the slot as
+	 * it was.
+	 */
+	public Model load(int slot, Path file) {
+		var network = (BasicNetwork) EncogDirectoryPersistence.loadObject(file.toFile());
+		var pilot = new NetworkAutopilot(network);
+		if (pilot.getFeatures().getHorizon() > maxHorizon) {
+			throw new IllegalArgumentException("The features of " + file + " look past the edge of the world");
+		}
+		var old = get(slot);
+		var model = new Model(pilot, file, old == null ? 1 : old.version() + 1);
+		if (slot == A) {
+			a = model;
+		} else {
+			b = model;
+		}
+		restart.set(true);
+		return model;
+	}
+
+	/*
+	 * Reloads each loaded slot whenever its file changes, on the watcher's
+	 * thread, and reports each reload to Metrics. Close the watcher to stop.
+	 */
+	public ModelWatcher watch() throws IOException {
+		var watcher = new ModelWatcher();
+		for (int slot : new int[] { A, B }) {
+			var model = get(slot);
+			if (model != null) {
+				watcher.watch(model.file(), file -> Metrics.modelReloaded(name(slot) + " " + load(slot, file)));
+			}
+		}
+		watcher.start();
+		return watcher;
+	}
+
+	// Lets the model in the given slot fly the plane from the next tick on
+	public void select(int slot) {
+		if (get(slot) == null) {
+			throw new IllegalStateException("There is no model " + name(slot));
+		}
+		active = slot;
+		restart.set(true);
+	}
+
+	// The model in the given slot, or null if it is empty
+	public Model get(int slot) {
+		return slot == A ? a : b;
+	}
+
+	public int getActive() {
+		return active;
+	}
+
+	// The share of ticks on which both models chose the same move, or NaN if only one is loaded
+	public double getAgreement() {
+		if (restart.get()) {
+			return Double.NaN; // The counts are of the models before
+		}
+		long n = compared;
+		return n == 0 ? Double.NaN : (double) agreed / n;
+	}
+
+	public static String name(int slot) {
+		return slot == A ? "A" : "B";
+	}
+
+	// The models and which one is flying, for the overlay of GameView
+	public String toString() {
+		int slot = active;
+		var text = new StringBuilder();
+		for (int s : new int[] { A, B }) {
+			if (get(s) != null) {
+				text.append(s == slot ? "*" : " ").append(name(s)).append(' ').append(get(s)).append("  ");
+			}
+		}
+		if (compared > 0 && !restart.get()) {
+			text.append(String.format("agree %.1f%%", getAgreement() * 100));
+		}
+		return text.toString().strip();
+	}
+}
@@ -0,0 +1,318 @@
+package ie.atu.sw;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+
+import org.encog.ml.data.MLDataSet;
+import org.encog.neural.networks.BasicNetwork;
+
+/*
+ * Searches for a smaller or better network than the hand-picked 5-34-12-3 tanh
+ * one. Candidates are drawn at random (hidden layers, activation, algorithm,
+ * learning rate and momentum) and thinned out by successive halving: every
+ * candidate is trained for minEpochs, the best 1/eta of them are trained again
+ * for eta times as long, and so on until one is left or maxEpochs is reached.
+ *
+ * A candidate is scored on both its accuracy on the validation split of the
+ * data and on how long it survives when it flies the plane headless through the same set
+ * of seeded caverns as every other candidate:
+ *
+ *   score = survivalWeight * survival / maxTicks + (1 - survivalWeight) * accuracy
+ *
+ * At the end the smallest network within 5% of the best score is suggested,
+ * as the cost of inference grows with the number of weights. The test split
+ * plays no part in the search. Only the winner is trained once more and
+ * measured on it, so its test accuracy is an honest estimate.
+ *
+ * Candidates are trained in parallel on a pool of searchThreads threads, each
+ * with a single Encog thread. Every result is appended to a journal as soon as
+ * it is known. The candidates follow from the seed, so a search that is
+ * started again with the same settings reads the journal back and only trains
+ * what is missing. The settings the scores depend on are written at the top of
+ * the journal, and a search with other settings refuses to resume from it.
+ *
+ * Any trainer setting (see TrainerConfig) can be given as well, e.g. the data
+ * file, maxEpochs or the split percentages.
+ *
+ * Usage: HyperparameterSearch [--candidates n] [--minEpochs n] [--eta n]
+ *   [--episodes n] [--maxTicks n] [--survivalWeight w] [--searchThreads n]
+ *   [--journal file] [trainer settings]
+ */
+public class HyperparameterSearch {
+	private static final int[] LAYER_SIZES = { 2, 3, 4, 6, 8, 12, 16, 24, 34 };
+	private static final String[] ACTIVATIONS = { "tanh", "relu" };
+	private static final TrainerConfig.Algorithm[] ALGORITHMS = { TrainerConfig.Algorithm.BACKPROP,
+			TrainerConfig.Algorithm.RPROP, TrainerConfig.Algorithm.QUICKPROP, TrainerConfig.Algorithm.SCG };
+	private static final double SIZE_TOLERANCE = 0.05; // How far below the best score the smallest may be
+	private static final String JOURNAL_HEADER = "#rung\tid\tepochs\tvalidation\tsurvival\tscore\tweights\tcandidate";
+	private static final String SETTINGS = "#settings\t"; // Starts the line of settings in the journal
+
+	// One point in the search space
+	record Candidate(int id, int[] hidden, String activation, TrainerConfig.Algorithm algorithm, double learningRate,
+			double momentum) {
+		// The training settings of this candidate, on top of the base settings
+		TrainerConfig configure(TrainerConfig base, int epochs) {
+			var config = base.copy();
+			config.hidden = hiddenText();
+			config.activation = activation;
+			config.algorithm = algorithm;
+			config.learningRate = learningRate;
+			config.momentum = momentum;
+			config.maxEpochs = epochs;
+			config.threads = 1;
+			return config;
+		}
+
+		String hiddenText() {
+			var text = new StringBuilder();
+			for (int neurons : hidden) {
+				text.append(text.isEmpty() ? "" : ",").append(neurons);
+			}
+			return text.toString();
+		}
+
+		// The settings on the trainer's command line
+		String describe() {
+			return "--hidden " + hiddenText() + " --activation " + activation + " --algorithm "
+					+ algorithm.name().toLowerCase(Locale.ROOT) + " --learningRate " + learningRate + " --momentum "
+					+ momentum;
+		}
+	}
+
+	// How a candidate did after training for the given number of epochs, with its validation accuracy
+	record Result(int rung, Candidate candidate, int epochs, double accuracy, double survival, double score,
+			int weights) {
+	}
+
+	private final NeuralNetworkTrainer trainer = new NeuralNetworkTrainer();
+	private final TrainerConfig base;
+	private final DataSplit.Holdout split;
+
+	private int candidates = 27;
+	private int minEpochs = 100;
+	private int eta = 3;
+	private int episodes = 100;
+	private long maxTicks = 10_000;
+	private double survivalWeight = 0.5;
+	private int searchThreads = Runtime.getRuntime().availableProcessors();
+	private Path journal = Path.of("resources/search_journal.tsv");
+
+	// Results read from or written to the journal, by candidate and epochs
+	private final Map<String, Result> results = new ConcurrentHashMap<>();
+
+	public HyperparameterSearch(TrainerConfig base) {
+		this.base = base;
+		MLDataSet dataSet = trainer.loadData(base.dataFile, FeatureExtractor.forName(base.features));
+		this.split = DataSplit.holdout(dataSet, base.validationPercent, base.testPercent, base.seed);
+	}
+
+	// Draws the candidates from the seed, so the same seed always gives the same ones
+	List<Candidate> sample() {
+		var random = new SplitMix64(base.seed);
+		List<Candidate> sampled = new ArrayList<>();
+		for (int id = 0; id < candidates; id++) {
+			var hidden = new int[1 + random.nextInt(2)];
+			for (int l = 0; l < hidden.length; l++) {
+				hidden[l] = LAYER_SIZES[random.nextInt(LAYER_SIZES.length)];
+			}
+			String activation = ACTIVATIONS[random.nextInt(ACTIVATIONS.length)];
+			var algorithm = ALGORITHMS[random.nextInt(ALGORITHMS.length)];
+			double learningRate = Math.pow(10, -4 + 3 * random.nextDouble()); // 0.0001 to 0.1, log uniform
+			double momentum = 0.95 * random.nextDouble();
+			sampled.add(new Candidate(id, hidden, activation, algorithm, learningRate, momentum));
+		}
+		return sampled;
+	}
+
+	// Runs the whole search and returns the results of every rung
+	public List<Result> run() {
+		readJournal();
+		List<Result> all = new ArrayList<>();
+		List<Candidate> alive = sample();
+		int epochs = Math.min(minEpochs, base.maxEpochs);
+
+		var pool = new ForkJoinPool(searchThreads);
+		try {
+			for (int rung = 0;; rung++) {
+				int r = rung, e = epochs;
+				long start = System.nanoTime();
+				var scored = pool.submit(() -> alive.parallelStream().map(c -> evaluate(r, c, e)).toList()).join();
+				var ranked = new ArrayList<>(scored);
+				ranked.sort(Comparator.comparingDouble(Result::score).reversed());
+				all.addAll(ranked);
+
+				System.out.printf("Rung %d: %d candidates at %d epochs in %.2fs%n", rung, ranked.size(), epochs,
+						(System.nanoTime() - start) / 1e9);
+				for (var result : ranked) {
+					System.out.println("  " + format(result));
+				}
+
+				if (ranked.size() <= 1 || epochs >= base.maxEpochs) {
+					break;
+				}
+				alive.clear();
+				for (var result : ranked.subList(0, Math.max(1, ranked.size() / eta))) {
+					alive.add(result.candidate());
+				}
+				epochs = (int) Math.min((long) epochs * eta, base.maxEpochs);
+			}
+		} finally {
+			pool.shutdown();
+		}
+		return all;
+	}
+
+	// Trains and scores one candidate, unless the journal already has its result
+	private Result evaluate(int rung, Candidate candidate, int epochs) {
+		var known = results.get(key(candidate.id(), epochs));
+		if (known != null) {
+			return known;
+		}
+
+		var config = candidate.configure(base, epochs);
+		BasicNetwork network = trainer.train(split.train(), split.validation(), config, false);
+		double accuracy = ClassificationMetrics.evaluate(network, split.validation()).getAccuracy();
+
+		// The candidates already fill the pool, so each flies its own episodes
+		var evaluator = new ModelEvaluator(network, maxTicks);
+		evaluator.setThreads(1);
+		long[] ticks = evaluator.evaluate(episodes, base.seed);
+		double survival = Arrays.stream(ticks).average().orElse(0);
+		double score = survivalWeight * survival / maxTicks + (1 - survivalWeight) * accuracy;
+
+		var result = new Result(rung, candidate, epochs, accuracy, survival, score,
+				network.getFlat().getWeights().length);
+		results.put(key(candidate.id(), epochs), result);
+		appendJournal(result);
+		return result;
+	}
+
+	private static String key(int id, int epochs) {
+		return id + "@" + epochs;
+	}
+
+	// The settings that the scores in the journal depend on, other than those of the candidates
+	private String settings() {
+		return "dataFile=" + base.dataFile + " features=" + base.features + " validationPercent="
+				+ base.validationPercent + " testPercent=" + base.testPercent + " seed=" + base.seed + " targetError="
+				+ base.targetError + " preprocess=" + base.preprocess.name().toLowerCase(Locale.ROOT) + " episodes="
+				+ episodes + " maxTicks=" + maxTicks + " survivalWeight=" + survivalWeight;
+	}
+
+	// Reads back the results of an earlier run of the same search
+	private void readJournal() {
+		if (!Files.exists(journal)) {
+			return;
+		}
+		var byId = new HashMap<Integer, Candidate>();
+		for (var candidate : sample()) {
+			byId.put(candidate.id(), candidate);
+		}
+		try {
+			var lines = Files.readAllLines(journal);
+			var settings = lines.stream().filter(line -> line.startsWith(SETTINGS)).findFirst()
+					.map(line -> line.substring(SETTINGS.length())).orElse("none");
+			if (!settings.equals(settings())) {
+				throw new IllegalStateException(journal + " was written by a search with the settings " + settings
+						+ ", not " + settings() + ". Give another --journal to start a new search.");
+			}
+			for (var line : lines) {
+				if (line.isBlank() || line.startsWith("#")) {
+					continue;
+				}
+				var fields = line.split("\t");
+				var candidate = byId.get(Integer.parseInt(fields[1]));
+				if (candidate == null || !candidate.describe().equals(fields[7])) {
+					throw new IllegalStateException(journal + " was written by a search with other settings");
+				}
+				var result = new Result(Integer.parseInt(fields[0]), candidate, Integer.parseInt(fields[2]),
+						Double.parseDouble(fields[3]), Double.parseDouble(fields[4]), Double.parseDouble(fields[5]),
+						Integer.parseInt(fields[6]));
+				results.put(key(candidate.id(), result.epochs()), result);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException("Error reading " + journal, e);
+		}
+		System.out.println("Resuming with " + results.size() + " results from " + journal);
+	}
+
+	// Appends a result to the journal straight away, so nothing is lost if the search is stopped
+	private synchronized void appendJournal(Result result) {
+		var line = result.rung() + "\t" + result.candidate().id() + "\t" + result.epochs() + "\t" + result.accuracy()
+				+ "\t" + result.survival() + "\t" + result.score() + "\t" + result.weights() + "\t"
+				+ result.candidate().describe() + "\n";
+		try {
+			if (!Files.exists(journal)) {
+				if (journal.getParent() != null) {
+					Files.createDirectories(journal.getParent());
+				}
+				Files.writeString(journal, SETTINGS + settings() + "\n" + JOURNAL_HEADER + "\n");
+			}
+			Files.writeString(journal, line, StandardOpenOption.APPEND);
+		} catch (IOException e) {
+			System.err.println("Error writing to " + journal + ": " + e.getMessage());
+		}
+	}
+
+	private String format(Result result) {
+		return String.format(Locale.ROOT, "#%-3d score %.3f, validation %.3f, survival %.1fs, %d weights: %s",
+				result.candidate().id(), result.score(), result.accuracy(),
+				ModelEvaluator.toSeconds(Math.round(result.survival())), result.weights(),
+				result.candidate().describe());
+	}
+
+	// Prints the winner and the smallest network that comes close to it
+	private void report(List<Result> all) {
+		var best = all.stream().max(Comparator.comparingDouble(Result::score)).orElseThrow();
+		var smallest = all.stream().filter(r -> r.score() >= best.score() * (1 - SIZE_TOLERANCE))
+				.min(Comparator.comparingInt(Result::weights).thenComparing(Result::score, Comparator.reverseOrder()))
+				.orElseThrow();
+		System.out.println("Best:     " + format(best) + " --maxEpochs " + best.epochs());
+		System.out.println("Smallest: " + format(smallest) + " --maxEpochs " + smallest.epochs());
+
+		// The networks of the search are not kept, so the winner is trained again to be tested
+		var config = best.candidate().configure(base, best.epochs());
+		config.threads = base.threads;
+		var network = trainer.train(split.train(), split.validation(), config, false);
+		System.out.print(ClassificationMetrics.evaluate(network, split.test()).report("Best, retrained, Test"));
+	}
+
+	public static void main(String[] args) throws IOException {
+		// Take out the settings of the search and leave the rest to TrainerConfig
+		List<String> rest = new ArrayList<>();
+		var search = TrainerConfig.extract(args, List.of("candidates", "minEpochs", "eta", "episodes", "maxTicks",
+				"survivalWeight", "searchThreads", "journal"), rest);
+
+		var hyperparameterSearch = new HyperparameterSearch(TrainerConfig.parse(rest.toArray(new String[0])));
+		for (var name : search.stringPropertyNames()) {
+			var value = search.getProperty(name);
+			switch (name) {
+			case "candidates" -> hyperparameterSearch.candidates = Integer.parseInt(value);
+			case "minEpochs" -> hyperparameterSearch.minEpochs = Integer.parseInt(value);
+			case "eta" -> hyperparameterSearch.eta = Math.max(2, Integer.parseInt(value));
+			case "episodes" -> hyperparameterSearch.episodes = Integer.parseInt(value);
+			case "maxTicks" -> hyperparameterSearch.maxTicks = Long.parseLong(value);
+			case "survivalWeight" -> hyperparameterSearch.survivalWeight = Double.parseDouble(value);
+			case "searchThreads" -> hyperparameterSearch.searchThreads = Integer.parseInt(value);
+			case "journal" -> hyperparameterSearch.journal = Path.of(value);
+			}
+		}
+
+		long start = System.nanoTime();
+		var all = hyperparameterSearch.run();
+		hyperparameterSearch.report(all);
+		System.out.printf("Searched in %.2fs%n", (System.nanoTime() - start) / 1e9);
+	}
+}
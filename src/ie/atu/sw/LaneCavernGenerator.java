@@ -0,0 +1,129 @@
+package ie.atu.sw;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+/*
+ * A cavern generator that forks the cave into several lanes. Every lane is a
+ * random walk like the original generator: its top and bottom each move up or
+ * down by a row per column, within minTop and minBottom, and it never gets
+ * narrower than minSpace.
+ *
+ * Each column, with probability forkChance, a lane that is wide enough splits
+ * in two around a single row of wall, as long as there are fewer than maxLanes.
+ * The two lanes then wander on their own, and when they touch again they merge
+ * back into one, so the wall between them becomes an island. No lane ever
+ * closes: each keeps at least minSpace rows until it merges, so there is no
+ * wrong lane to pick. What makes the cave harder than the single lane of
+ * SeededCavernGenerator is the islands, which the plane must steer around.
+ *
+ * Like the original, everything comes from a seeded SplitMix64, so the same
+ * seed always carves the same cave.
+ */
+public class LaneCavernGenerator implements CavernGenerator {
+	private final int minTop;
+	private final int minBottom;
+	private final int minSpace;
+	private final int maxLanes;
+	private final double forkChance;
+
+	private SplitMix64 random;
+	private long seed;
+
+	// The lanes from the top down
+	private final int[] tops;
+	private final int[] bottoms;
+	private int lanes;
+
+	public LaneCavernGenerator(long seed, int minTop, int minBottom, int minSpace, int maxLanes, double forkChance) {
+		this.minTop = minTop;
+		this.minBottom = minBottom;
+		this.minSpace = minSpace;
+		this.maxLanes = maxLanes;
+		this.forkChance = forkChance;
+		this.tops = new int[maxLanes];
+		this.bottoms = new int[maxLanes];
+		reseed(seed);
+	}
+
+	public void next() {
+		// Let every lane wander like the original cave
+		for (int i = 0; i < lanes; i++) {
+			long bits = random.nextLong();
+			tops[i] += (bits & 1) != 0 ? 1 : -1;
+			bottoms[i] += (bits & 2) != 0 ? 1 : -1;
+			tops[i] = max(minTop, min(tops[i], bottoms[i] - minSpace));
+			bottoms[i] = min(minBottom, max(bottoms[i], tops[i] + minSpace));
+		}
+
+		// Lanes that touch or cross become one
+		for (int i = 0; i + 1 < lanes;) {
+			if (bottoms[i] >= tops[i + 1]) {
+				tops[i] = min(tops[i], tops[i + 1]);
+				bottoms[i] = max(bottoms[i], bottoms[i + 1]);
+				remove(i + 1);
+			} else {
+				i++;
+			}
+		}
+
+		// Now and then split a wide lane around a row of wall
+		if (lanes < maxLanes && random.nextDouble() < forkChance) {
+			long pick = random.nextLong();
+			int lane = (int) Long.remainderUnsigned(pick, lanes);
+			int width = bottoms[lane] - tops[lane];
+			if (width > 2 * minSpace) {
+				int wall = tops[lane] + minSpace + (int) Long.remainderUnsigned(pick >>> 32, width - 2 * minSpace);
+				System.arraycopy(tops, lane + 1, tops, lane + 2, lanes - lane - 1);
+				System.arraycopy(bottoms, lane + 1, bottoms, lane + 2, lanes - lane - 1);
+				tops[lane + 1] = wall + 1;
+				bottoms[lane + 1] = bottoms[lane];
+				bottoms[lane] = wall;
+				lanes++;
+			}
+		}
+	}
+
+	// Drops lane i, moving the lanes below it up
+	private void remove(int i) {
+		System.arraycopy(tops, i + 1, tops, i, lanes - i - 1);
+		System.arraycopy(bottoms, i + 1, bottoms, i, lanes - i - 1);
+		lanes--;
+	}
+
+	public int getTop() {
+		return tops[0];
+	}
+
+	public int getBottom() {
+		return bottoms[0];
+	}
+
+	public int getOpeningCount() {
+		return lanes;
+	}
+
+	public int getTop(int i) {
+		return tops[i];
+	}
+
+	public int getBottom(int i) {
+		return bottoms[i];
+	}
+
+	public int getMaxOpenings() {
+		return maxLanes;
+	}
+
+	public long getSeed() {
+		return seed;
+	}
+
+	public void reseed(long seed) {
+		this.seed = seed;
+		this.random = new SplitMix64(seed);
+		this.tops[0] = minTop;
+		this.bottoms[0] = minBottom;
+		this.lanes = 1;
+	}
+}
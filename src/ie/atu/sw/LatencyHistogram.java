@@ -0,0 +1,140 @@
+package ie.atu.sw;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * A histogram of latencies in nanoseconds in the style of HdrHistogram. Each
+ * power of two is split into SUB_BUCKETS linear buckets, so any value from a
+ * nanosecond up to centuries is kept to within about 3% in a fixed array of
+ * under 2000 counters. Recording a value is a few bit operations and an atomic
+ * increment, with no locks and no allocation, so it can be called on every
+ * tick of the game loop from any thread.
+ *
+ * The percentiles are read while values are still being recorded, so they are
+ * a close estimate rather than an exact snapshot. A percentile is reported as
+ * the highest value of its bucket, like HdrHistogram does, so it never
+ * understates a latency.
+ */
+public class LatencyHistogram implements LatencyMXBean {
+	private static final int SUB_BITS = 5;
+	private static final int SUB_BUCKETS = 1 << SUB_BITS;
+	private static final int BUCKETS = (Long.SIZE - SUB_BITS) * SUB_BUCKETS;
+
+	private final String name;
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder total = new LongAdder();
+	private final AtomicLong max = new AtomicLong();
+
+	public LatencyHistogram(String name) {
+		this.name = name;
+	}
+
+	// Records a latency in nanoseconds. Negative values count as zero.
+	public void record(long nanos) {
+		nanos = Math.max(0, nanos);
+		counts.incrementAndGet(index(nanos));
+		count.increment();
+		total.add(nanos);
+		if (nanos > max.get()) {
+			max.accumulateAndGet(nanos, Math::max);
+		}
+	}
+
+	// The bucket of a value: the value itself below SUB_BUCKETS, else its power of two and top bits
+	static int index(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int sub = (int) (value >>> (exponent - SUB_BITS)) - SUB_BUCKETS;
+		return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+	}
+
+	// The highest value that falls into the given bucket
+	static long highestValue(int index) {
+		if (index < SUB_BUCKETS) {
+			return index;
+		}
+		int shift = index / SUB_BUCKETS - 1;
+		long sub = index % SUB_BUCKETS + SUB_BUCKETS;
+		return ((sub + 1) << shift) - 1;
+	}
+
+	// The latency in nanoseconds that the given percentage of values are at or below
+	public long percentile(double percent) {
+		long n = count.sum();
+		if (n == 0) {
+			return 0;
+		}
+		long target = Math.max(1, (long) Math.ceil(percent / 100 * n));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts.get(i);
+			if (seen >= target) {
+				return Math.min(highestValue(i), max.get());
+			}
+		}
+		return max.get();
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public long getCount() {
+		return count.sum();
+	}
+
+	// The mean latency in nanoseconds
+	public double mean() {
+		long n = count.sum();
+		return n == 0 ? 0 : (double) total.sum() / n;
+	}
+
+	// The highest latency recorded in nanoseconds
+	public long max() {
+		return max.get();
+	}
+
+	public double getMeanMillis() {
+		return mean() / 1e6;
+	}
+
+	public double getP50Millis() {
+		return percentile(50) / 1e6;
+	}
+
+	public double getP90Millis() {
+		return percentile(90) / 1e6;
+	}
+
+	public double getP99Millis() {
+		return percentile(99) / 1e6;
+	}
+
+	public double getP999Millis() {
+		return percentile(99.9) / 1e6;
+	}
+
+	public double getMaxMillis() {
+		return max() / 1e6;
+	}
+
+	// Forgets everything recorded so far, e.g. to measure a single run of the game
+	public void reset() {
+		for (int i = 0; i < BUCKETS; i++) {
+			counts.set(i, 0);
+		}
+		count.reset();
+		total.reset();
+		max.set(0);
+	}
+
+	public String toString() {
+		return String.format("%s: n=%d mean=%.3fms p50=%.3fms p99=%.3fms max=%.3fms", name, getCount(),
+				getMeanMillis(), getP50Millis(), getP99Millis(), getMaxMillis());
+	}
+}
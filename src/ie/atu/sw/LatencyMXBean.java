@@ -0,0 +1,23 @@
+package ie.atu.sw;
+
+/*
+ * The view of a LatencyHistogram that JMX clients such as JConsole or
+ * VisualVM see, registered by Metrics as ie.atu.sw:type=Latency,name=<name>.
+ */
+public interface LatencyMXBean {
+	long getCount();
+
+	double getMeanMillis();
+
+	double getP50Millis();
+
+	double getP90Millis();
+
+	double getP99Millis();
+
+	double getP999Millis();
+
+	double getMaxMillis();
+
+	void reset();
+}
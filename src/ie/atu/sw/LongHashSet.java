@@ -0,0 +1,81 @@
+package ie.atu.sw;
+
+/*
+ * A set of longs in a single array, with open addressing and linear probing,
+ * so millions of keys take 16 bytes each or less instead of a boxed Long and
+ * a node in a HashSet. The keys are expected to be hashes already (see
+ * DataFarm.key()), so their low bits pick the slot as they are. 0 marks an
+ * empty slot, and the key 0 itself is kept in a flag of its own.
+ *
+ * Not thread safe.
+ */
+public class LongHashSet {
+	private long[] keys;
+	private int size;
+	private boolean hasZero;
+
+	public LongHashSet() {
+		this(1024);
+	}
+
+	public LongHashSet(int expected) {
+		int capacity = Integer.highestOneBit(Math.max(4, expected) * 2 - 1) * 2;
+		this.keys = new long[capacity];
+	}
+
+	// Adds the key and returns true if it was not in the set already
+	public boolean add(long key) {
+		if (key == 0) {
+			boolean added = !hasZero;
+			hasZero = true;
+			size += added ? 1 : 0;
+			return added;
+		}
+		int mask = keys.length - 1;
+		for (int i = (int) key & mask;; i = (i + 1) & mask) {
+			if (keys[i] == key) {
+				return false;
+			} else if (keys[i] == 0) {
+				keys[i] = key;
+				if (++size * 2 > keys.length) {
+					grow();
+				}
+				return true;
+			}
+		}
+	}
+
+	public boolean contains(long key) {
+		if (key == 0) {
+			return hasZero;
+		}
+		int mask = keys.length - 1;
+		for (int i = (int) key & mask;; i = (i + 1) & mask) {
+			if (keys[i] == key) {
+				return true;
+			} else if (keys[i] == 0) {
+				return false;
+			}
+		}
+	}
+
+	public int size() {
+		return size;
+	}
+
+	// Doubles the table once it is half full, which keeps the probes short
+	private void grow() {
+		var old = keys;
+		keys = new long[old.length * 2];
+		int mask = keys.length - 1;
+		for (long key : old) {
+			if (key != 0) {
+				int i = (int) key & mask;
+				while (keys[i] != 0) {
+					i = (i + 1) & mask;
+				}
+				keys[i] = key;
+			}
+		}
+	}
+}
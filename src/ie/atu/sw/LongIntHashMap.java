@@ -0,0 +1,91 @@
+package ie.atu.sw;
+
+/*
+ * A map from longs to ints in two arrays, with open addressing and linear
+ * probing like LongHashSet, for tables of millions of hashes that would
+ * otherwise be boxed into a HashMap. The keys are expected to be hashes
+ * already, so their low bits pick the slot as they are. The values cannot be
+ * negative, as get() gives -1 for a key that is not in the map.
+ *
+ * Not thread safe.
+ */
+public class LongIntHashMap {
+	private long[] keys;
+	private int[] values;
+	private int size;
+	private int zeroValue = -1; // The value of the key 0, which marks an empty slot
+
+	public LongIntHashMap() {
+		this(1024);
+	}
+
+	public LongIntHashMap(int expected) {
+		int capacity = Integer.highestOneBit(Math.max(4, expected) * 2 - 1) * 2;
+		this.keys = new long[capacity];
+		this.values = new int[capacity];
+	}
+
+	// The value of the key, or -1 if it is not in the map
+	public int get(long key) {
+		if (key == 0) {
+			return zeroValue;
+		}
+		int mask = keys.length - 1;
+		for (int i = (int) key & mask;; i = (i + 1) & mask) {
+			if (keys[i] == key) {
+				return values[i];
+			} else if (keys[i] == 0) {
+				return -1;
+			}
+		}
+	}
+
+	// Maps the key to the value, replacing any value it had
+	public void put(long key, int value) {
+		if (value < 0) {
+			throw new IllegalArgumentException("Values cannot be negative: " + value);
+		}
+		if (key == 0) {
+			size += zeroValue < 0 ? 1 : 0;
+			zeroValue = value;
+			return;
+		}
+		int mask = keys.length - 1;
+		for (int i = (int) key & mask;; i = (i + 1) & mask) {
+			if (keys[i] == key) {
+				values[i] = value;
+				return;
+			} else if (keys[i] == 0) {
+				keys[i] = key;
+				values[i] = value;
+				if (++size * 2 > keys.length) {
+					grow();
+				}
+				return;
+			}
+		}
+	}
+
+	public int size() {
+		return size;
+	}
+
+	// Doubles the table once it is half full, which keeps the probes short
+	private void grow() {
+		var oldKeys = keys;
+		var oldValues = values;
+		keys = new long[oldKeys.length * 2];
+		values = new int[oldKeys.length * 2];
+		int mask = keys.length - 1;
+		for (int j = 0; j < oldKeys.length; j++) {
+			if (oldKeys[j] != 0) {
+				int i = (int) oldKeys[j] & mask;
+				while (keys[i] != 0) {
+					i = (i + 1) & mask;
+				}
+				keys[i] = oldKeys[j];
+				values[i] = oldValues[j];
+			}
+		}
+	}
+}
@@ -0,0 +1,95 @@
+package ie.atu.sw;
+
+/*
+ * Features that look further ahead than the classic ones. For each of the next
+ * horizon columns there are three values, all relative to the plane and
+ * divided by the height of the grid:
+ *
+ *   GapTop      how far the plane is below the first open row (negative when
+ *               it is above the opening)
+ *   GapBottom   how far the plane is above the last open row (negative when
+ *               it is below the opening)
+ *   GapCentre   how far the middle of the opening is below the plane
+ *
+ * followed by the row of the plane / height and the last history moves made
+ * (-1 up, 0 straight on, 1 down), the most recent first. Seeing the opening
+ * drift several columns ahead lets a network start climbing or diving early,
+ * which the classic features cannot.
+ *
+ * When the cave forks, the values describe the opening nearest to the plane
+ * in each column. The bounds of the openings come from CavernGrid, which keeps
+ * them for every column as it is carved, so a wide horizon costs a few reads
+ * per column and no scanning. How far ahead the plane can see depends on the
+ * world, so the horizon is checked against the grid when the features are
+ * given to a Simulation (see Simulation.setFeatures()).
+ */
+public class LookaheadFeatures implements FeatureExtractor {
+	public static final int DEFAULT_HORIZON = 6;
+	public static final int DEFAULT_HISTORY = 2;
+
+	private final int horizon;
+	private final int history;
+	private final String[] names;
+
+	public LookaheadFeatures(int horizon, int history) {
+		if (horizon < 1) {
+			throw new IllegalArgumentException("Horizon must be at least 1: " + horizon);
+		}
+		if (history < 0 || history > Simulation.MOVE_HISTORY) {
+			throw new IllegalArgumentException(
+					"History must be between 0 and " + Simulation.MOVE_HISTORY + ": " + history);
+		}
+		this.horizon = horizon;
+		this.history = history;
+
+		this.names = new String[horizon * 3 + 1 + history];
+		int i = 0;
+		for (int x = 1; x <= horizon; x++) {
+			names[i++] = "GapTop" + x;
+			names[i++] = "GapBottom" + x;
+			names[i++] = "GapCentre" + x;
+		}
+		names[i++] = "PlayerRowNormalized";
+		for (int k = 1; k <= history; k++) {
+			names[i++] = "LastMove" + k;
+		}
+	}
+
+	public int getFeatureCount() {
+		return names.length;
+	}
+
+	public String[] getFeatureNames() {
+		return names.clone();
+	}
+
+	public String getSpec() {
+		return "lookahead:" + horizon + ":" + history;
+	}
+
+	public int getHorizon() {
+		return horizon;
+	}
+
+	public double[] extract(Simulation sim, double[] vector) {
+		var grid = sim.getGrid();
+		double height = sim.getHeight();
+		int row = sim.getPlayerRow();
+		int column = sim.getPlayerColumn();
+
+		int i = 0;
+		for (int x = 1; x <= horizon; x++) {
+			int opening = grid.nearestOpening(column + x, row);
+			int top = grid.openingTop(column + x, opening);
+			int bottom = grid.openingBottom(column + x, opening);
+			vector[i++] = (row - top) / height;
+			vector[i++] = (bottom - 1 - row) / height;
+			vector[i++] = ((top + bottom - 1) / 2.0 - row) / height;
+		}
+		vector[i++] = row / height;
+		for (int k = 0; k < history; k++) {
+			vector[i++] = sim.getLastMove(k);
+		}
+		return vector;
+	}
+}
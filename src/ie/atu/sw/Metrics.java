@@ -0,0 +1,348 @@
+package ie.atu.sw;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+import java.util.function.LongSupplier;
+
+import javax.management.JMException;
+import javax.management.NotificationEmitter;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/*
+ * The instrumentation of the game loop, the view and the trainers. Latencies
+ * go into LatencyHistograms and counts into LongAdders, which cost a few
+ * nanoseconds each to update, so they are always on. Everything is published
+ * three ways:
+ *
+ *   JMX   ie.atu.sw:type=Metrics for the counters and
+ *         ie.atu.sw:type=Latency,name=... for each histogram, e.g. in JConsole
+ *   JFR   FrameMissed and TrainingIteration events, plus a Tick event for
+ *         every tick that is off unless a recording turns it on, e.g.
+ *         -XX:StartFlightRecording with ie.atu.sw.Tick#enabled=true
+ *   HUD   overlay() gives a few lines of text for GameView to draw (press M)
+ *
+ * Models that HotSwapAutopilot reloads while the game runs are counted here
+ * too, with the last one shown on the overlay, rather than printed from the
+ * watcher's thread.
+ *
+ * A tick has a time slot of TIMER_INTERVAL ms divided by the speed, 100 ms at
+ * 1x. A tick that finishes after its slot has ended is a missed tick, and the
+ * part of it that took longest is given as the reason: starting late (the
+ * loop thread was not woken in time), sampling, the autopilot, publishing the
+ * frame or garbage collection while the tick ran.
+ */
+public final class Metrics implements MetricsMXBean {
+	public static final LatencyHistogram TICK = new LatencyHistogram("tick");
+	public static final LatencyHistogram SAMPLE = new LatencyHistogram("sample");
+	public static final LatencyHistogram AUTOPILOT = new LatencyHistogram("autopilot");
+	public static final LatencyHistogram PUBLISH = new LatencyHistogram("publish");
+	public static final LatencyHistogram PAINT = new LatencyHistogram("paint");
+	public static final LatencyHistogram TRAINING = new LatencyHistogram("training");
+
+	private static final List<LatencyHistogram> HISTOGRAMS = List.of(TICK, SAMPLE, AUTOPILOT, PUBLISH, PAINT,
+			TRAINING);
+
+	private static final LongAdder ticks = new LongAdder();
+	private static final LongAdder missedTicks = new LongAdder();
+	private static final LongAdder paints = new LongAdder();
+	private static final LongAdder trainingIterations = new LongAdder();
+	private static final LongAdder gcCount = new LongAdder();
+	private static final LongAdder gcMillis = new LongAdder();
+	private static volatile String lastMissReason = "none";
+	private static final LongAdder modelReloads = new LongAdder();
+	private static volatile String lastModelReload = "none";
+
+	// The TrainingDataWriter that is logging samples, if any
+	private static volatile IntSupplier queueDepth = () -> 0;
+	private static volatile LongSupplier droppedSamples = () -> 0;
+
+	private static final Metrics INSTANCE = new Metrics();
+
+	static {
+		try {
+			var server = ManagementFactory.getPlatformMBeanServer();
+			server.registerMBean(INSTANCE, new ObjectName("ie.atu.sw:type=Metrics"));
+			for (var histogram : HISTOGRAMS) {
+				server.registerMBean(histogram, new ObjectName("ie.atu.sw:type=Latency,name=" + histogram.getName()));
+			}
+		} catch (JMException e) {
+			System.err.println("Error registering metrics with JMX: " + e.getMessage());
+		}
+
+		// Add up the pauses of every collector as they are reported
+		for (var gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			if (gc instanceof NotificationEmitter emitter) {
+				emitter.addNotificationListener((notification, handback) -> {
+					if (notification.getUserData() instanceof CompositeData data
+							&& data.get("gcInfo") instanceof CompositeData info) {
+						gcCount.increment();
+						gcMillis.add((Long) info.get("duration"));
+					}
+				}, notification -> notification.getType().equals("com.sun.management.gc.notification"), null);
+			}
+		}
+	}
+
+	private Metrics() {
+	}
+
+	/*
+	 * Records a tick of the game loop. All times are in nanoseconds: late is how
+	 * long after the loop meant to wake up the tick started (ticks that are
+	 * catching up after a slow one are not late), and the tick took nanos in all,
+	 * of which sample, autopilot and publish were spent in those parts. gcBefore
+	 * is gcMillis() from the start of the tick. A budget of 0 means the tick has
+	 * no slot, as when the game is uncapped.
+	 */
+	public static void tick(long time, long late, long nanos, long sample, long autopilot, long publish,
+			long gcBefore, long budget) {
+		ticks.increment();
+		TICK.record(nanos);
+		long gc = gcMillis() - gcBefore;
+		boolean missed = budget > 0 && late + nanos > budget;
+
+		var event = new TickEvent();
+		if (event.shouldCommit()) {
+			event.time = time;
+			event.elapsed = nanos;
+			event.late = late;
+			event.sample = sample;
+			event.autopilot = autopilot;
+			event.publish = publish;
+			event.gcMillis = gc;
+			event.missed = missed;
+			event.commit();
+		}
+		if (!missed) {
+			return;
+		}
+
+		// Blame whichever part of the tick took longest
+		String[] parts = { "late start", "sample", "autopilot", "publish", "gc", "other" };
+		long[] times = { late, sample, autopilot, publish, gc * 1_000_000,
+				Math.max(0, nanos - sample - autopilot - publish) };
+		int worst = 0;
+		for (int i = 1; i < times.length; i++) {
+			if (times[i] > times[worst]) {
+				worst = i;
+			}
+		}
+		String reason = String.format("%s %.1fms of %.1fms", parts[worst], times[worst] / 1e6, budget / 1e6);
+		missedTicks.increment();
+		lastMissReason = reason;
+
+		var missedEvent = new FrameMissedEvent();
+		if (missedEvent.shouldCommit()) {
+			missedEvent.time = time;
+			missedEvent.budget = budget;
+			missedEvent.elapsed = nanos;
+			missedEvent.late = late;
+			missedEvent.sample = sample;
+			missedEvent.autopilot = autopilot;
+			missedEvent.publish = publish;
+			missedEvent.gcMillis = gc;
+			missedEvent.queueDepth = queueDepth.getAsInt();
+			missedEvent.reason = reason;
+			missedEvent.commit();
+		}
+	}
+
+	// Records how long GameView took to paint a frame
+	public static void paint(long nanos) {
+		paints.increment();
+		PAINT.record(nanos);
+	}
+
+	// Records an epoch or generation of a trainer, with its error or fitness
+	public static void trainingIteration(String trainer, int iteration, double error, long nanos) {
+		trainingIterations.increment();
+		TRAINING.record(nanos);
+		var event = new TrainingIterationEvent();
+		if (event.shouldCommit()) {
+			event.trainer = trainer;
+			event.iteration = iteration;
+			event.error = error;
+			event.elapsed = nanos;
+			event.commit();
+		}
+	}
+
+	// Records a model that was reloaded while the game ran, e.g. "A trainingModel.eg #2 (classic)"
+	public static void modelReloaded(String model) {
+		modelReloads.increment();
+		lastModelReload = model;
+	}
+
+	// Reports the queue of the writer that is logging training data
+	public static void watch(TrainingDataWriter writer) {
+		queueDepth = writer::getQueueDepth;
+		droppedSamples = writer::getDropped;
+	}
+
+	// The total time spent in garbage collection so far
+	public static long gcMillis() {
+		return gcMillis.sum();
+	}
+
+	// A few lines summing up the game loop, for the overlay of GameView
+	public static List<String> overlay() {
+		return List.of(
+				String.format("tick p99 %.2fms max %.2fms", TICK.getP99Millis(), TICK.getMaxMillis()),
+				String.format("autopilot p99 %.3fms  sample p99 %.3fms", AUTOPILOT.getP99Millis(),
+						SAMPLE.getP99Millis()),
+				String.format("paint p99 %.2fms  publish p99 %.3fms", PAINT.getP99Millis(), PUBLISH.getP99Millis()),
+				String.format("missed %d/%d  last: %s", missedTicks.sum(), ticks.sum(), lastMissReason),
+				String.format("log queue %d dropped %d  gc %d (%dms)", queueDepth.getAsInt(),
+						droppedSamples.getAsLong(), gcCount.sum(), gcMillis.sum()),
+				String.format("reloads %d  last: %s", modelReloads.sum(), lastModelReload));
+	}
+
+	public long getTicks() {
+		return ticks.sum();
+	}
+
+	public long getMissedTicks() {
+		return missedTicks.sum();
+	}
+
+	public String getLastMissReason() {
+		return lastMissReason;
+	}
+
+	public long getPaints() {
+		return paints.sum();
+	}
+
+	public long getTrainingIterations() {
+		return trainingIterations.sum();
+	}
+
+	public int getLoggingQueueDepth() {
+		return queueDepth.getAsInt();
+	}
+
+	public long getDroppedSamples() {
+		return droppedSamples.getAsLong();
+	}
+
+	public long getModelReloads() {
+		return modelReloads.sum();
+	}
+
+	public String getLastModelReload() {
+		return lastModelReload;
+	}
+
+	public long getGcCount() {
+		return gcCount.sum();
+	}
+
+	public long getGcMillis() {
+		return gcMillis.sum();
+	}
+
+	// Zeroes the counters and histograms, but not the totals of the GC or the writer
+	public void reset() {
+		ticks.reset();
+		missedTicks.reset();
+		paints.reset();
+		trainingIterations.reset();
+		lastMissReason = "none";
+		modelReloads.reset();
+		lastModelReload = "none";
+		for (var histogram : HISTOGRAMS) {
+			histogram.reset();
+		}
+	}
+
+	@Name("ie.atu.sw.Tick")
+	@Label("Game Tick")
+	@Category("Autopilot")
+	@Description("A tick of the game loop")
+	@Enabled(false)
+	static class TickEvent extends Event {
+		@Label("Game Time")
+		long time;
+		@Label("Elapsed")
+		@Timespan
+		long elapsed;
+		@Label("Late Start")
+		@Timespan
+		long late;
+		@Label("Sample")
+		@Timespan
+		long sample;
+		@Label("Autopilot")
+		@Timespan
+		long autopilot;
+		@Label("Publish")
+		@Timespan
+		long publish;
+		@Label("GC")
+		@Timespan(Timespan.MILLISECONDS)
+		long gcMillis;
+		@Label("Missed")
+		boolean missed;
+	}
+
+	@Name("ie.atu.sw.FrameMissed")
+	@Label("Frame Missed")
+	@Category("Autopilot")
+	@Description("A tick of the game loop that finished after its time slot")
+	static class FrameMissedEvent extends Event {
+		@Label("Game Time")
+		long time;
+		@Label("Budget")
+		@Timespan
+		long budget;
+		@Label("Elapsed")
+		@Timespan
+		long elapsed;
+		@Label("Late Start")
+		@Timespan
+		long late;
+		@Label("Sample")
+		@Timespan
+		long sample;
+		@Label("Autopilot")
+		@Timespan
+		long autopilot;
+		@Label("Publish")
+		@Timespan
+		long publish;
+		@Label("GC")
+		@Timespan(Timespan.MILLISECONDS)
+		long gcMillis;
+		@Label("Logging Queue Depth")
+		int queueDepth;
+		@Label("Reason")
+		String reason;
+	}
+
+	@Name("ie.atu.sw.TrainingIteration")
+	@Label("Training Iteration")
+	@Category("Autopilot")
+	@Description("An epoch or generation of a trainer")
+	static class TrainingIterationEvent extends Event {
+		@Label("Trainer")
+		String trainer;
+		@Label("Iteration")
+		int iteration;
+		@Label("Error or Fitness")
+		double error;
+		@Label("Elapsed")
+		@Timespan
+		long elapsed;
+	}
+}
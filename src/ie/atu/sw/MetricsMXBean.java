@@ -0,0 +1,37 @@
+package ie.atu.sw;
+
+/*
+ * The counters of the game loop and its surroundings as JMX sees them,
+ * registered by Metrics as ie.atu.sw:type=Metrics. The latencies are separate
+ * LatencyMXBeans.
+ */
+public interface MetricsMXBean {
+	long getTicks();
+
+	// Ticks that finished after the end of their time slot
+	long getMissedTicks();
+
+	// Why the last missed tick was late, e.g. "autopilot 142.1ms of 100.0ms"
+	String getLastMissReason();
+
+	long getPaints();
+
+	long getTrainingIterations();
+
+	// Samples waiting to be written by the TrainingDataWriter
+	int getLoggingQueueDepth();
+
+	long getDroppedSamples();
+
+	// Models reloaded by HotSwapAutopilot while the game ran
+	long getModelReloads();
+
+	// The last model reloaded, e.g. "A trainingModel.eg #2 (classic)"
+	String getLastModelReload();
+
+	long getGcCount();
+
+	long getGcMillis();
+
+	void reset();
+}
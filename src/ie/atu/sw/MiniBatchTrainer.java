@@ -0,0 +1,213 @@
+package ie.atu.sw;
+
+import org.encog.ml.data.MLDataSet;
+import org.encog.ml.data.basic.BasicMLData;
+import org.encog.ml.data.basic.BasicMLDataPair;
+import org.encog.neural.networks.BasicNetwork;
+import org.encog.neural.networks.training.propagation.sgd.StochasticGradientDescent;
+import org.encog.neural.networks.training.propagation.sgd.update.AdaGradUpdate;
+import org.encog.neural.networks.training.propagation.sgd.update.AdamUpdate;
+import org.encog.neural.networks.training.propagation.sgd.update.MomentumUpdate;
+import org.encog.neural.networks.training.propagation.sgd.update.RMSPropUpdate;
+
+/*
+ * Mini-batch stochastic gradient descent that streams over a dataset instead
+ * of holding it in memory. It is meant for a memory-mapped BinaryDataSet, but
+ * works with any MLDataSet.
+ *
+ * The rows are split into blocks of blockSize consecutive rows, and the
+ * validation set that is used for early stopping is given separately (see
+ * DataSplit). Every epoch the blocks are visited in a new random order,
+ * shuffleBlocks of them at a time are read into a small buffer, and the
+ * rows of the buffer are shuffled before they are fed to Encog's
+ * StochasticGradientDescent in batches of batchSize. Only that buffer is ever
+ * on the heap, whatever the size of the dataset.
+ *
+ * The learning rate follows a schedule, and training stops early once the
+ * validation error has not improved for a number of epochs. The network is
+ * left with the weights of the best epoch.
+ */
+public class MiniBatchTrainer {
+	// How the learning rate changes from one epoch to the next
+	public enum Schedule {
+		CONSTANT, STEP, EXPONENTIAL, COSINE
+	}
+
+	private final TrainerConfig config;
+
+	// Prints progress when set, which is turned off when several folds train at once
+	private boolean verbose = true;
+
+	public MiniBatchTrainer(TrainerConfig config) {
+		this.config = config;
+	}
+
+	public void setVerbose(boolean verbose) {
+		this.verbose = verbose;
+	}
+
+	// Trains the network on every row of the dataset, stopping early on the validation set
+	public double train(BasicNetwork network, MLDataSet data, MLDataSet validation) {
+		int[] training = new int[blockCount(data)];
+		for (int b = 0; b < training.length; b++) {
+			training[b] = b;
+		}
+		return train(network, data, training, training.length, validation);
+	}
+
+	private int blockCount(MLDataSet data) {
+		return (int) ((data.getRecordCount() + config.blockSize - 1) / config.blockSize);
+	}
+
+	// Trains on the given blocks of the dataset and returns the best validation error
+	private double train(BasicNetwork network, MLDataSet data, int[] training, int trainingCount,
+			MLDataSet validation) {
+		int inputs = data.getInputSize();
+		int ideals = data.getIdealSize();
+		int width = inputs + ideals;
+		long rows = data.getRecordCount();
+		int blockSize = config.blockSize;
+		boolean validate = validation.getRecordCount() > 0;
+
+		var sgd = new StochasticGradientDescent(network, data);
+		// Encog's NesterovUpdate steps against the gradient's sign and diverges, so it is not offered
+		sgd.setUpdateRule(switch (config.updateRule) {
+		case "momentum" -> new MomentumUpdate();
+		case "rmsprop" -> new RMSPropUpdate();
+		case "adagrad" -> new AdaGradUpdate();
+		default -> new AdamUpdate();
+		});
+		sgd.setMomentum(config.momentum);
+
+		var random = new SplitMix64(config.seed);
+		var buffer = new double[config.shuffleBlocks * blockSize * width];
+		var weights = new double[config.shuffleBlocks * blockSize]; // The significance of each row
+		var order = new int[config.shuffleBlocks * blockSize];
+		// BasicMLDataSet hands out its own arrays in getRecord(), so rows are read
+		// through one pair and fed to the trainer through another
+		var read = new BasicMLDataPair(new BasicMLData(inputs), new BasicMLData(ideals));
+		var pair = new BasicMLDataPair(new BasicMLData(inputs), new BasicMLData(ideals));
+
+		double bestError = Double.MAX_VALUE;
+		double[] bestWeights = network.getFlat().getWeights().clone();
+		int sinceBest = 0;
+		long start = System.nanoTime();
+
+		if (verbose) {
+			System.out.println("Mini-batch SGD over " + trainingCount + " blocks of " + blockSize
+					+ " rows, validating on " + validation.getRecordCount() + " rows");
+		}
+
+		int epoch;
+		for (epoch = 1; epoch <= config.maxEpochs; epoch++) {
+			long epochStart = System.nanoTime();
+			sgd.setLearningRate(learningRate(epoch));
+			shuffle(training, trainingCount, random);
+
+			// Stream the training blocks through the shuffle buffer
+			int inBatch = 0;
+			for (int first = 0; first < trainingCount; first += config.shuffleBlocks) {
+				int last = Math.min(first + config.shuffleBlocks, trainingCount);
+				int filled = 0;
+				for (int i = first; i < last; i++) {
+					long end = Math.min(rows, (long) training[i] * blockSize + blockSize);
+					for (long row = (long) training[i] * blockSize; row < end; row++) {
+						data.getRecord(row, read);
+						System.arraycopy(read.getInputArray(), 0, buffer, filled * width, inputs);
+						System.arraycopy(read.getIdealArray(), 0, buffer, filled * width + inputs, ideals);
+						weights[filled] = read.getSignificance();
+						order[filled] = filled;
+						filled++;
+					}
+				}
+				shuffle(order, filled, random);
+
+				for (int i = 0; i < filled; i++) {
+					System.arraycopy(buffer, order[i] * width, pair.getInputArray(), 0, inputs);
+					System.arraycopy(buffer, order[i] * width + inputs, pair.getIdealArray(), 0, ideals);
+					pair.setSignificance(weights[order[i]]);
+					sgd.process(pair);
+					if (++inBatch == config.batchSize) {
+						sgd.update();
+						inBatch = 0;
+					}
+				}
+			}
+			if (inBatch > 0) {
+				sgd.update();
+			}
+
+			// Score the epoch on the held out blocks, or the training error if there are none
+			double error = validate ? validationError(network, validation) : sgd.getError();
+			Metrics.trainingIteration("sgd", epoch, error, System.nanoTime() - epochStart);
+			if (error < bestError) {
+				bestError = error;
+				System.arraycopy(network.getFlat().getWeights(), 0, bestWeights, 0, bestWeights.length);
+				sinceBest = 0;
+			} else if (++sinceBest >= config.patience) {
+				if (verbose) {
+					System.out.println("Stopping early: no improvement for " + config.patience + " epochs");
+				}
+				break;
+			}
+
+			if (verbose && epoch % config.logEvery == 0) {
+				System.out.println("Epoch #" + epoch + " Validation Error:" + error + " Learning Rate:"
+						+ sgd.getLearningRate());
+			}
+			if (bestError <= config.targetError) {
+				break;
+			}
+		}
+
+		// Keep the weights that did best on the validation blocks
+		System.arraycopy(bestWeights, 0, network.getFlat().getWeights(), 0, bestWeights.length);
+		double seconds = (System.nanoTime() - start) / 1e9;
+		int epochs = Math.min(epoch, config.maxEpochs);
+		if (verbose) {
+			System.out.printf("Trained %d epochs in %.2fs (%.1f epochs/s), best validation error: %f%n", epochs,
+					seconds, epochs / seconds, bestError);
+		}
+		return bestError;
+	}
+
+	// The learning rate to use for the given epoch (counted from 1)
+	double learningRate(int epoch) {
+		double rate = config.learningRate;
+		return switch (config.schedule) {
+		case CONSTANT -> rate;
+		case STEP -> rate * Math.pow(config.decay, (epoch - 1) / config.stepEvery);
+		case EXPONENTIAL -> rate * Math.pow(config.decay, epoch - 1);
+		case COSINE -> rate * 0.5 * (1 + Math.cos(Math.PI * (epoch - 1) / config.maxEpochs));
+		};
+	}
+
+	// The mean squared error of the network over the validation set
+	private static double validationError(BasicNetwork network, MLDataSet validation) {
+		var flat = network.getFlat();
+		var pair = new BasicMLDataPair(new BasicMLData(validation.getInputSize()),
+				new BasicMLData(validation.getIdealSize()));
+		var output = new double[validation.getIdealSize()];
+		double sum = 0;
+		for (long row = 0; row < validation.getRecordCount(); row++) {
+			validation.getRecord(row, pair);
+			flat.compute(pair.getInputArray(), output);
+			double[] ideal = pair.getIdealArray();
+			for (int k = 0; k < output.length; k++) {
+				double delta = ideal[k] - output[k];
+				sum += delta * delta;
+			}
+		}
+		return sum / (validation.getRecordCount() * output.length);
+	}
+
+	// Fisher-Yates shuffle of the first count values
+	private static void shuffle(int[] values, int count, SplitMix64 random) {
+		for (int i = count - 1; i > 0; i--) {
+			int j = random.nextInt(i + 1);
+			int swap = values[i];
+			values[i] = values[j];
+			values[j] = swap;
+		}
+	}
+}
@@ -0,0 +1,178 @@
+package ie.atu.sw;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+import org.encog.neural.networks.BasicNetwork;
+import org.encog.persist.EncogDirectoryPersistence;
+
+/*
+ * Scores a trained model by flying it through many independent caverns without
+ * a display. Every episode gets its own seed for its SeededCavernGenerator, so
+ * two models evaluated with the same base seed fly through exactly the same
+ * caves and any single crash can be flown again from its seed.
+ *
+ * Episodes are spread across all cores with a fork-join pool. Each worker
+ * thread has its own copy of the compiled network and each episode its own
+ * random number generator, so no locks are shared while the episodes run.
+ * Code that is already parallel, such as a search over many networks, can
+ * have the episodes flown on the calling thread with setThreads(1).
+ *
+ * The episodes are flown in the original 30x20 world unless the world settings
+ * say otherwise (see WorldConfig), e.g. --width 1000 --height 500 --lanes 4.
+ *
+ * With --pilot planner the PlannerAutopilot flies instead of a model, and with
+ * --pilot oracle the OraclePlanner, which gives the survival that a model can
+ * hope for in the same caves.
+ *
+ * Usage: ModelEvaluator [episodes] [maxTicks] [seed] [modelFile] [--pilot model|planner|oracle]
+ *   [world settings]
+ */
+public class ModelEvaluator {
+	private static final int DEFAULT_EPISODES = 1000;
+	private static final long DEFAULT_MAX_TICKS = 100_000; // Just under 3 hours of game time
+	private static final long DEFAULT_SEED = 42;
+	private static final String DEFAULT_MODEL = "resources/trainingModel.eg";
+
+	private final Supplier<Autopilot> pilots;
+	private final FeatureExtractor features;
+	private final long maxTicks;
+	private final WorldConfig world;
+	private int threads = Runtime.getRuntime().availableProcessors();
+
+	public ModelEvaluator(BasicNetwork network, long maxTicks) {
+		this(network, maxTicks, new WorldConfig());
+	}
+
+	public ModelEvaluator(BasicNetwork network, long maxTicks, WorldConfig world) {
+		this(new NetworkAutopilot(network), maxTicks, world);
+	}
+
+	// The autopilot's buffers are not thread safe, so every worker gets a copy
+	private ModelEvaluator(NetworkAutopilot pilot, long maxTicks, WorldConfig world) {
+		this(pilot::copy, pilot.getFeatures(), maxTicks, world);
+	}
+
+	/*
+	 * Evaluates any autopilot. Each worker thread gets its own from pilots, and
+	 * the simulations sample the given features.
+	 */
+	public ModelEvaluator(Supplier<Autopilot> pilots, FeatureExtractor features, long maxTicks, WorldConfig world) {
+		this.pilots = pilots;
+		this.features = features;
+		this.maxTicks = maxTicks;
+		this.world = world;
+	}
+
+	/*
+	 * Plays the given number of episodes in parallel and returns the number of
+	 * ticks each one survived, indexed by episode.
+	 */
+	public long[] evaluate(int episodes, long seed) {
+		// Derive the per-episode seeds up front so the results do not depend on
+		// which thread picks up which episode
+		var seeds = episodeSeeds(episodes, seed);
+
+		if (threads == 1) {
+			var pilot = pilots.get();
+			return IntStream.range(0, episodes).mapToLong(i -> play(pilot, seeds[i])).toArray();
+		}
+		ThreadLocal<Autopilot> pilots = ThreadLocal.withInitial(this.pilots);
+
+		var pool = new ForkJoinPool(threads);
+		try {
+			return pool.submit(() -> IntStream.range(0, episodes).parallel()
+					.mapToLong(i -> play(pilots.get(), seeds[i]))
+					.toArray()).join();
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	// Flies a single episode and returns the number of ticks it lasted
+	private long play(Autopilot pilot, long seed) {
+		var sim = world.newSimulation(seed);
+		sim.setFeatures(features); // Checks that the features fit in the world
+		return sim.play(pilot, maxTicks);
+	}
+
+	// Sets the number of threads the episodes are spread over, 1 to fly them all on the calling thread
+	public void setThreads(int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("Need at least 1 thread: " + threads);
+		}
+		this.threads = threads;
+	}
+
+	// Derives the seed of every episode from the base seed
+	static long[] episodeSeeds(int episodes, long seed) {
+		return new SplittableRandom(seed).longs(episodes).toArray();
+	}
+
+	// Returns the value at the given percentile of a sorted array (nearest rank)
+	static long percentile(long[] sorted, double p) {
+		int rank = (int) Math.ceil(p / 100.0 * sorted.length);
+		return sorted[Math.max(0, Math.min(sorted.length - 1, rank - 1))];
+	}
+
+	// Converts a number of ticks into seconds of game time
+	static double toSeconds(long ticks) {
+		return ticks * (Simulation.TIMER_INTERVAL / 1000.0d);
+	}
+
+	public static void main(String[] args) {
+		List<String> rest = new ArrayList<>();
+		var world = WorldConfig.from(TrainerConfig.extract(args, WorldConfig.NAMES, rest));
+		List<String> positional = new ArrayList<>();
+		var pilot = TrainerConfig.extract(rest.toArray(new String[0]), List.of("pilot"), positional)
+				.getProperty("pilot", "model");
+		args = positional.toArray(new String[0]);
+
+		int episodes = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_EPISODES;
+		long maxTicks = args.length > 1 ? Long.parseLong(args[1]) : DEFAULT_MAX_TICKS;
+		long seed = args.length > 2 ? Long.parseLong(args[2]) : DEFAULT_SEED;
+		String modelFile = args.length > 3 ? args[3] : DEFAULT_MODEL;
+
+		var evaluator = switch (pilot) {
+		case "model" -> new ModelEvaluator((BasicNetwork) EncogDirectoryPersistence.loadObject(new File(modelFile)),
+				maxTicks, world);
+		case "planner" -> new ModelEvaluator(PlannerAutopilot::new, ClassicFeatures.INSTANCE, maxTicks, world);
+		case "oracle" -> new ModelEvaluator(OraclePlanner::new, ClassicFeatures.INSTANCE, maxTicks, world);
+		default -> throw new IllegalArgumentException("Unknown pilot: " + pilot + ", use model, planner or oracle");
+		};
+
+		long start = System.nanoTime();
+		long[] ticks = evaluator.evaluate(episodes, seed);
+		double elapsed = (System.nanoTime() - start) / 1e9;
+
+		// Remember the worst episode so its crash can be reproduced
+		int worst = 0;
+		for (int i = 1; i < ticks.length; i++) {
+			if (ticks[i] < ticks[worst]) {
+				worst = i;
+			}
+		}
+		long worstSeed = episodeSeeds(episodes, seed)[worst];
+		long worstTicks = ticks[worst];
+
+		Arrays.sort(ticks);
+		long total = Arrays.stream(ticks).sum();
+		long capped = Arrays.stream(ticks).filter(t -> t >= maxTicks).count();
+
+		System.out.println("Model: " + (pilot.equals("model") ? modelFile : pilot) + ", Episodes: " + episodes
+				+ ", Seed: " + seed + ", " + world);
+		System.out.printf("Survival Mean = %.1fs, P50 = %.1fs, P99 = %.1fs, Max = %.1fs%n",
+				toSeconds(total) / episodes, toSeconds(percentile(ticks, 50)), toSeconds(percentile(ticks, 99)),
+				toSeconds(ticks[ticks.length - 1]));
+		System.out.println("Episodes reaching the " + maxTicks + " tick limit: " + capped);
+		System.out.println("Shortest episode: seed " + worstSeed + " crashed after " + worstTicks + " ticks");
+		System.out.printf("Throughput: %.0f ticks/s over %d threads in %.2fs%n", total / elapsed, evaluator.threads,
+				elapsed);
+	}
+}
@@ -0,0 +1,96 @@
+package ie.atu.sw;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/*
+ * Watches files for changes with a WatchService and tells a listener about
+ * each one on a background thread, so that whatever the listener does, such
+ * as parsing a model, never holds up the game or the event dispatch thread.
+ *
+ * Writing a file usually fires several events, so once something changes the
+ * watcher waits until the directory has been quiet for SETTLE_MILLIS and then
+ * calls the listener once per changed file. The trainers save their models
+ * with NeuralNetworkTrainer.saveModel(), which moves a finished file into
+ * place, so a listener never sees half of a model. A listener that fails is
+ * reported and tried again on the next change.
+ */
+public class ModelWatcher implements AutoCloseable {
+	private static final long SETTLE_MILLIS = 250;
+
+	private final WatchService service;
+	private final Map<Path, Consumer<Path>> listeners = new ConcurrentHashMap<>();
+	private final Thread thread;
+
+	public ModelWatcher() throws IOException {
+		this.service = FileSystems.getDefault().newWatchService();
+		this.thread = new Thread(this::run, "model-watcher");
+		this.thread.setDaemon(true);
+	}
+
+	// Calls the listener with the file whenever it is written or replaced
+	public void watch(Path file, Consumer<Path> listener) throws IOException {
+		file = file.toAbsolutePath().normalize();
+		file.getParent().register(service, ENTRY_CREATE, ENTRY_MODIFY);
+		listeners.put(file, listener);
+	}
+
+	public void start() {
+		thread.start();
+	}
+
+	// The body of the watcher thread
+	private void run() {
+		try {
+			while (true) {
+				Set<Path> changed = new LinkedHashSet<>();
+				collect(service.take(), changed);
+
+				// Let the writer finish, gathering whatever else changes meanwhile
+				WatchKey key;
+				while ((key = service.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+					collect(key, changed);
+				}
+
+				for (var file : changed) {
+					try {
+						listeners.get(file).accept(file);
+					} catch (RuntimeException e) {
+						System.err.println("Error reloading " + file + ": " + e.getMessage());
+					}
+				}
+			}
+		} catch (InterruptedException | ClosedWatchServiceException e) {
+			// Closed
+		}
+	}
+
+	// Adds the watched files that the key has events for
+	private void collect(WatchKey key, Set<Path> changed) {
+		var directory = (Path) key.watchable();
+		for (var event : key.pollEvents()) {
+			if (event.context() instanceof Path name && listeners.containsKey(directory.resolve(name))) {
+				changed.add(directory.resolve(name));
+			}
+		}
+		key.reset();
+	}
+
+	// Stops watching
+	public void close() throws IOException {
+		service.close();
+	}
+}
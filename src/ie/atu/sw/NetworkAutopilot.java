@@ -0,0 +1,76 @@
+package ie.atu.sw;
+
+import org.encog.neural.networks.BasicNetwork;
+
+/*
+ * Flies the plane with a neural network trained by NeuralNetworkTrainer. The
+ * network takes the features it was trained on, as named by its "features"
+ * property (see FeatureExtractor), and has one output per action (up, stay,
+ * down). The autopilot samples those features itself, so a model flies with
+ * its own features whatever the simulation is set to record.
+ *
+ * The network is compiled into a CompiledNetwork and the feature vector is
+ * sampled into the same array every tick, so flying the plane does not
+ * allocate anything. Because of those reused buffers each thread needs its
+ * own NetworkAutopilot, which copy() provides cheaply.
+ */
+public class NetworkAutopilot implements Autopilot {
+	private final CompiledNetwork network;
+	private final FeatureExtractor features;
+	private final double[] state;
+
+	public NetworkAutopilot(BasicNetwork network) {
+		this(new CompiledNetwork(network), FeatureExtractor.forNetwork(network));
+	}
+
+	public NetworkAutopilot(CompiledNetwork network, FeatureExtractor features) {
+		if (network.getInputCount() != features.getFeatureCount()) {
+			throw new IllegalArgumentException("Network with " + network.getInputCount() + " inputs cannot use "
+					+ features.getSpec() + " features (" + features.getFeatureCount() + ")");
+		}
+		this.network = network;
+		this.features = features;
+		this.state = new double[features.getFeatureCount()];
+	}
+
+	public int nextMove(Simulation sim) {
+		// Sample the current game state before making a move
+		features.extract(sim, state);
+
+		// Determine the action with the highest output value
+		int actionIndex = network.classify(state);
+		return indexToAction(actionIndex); // Convert index to action (-1, 0, 1)
+	}
+
+	// Returns an autopilot with the same network for use on another thread
+	public NetworkAutopilot copy() {
+		return new NetworkAutopilot(network.copy(), features);
+	}
+
+	public CompiledNetwork getNetwork() {
+		return network;
+	}
+
+	public FeatureExtractor getFeatures() {
+		return features;
+	}
+
+	static int indexToAction(int index) {
+		// Map the neural network's output index back to game action
+		return index - 1; // indexes 0, 1, 2 map to actions -1, 0, 1
+	}
+
+	// Find the index of the maximum value in the array
+	static int getMaxIndex(double[] array) {
+		int maxIndex = 0;
+		// Iterate through the array starting from the second element
+		for (int i = 1; i < array.length; i++) {
+			// Check if the current element is greater than the maximum value
+			if (array[i] > array[maxIndex]) {
+				// Update the index of the maximum value
+				maxIndex = i;
+			}
+		}
+		return maxIndex;
+	}
+}
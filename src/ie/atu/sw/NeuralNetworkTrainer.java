@@ -1,38 +1,66 @@
 package ie.atu.sw;
 
+import org.encog.engine.network.activation.ActivationFunction;
+import org.encog.engine.network.activation.ActivationReLU;
 import org.encog.engine.network.activation.ActivationTANH;
-import org.encog.ml.data.MLData;
-import org.encog.ml.data.MLDataPair;
 import org.encog.ml.data.MLDataSet;
 import org.encog.ml.data.basic.BasicMLDataSet;
 import org.encog.neural.networks.BasicNetwork;
 import org.encog.neural.networks.layers.BasicLayer;
+import org.encog.neural.networks.training.propagation.Propagation;
 import org.encog.neural.networks.training.propagation.back.Backpropagation;
+import org.encog.neural.networks.training.propagation.quick.QuickPropagation;
+import org.encog.neural.networks.training.propagation.resilient.ResilientPropagation;
+import org.encog.neural.networks.training.propagation.scg.ScaledConjugateGradient;
 import org.encog.persist.EncogDirectoryPersistence;
 import org.encog.util.csv.CSVFormat;
 import org.encog.util.csv.ReadCSV;
 import java.io.FileWriter; // Import FileWriter
 import java.io.IOException;  // Import the IOException class to handle errors
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 
-import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
 
 public class NeuralNetworkTrainer {
 
-	// Size of the input and output layers
-	private final int inputSize = 5;
+	// Where the metrics of the last training run are written
+	private static final String REPORT_FILE = "resources/performance_accuracy.txt";
+
+	// Size of the output layer, one per action. The input layer is as wide as the
+	// features the network is trained on (see FeatureExtractor).
 	private final int outputSize = 3;
 
 	// Creates a new neural network with the specified architecture.
 	public BasicNetwork createNetwork() {
+		return createNetwork(ClassicFeatures.INSTANCE, new int[] { 34, 12 }, new ActivationTANH());
+	}
+
+	// Creates a new network with the features, hidden layers and activation in the config.
+	public BasicNetwork createNetwork(TrainerConfig config) {
+		return createNetwork(FeatureExtractor.forName(config.features), config.hiddenLayers(),
+				config.activation.equals("relu") ? new ActivationReLU() : new ActivationTANH());
+	}
+
+	// Creates a new network with hidden layers of the given sizes. The output layer
+	// is always tanh so the outputs stay comparable whatever the hidden layers use.
+	// The spec of the features is saved with the network so it flies with them.
+	public BasicNetwork createNetwork(FeatureExtractor features, int[] hidden, ActivationFunction activation) {
 		BasicNetwork network = new BasicNetwork();
-		network.addLayer(new BasicLayer(null, true, inputSize)); // Same as the features
-		network.addLayer(new BasicLayer(new ActivationTANH(), true, 34)); // First hidden layer of 30 neurons
-		network.addLayer(new BasicLayer(new ActivationTANH(), true, 12)); // Second hidden layer of 15 neurons
+		network.addLayer(new BasicLayer(null, true, features.getFeatureCount())); // Same as the features
+		for (int neurons : hidden) {
+			network.addLayer(new BasicLayer(activation.clone(), true, neurons));
+		}
 		network.addLayer(new BasicLayer(new ActivationTANH(), false, outputSize)); // Output is however many actions
 																					// possible (up, down, stay)
 		network.getStructure().finalizeStructure();
+		network.setProperty(FeatureExtractor.PROPERTY, features.getSpec());
 		network.reset();
 		return network;
 	}
@@ -40,11 +68,24 @@ public class NeuralNetworkTrainer {
 	// Loads the training data from a CSV file.
 	// filePath The path to the CSV file containing training data.
 	// A MLDataSet object containing the loaded training data.
-	private MLDataSet loadCSV(String filePath) {
+	private MLDataSet loadCSV(String filePath, FeatureExtractor features) {
 		List<double[]> inputData = new ArrayList<>();
 		List<double[]> idealData = new ArrayList<>();
 		ReadCSV csv = new ReadCSV(filePath, true, CSVFormat.DECIMAL_POINT);
 
+		// The header names the features the data was recorded with. ReadCSV lower cases the names.
+		int inputSize = features.getFeatureCount();
+		List<String> expected = new ArrayList<>();
+		for (var name : features.getFeatureNames()) {
+			expected.add(name.toLowerCase(Locale.ROOT));
+		}
+		expected.add("action");
+		if (!csv.getColumnNames().equals(expected)) {
+			csv.close();
+			throw new IllegalArgumentException("The columns of " + filePath + " are " + csv.getColumnNames()
+					+ ", not the " + features.getSpec() + " features " + expected);
+		}
+
 		while (csv.next()) {
 			double[] input = new double[inputSize];
 			double[] ideal = new double[outputSize];
@@ -56,123 +97,241 @@ public class NeuralNetworkTrainer {
 			inputData.add(input);
 			idealData.add(ideal);
 		}
+		csv.close();
 
 		return new BasicMLDataSet(inputData.toArray(new double[0][]), idealData.toArray(new double[0][]));
 	}
 
+	// Loads the training data from either a CSV file or a binary file made by
+	// BinaryDataSet, which is memory-mapped instead of being read into the heap.
+	// The data must have been recorded with the given features.
+	MLDataSet loadData(String filePath, FeatureExtractor features) {
+		if (!filePath.endsWith(".bin")) {
+			return loadCSV(filePath, features);
+		}
+		try {
+			MLDataSet dataSet = BinaryDataSet.open(Paths.get(filePath));
+			if (dataSet.getInputSize() != features.getFeatureCount() || dataSet.getIdealSize() != outputSize) {
+				throw new IllegalArgumentException("Expected " + features.getFeatureCount() + " " + features.getSpec()
+						+ " features and " + outputSize + " classes in " + filePath);
+			}
+			return dataSet;
+		} catch (IOException e) {
+			throw new UncheckedIOException("Error opening training data " + filePath, e);
+		}
+	}
+
 	// Train a neural network model using the provided training data file.
 	public void trainModel(String dataFilePath) {
-		// Create a new neural network
-		BasicNetwork network = createNetwork();
-		// Load the training data from the specified CSV file
-		MLDataSet dataSet = loadCSV(dataFilePath);
+		var config = new TrainerConfig();
+		config.dataFile = dataFilePath;
+		trainModel(config);
+	}
+
+	// Train a neural network model with the algorithm and settings in the config.
+	public void trainModel(TrainerConfig config) {
+		// The genetic algorithm learns from flying, not from the data
+		if (config.algorithm == TrainerConfig.Algorithm.GENETIC) {
+			System.out.println(config);
+			BasicNetwork network = new GeneticTrainer(config, this).train();
+			saveModel(network, config.modelFile);
+			return;
+		}
+
+		// Load the training data from the specified CSV or binary file
+		MLDataSet dataSet = loadData(config.dataFile, FeatureExtractor.forName(config.features));
+		System.out.println(config);
+		if (config.folds > 1) {
+			crossValidate(dataSet, config);
+			return;
+		}
+
+		// Hold out a validation set to pick the best epoch and a test set that is
+		// only looked at once training is over
+		var split = DataSplit.holdout(dataSet, config.validationPercent, config.testPercent, config.seed);
+		System.out.println("Training on " + split.train().getRecordCount() + " rows, validating on "
+				+ split.validation().getRecordCount() + " and testing on " + split.test().getRecordCount());
+		BasicNetwork network = train(split.train(), split.validation(), config, true);
+
+		// Evaluate the trained model on data it has not been trained on
+		var validation = ClassificationMetrics.evaluate(network, split.validation());
+		var test = ClassificationMetrics.evaluate(network, split.test());
+		System.out.print(validation.report("Validation"));
+		System.out.print(test.report("Test"));
+		writeReport(validation.report("Validation") + test.report("Test"));
+
+		// Save the trained model
+		saveModel(network, config.modelFile);
+	}
+
+	/*
+	 * Saves the model next to the file and then moves it into place, so a game
+	 * watching the file (see ModelWatcher) never reads half of a model.
+	 */
+	public static void saveModel(BasicNetwork network, String modelFile) {
+		var file = Paths.get(modelFile).toAbsolutePath();
+		var temp = file.resolveSibling(file.getFileName() + ".tmp");
+		EncogDirectoryPersistence.saveObject(temp.toFile(), network);
+		try {
+			Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/*
+	 * Trains a new network on the training set with the algorithm chosen in the
+	 * config. The validation error is checked every validateEvery epochs, apart
+	 * from how often progress is printed, and the network ends up with the
+	 * weights that scored best on it.
+	 */
+	BasicNetwork train(MLDataSet trainSet, MLDataSet validationSet, TrainerConfig config, boolean verbose) {
+		BasicNetwork network = createNetwork(config);
+
+		// Collapse the copies in the training rows into weighted ones, if asked to
+		if (config.preprocess != DatasetPreprocessor.Mode.NONE) {
+			var preprocessor = new DatasetPreprocessor(config.preprocess, config.seed);
+			trainSet = preprocessor.process(trainSet);
+			if (verbose) {
+				System.out.print(preprocessor.report());
+			}
+		}
 
-		// Train the network using Backpropagation algorithm
-		Backpropagation train = new Backpropagation(network, dataSet, 0.001, 0.9);
+		// Mini-batch SGD streams over the data instead of doing full-batch epochs
+		if (config.algorithm == TrainerConfig.Algorithm.SGD) {
+			var sgd = new MiniBatchTrainer(config);
+			sgd.setVerbose(verbose);
+			sgd.train(network, trainSet, validationSet);
+			return network;
+		}
+
+		// Train the network using the chosen algorithm, spread across the cores
+		Propagation train = createTrainer(network, trainSet, config);
+		train.setThreadCount(config.threads);
+		boolean validate = validationSet.getRecordCount() > 0;
+		double bestError = Double.MAX_VALUE;
+		double[] bestWeights = network.getFlat().getWeights().clone();
 		int epoch = 1;
+		long start = System.nanoTime();
 
 		// Iterate until the error is sufficiently low or the maximum number of epochs
-		// is reached
+		// is reached. Every validateEvery-th epoch is validated and every
+		// logEvery-th printed, with the latest validation error.
+		double error = Double.NaN;
 		do {
+			long iterationStart = System.nanoTime();
 			train.iteration();
-			System.out.println("Epoch #" + epoch + " Error:" + train.getError());
+			Metrics.trainingIteration(config.algorithm.name().toLowerCase(), epoch, train.getError(),
+					System.nanoTime() - iterationStart);
+			if (validate && epoch % config.validateEvery == 0) {
+				error = network.calculateError(validationSet);
+				if (error < bestError) {
+					bestError = error;
+					System.arraycopy(network.getFlat().getWeights(), 0, bestWeights, 0, bestWeights.length);
+				}
+			}
+			if (verbose && epoch % config.logEvery == 0) {
+				System.out.println("Epoch #" + epoch + " Error:" + train.getError()
+						+ (validate ? " Validation Error:" + error : ""));
+			}
 			epoch++;
-		} while (train.getError() > 0.01 && epoch <= 30000);
+		} while (train.getError() > config.targetError && epoch <= config.maxEpochs);
 
-		// Finalize the training process
+		// Finalize the training process, keeping the final weights if they validate best
 		train.finishTraining();
+		if (validate && network.calculateError(validationSet) > bestError) {
+			System.arraycopy(bestWeights, 0, network.getFlat().getWeights(), 0, bestWeights.length);
+		}
+		if (verbose) {
+			double seconds = (System.nanoTime() - start) / 1e9;
+			System.out.printf("Trained %d epochs in %.2fs (%.1f epochs/s), final error: %f%n", epoch - 1, seconds,
+					(epoch - 1) / seconds, train.getError());
+		}
+		return network;
+	}
 
-		// Evaluate the trained model
-		evaluateModel(network, dataSet);
-
-		// Save the trained model
-		EncogDirectoryPersistence.saveObject(new File("resources/trainingModel.eg"), network);
+	// The outcome of training and testing on one fold of a cross-validation
+	private record Fold(int index, ClassificationMetrics metrics, double seconds) {
 	}
 
-	// Evaluates the trained neural network model using the provided dataset to
-	// measure accuracy and other performance metrics.
-	private void evaluateModel(BasicNetwork network, MLDataSet dataSet) {
-		// Initialize variables to track performance metrics
-		int correctPredictions = 0;
-		int[] truePositives = new int[3];
-		int[] falsePositives = new int[3];
-		int[] falseNegatives = new int[3];
-
-		// Iterate through each data pair in the dataset
-		for (MLDataPair pair : dataSet) {
-			// Compute the output from the neural network for the input data
-			final MLData output = network.compute(pair.getInput());
-			int predictedIndex = getMaxIndex(output.getData());
-			int actualIndex = getMaxIndex(pair.getIdeal().getData());
-
-			// Update performance metrics based on the predicted and actual classes
-			if (predictedIndex == actualIndex) {
-				correctPredictions++;
-				truePositives[predictedIndex]++;
-			} else {
-				falsePositives[predictedIndex]++;
-				falseNegatives[actualIndex]++;
-			}
-		}
-		// Calculate accuracy
-		double accuracy = (double) correctPredictions / dataSet.size();
-		System.out.println("Validation Accuracy: " + accuracy);
+	/*
+	 * Stratified k-fold cross-validation. Each fold trains a new network on the
+	 * other folds (holding out validationPercent of them to pick the best epoch)
+	 * and is tested on its own rows. The folds train at the same time, each on
+	 * its own thread, so Encog is limited to one thread per fold. Nothing is
+	 * saved, the point is an estimate of how well the settings generalise.
+	 */
+	private void crossValidate(MLDataSet dataSet, TrainerConfig config) {
+		int k = config.folds;
+		int[][] folds = DataSplit.folds(dataSet, k, config.seed);
+		var foldConfig = config.copy();
+		foldConfig.threads = 1;
+		System.out.println("Cross-validating " + k + " folds of about " + folds[0].length + " rows");
 
-		// Calculate and print precision, recall, and F1 for each class
-		// This is necessary because originally my data collection would not record
-		// zeros (stay) so I added these metrics since we've done this in the Gesture
-		// Based AI module, to find if it was recognising all classes, which proved it
-		// wasn't recognising Class 1 which is stay because 1 - 1 = 0 when it's not one
-		// hot encoded.
+		long start = System.nanoTime();
+		var pool = new ForkJoinPool(Math.min(k, Runtime.getRuntime().availableProcessors()));
+		Fold[] results;
 		try {
-	        // Open a file writer in append mode
-	        FileWriter writer = new FileWriter("resources/performance_accuracy.txt", false);
-	        // Write the accuracy to the file
-	        writer.write("Validation Accuracy: " + accuracy + "\n");
-
-	        // Calculate and write precision, recall, and F1 for each class to the file
-	        for (int i = 0; i < 3; i++) {
-	            double precision = (double) truePositives[i] / (truePositives[i] + falsePositives[i]);
-	            double recall = (double) truePositives[i] / (truePositives[i] + falseNegatives[i]);
-	            double f1 = 2 * (precision * recall) / (precision + recall);
-
-	            // Write performance metrics for each class
-	            writer.write("Class " + i + ": Precision = " + precision + ", Recall = " + recall + ", F1 = " + f1 + "\n");
-	            // Print performance metrics for each class
-				System.out.println("Class " + i + ": Precision = " + precision + ", Recall = " + recall + ", F1 = " + f1);
-	        }
-
-	        // Close the file writer
-	        writer.close();
-
-	    } catch (IOException e) {
-	        System.out.println("An error occurred while writing to performance_accuracy.txt.");
-	        e.printStackTrace();
-	    }
+			results = pool.submit(() -> IntStream.range(0, k).parallel().mapToObj(f -> {
+				long foldStart = System.nanoTime();
+				var rest = DataSplit.allBut(dataSet, folds, f);
+				var split = DataSplit.holdout(rest, config.validationPercent, 0, config.seed + f);
+				var network = train(split.train(), split.validation(), foldConfig, false);
+				var metrics = ClassificationMetrics.evaluate(network,
+						DataSplit.subset(dataSet, folds[f], folds[f].length));
+				return new Fold(f, metrics, (System.nanoTime() - foldStart) / 1e9);
+			}).toArray(Fold[]::new)).join();
+		} finally {
+			pool.shutdown();
+		}
+		double elapsed = (System.nanoTime() - start) / 1e9;
+
+		// Per fold results, their spread over the folds, then the folds pooled together
+		var pooled = new ClassificationMetrics(outputSize);
+		var metrics = new ClassificationMetrics[k];
+		for (var fold : results) {
+			System.out.print(fold.metrics().report("Fold " + (fold.index() + 1)));
+			System.out.printf(Locale.ROOT, "Trained and tested in %.2fs%n", fold.seconds());
+			pooled.add(fold.metrics());
+			metrics[fold.index()] = fold.metrics();
+		}
+		var summary = ClassificationMetrics.spread(metrics, k + "-fold mean")
+				+ pooled.report(k + "-fold cross-validation, pooled");
+		System.out.print(summary);
+		System.out.printf("Cross-validated in %.2fs%n", elapsed);
+		writeReport(summary);
 	}
 
-	// Helper method to find the index of the maximum value in a double array
-	private int getMaxIndex(double[] array) {
-		 // Initialize the index of the maximum value
-		int maxIndex = 0;
-		
-		// Iterate through the array to find the index of the maximum value
-		for (int i = 1; i < array.length; i++) {
-			if (array[i] > array[maxIndex]) {
-				maxIndex = i;
-			}
+	// Writes the performance report, replacing the last one
+	private void writeReport(String report) {
+		try (var writer = new FileWriter(REPORT_FILE, false)) {
+			writer.write(report);
+		} catch (IOException e) {
+			System.out.println("An error occurred while writing to performance_accuracy.txt.");
+			e.printStackTrace();
 		}
-		return maxIndex;
+	}
+
+	// Creates the propagation trainer for the algorithm chosen in the config.
+	private Propagation createTrainer(BasicNetwork network, MLDataSet dataSet, TrainerConfig config) {
+		return switch (config.algorithm) {
+		case BACKPROP -> new Backpropagation(network, dataSet, config.learningRate, config.momentum);
+		case RPROP -> new ResilientPropagation(network, dataSet);
+		case QUICKPROP -> new QuickPropagation(network, dataSet, config.learningRate);
+		case SCG -> new ScaledConjugateGradient(network, dataSet);
+		case SGD, GENETIC -> throw new IllegalArgumentException(config.algorithm + " is not a propagation algorithm");
+		};
 	}
 
 	// Main method to execute the neural network training process
-	public static void main(String[] args) {
+	public static void main(String[] args) throws IOException {
 		// Create an instance of NeuralNetworkTrainer
 		NeuralNetworkTrainer trainer = new NeuralNetworkTrainer();
-		// Path to the CSV data file
-		String dataFilePath = "resources/game_data.csv";
-		
+		// The data file (CSV, or binary converted with BinaryDataSet), the algorithm
+		// and its settings all come from the command line or a --config file
+		TrainerConfig config = TrainerConfig.parse(args);
+
 		// Train the neural network model using the specified data file
-		trainer.trainModel(dataFilePath);
+		trainer.trainModel(config);
 	}
 }
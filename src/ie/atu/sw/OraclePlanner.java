@@ -0,0 +1,94 @@
+package ie.atu.sw;
+
+import java.util.Arrays;
+
+/*
+ * An autopilot that plans its moves by searching the cavern instead of
+ * learning them. Every column from the plane's up to the newest one on the
+ * right of the grid is already carved, so the planner can see exactly which
+ * rows it can still reach in each of them. It is used as the oracle that
+ * labels states for DataFarm.
+ *
+ * For each of the three moves the rows the plane could be in are followed as
+ * a bitmask, one column per tick: from every reachable row the plane can go
+ * up, straight on or down, and whatever lands on wall is cut away. That is a
+ * couple of shifts and an and per column (a few more for grids over 64 rows
+ * high). The move that survives the most columns wins. Ties go to flying
+ * straight on, so the plane only moves when it has to, and between up and
+ * down to the one that keeps the most rows reachable at the end.
+ *
+ * Instances are not thread safe. Use one planner per thread.
+ */
+public class OraclePlanner implements Autopilot {
+	private static final int[] MOVES = { 0, -1, 1 };
+
+	private long[] open = new long[0]; // The open rows of each column ahead, one after another
+	private long[] reach = new long[0];
+	private long[] next = new long[0];
+
+	public int nextMove(Simulation sim) {
+		var grid = sim.getGrid();
+		int words = grid.getWords();
+		int column = sim.getPlayerColumn();
+		int horizon = grid.getWidth() - column; // The plane's column and every one ahead of it
+		if (open.length < horizon * words) {
+			open = new long[horizon * words];
+		}
+		if (reach.length != words) {
+			reach = new long[words];
+			next = new long[words];
+		}
+		for (int k = 0; k < horizon; k++) {
+			grid.openRows(column + k, open, k * words);
+		}
+
+		int row = sim.getPlayerRow();
+		int best = 0;
+		int bestDepth = -1;
+		int bestSlack = -1;
+		for (int move : MOVES) {
+			int depth = 0;
+			int slack = 0;
+			int start = row + move;
+			if (start >= 0 && start < grid.getHeight() && (open[start >>> 6] >>> start & 1) != 0) {
+				Arrays.fill(reach, 0);
+				reach[start >>> 6] = 1L << start;
+				depth = 1;
+				slack = 1;
+				for (int k = 1; k < horizon; k++) {
+					int count = spread(reach, next, open, k * words);
+					if (count == 0) {
+						break;
+					}
+					var swap = reach;
+					reach = next;
+					next = swap;
+					depth++;
+					slack = count;
+				}
+			}
+			if (depth > bestDepth || (depth == bestDepth && best != 0 && slack > bestSlack)) {
+				best = move;
+				bestDepth = depth;
+				bestSlack = slack;
+			}
+		}
+		return best;
+	}
+
+	/*
+	 * Moves every row of from up, straight on and down into to, keeps only the
+	 * rows that are open in the column at offset and returns how many are left.
+	 */
+	private static int spread(long[] from, long[] to, long[] open, int offset) {
+		int words = from.length;
+		int count = 0;
+		for (int w = 0; w < words; w++) {
+			long up = from[w] >>> 1 | (w + 1 < words ? from[w + 1] << 63 : 0);
+			long down = from[w] << 1 | (w > 0 ? from[w - 1] >>> 63 : 0);
+			to[w] = (from[w] | up | down) & open[offset + w];
+			count += Long.bitCount(to[w]);
+		}
+		return count;
+	}
+}
@@ -0,0 +1,182 @@
+package ie.atu.sw;
+
+/*
+ * An autopilot that searches the cavern ahead like the OraclePlanner, but
+ * remembers what it found from one tick to the next, so it is cheap enough to
+ * fly at uncapped speed and to benchmark the networks against.
+ *
+ * For every column from the plane's up to the end of its window it keeps the
+ * rows that are safe, as a bitmask: the rows from which the plane can still
+ * get through to the last column of the window. The last column is safe
+ * wherever it is open, and a row of any other column is safe if it is open
+ * and the row above, below or beside it in the next column is safe. A move is
+ * safe if it lands on a safe row of the plane's column.
+ *
+ * The cavern only ever scrolls by one column, and the columns already in the
+ * window never change, so the safe rows are kept per column in a ring. When a
+ * new column enters the window the safe rows are worked out again from it
+ * back towards the plane, and the search stops at the first column whose safe
+ * rows stay the same, because every column behind it would stay the same too.
+ * Most ticks that is a column or two, a couple of shifts and an and of one
+ * long each for grids up to 64 rows high, instead of a search of the whole
+ * window for every move.
+ *
+ * Flying straight on is preferred whenever it is safe, and otherwise the safe
+ * move that leaves the most safe rows to pick from next tick. When no move is
+ * safe the plane is doomed inside the window, and the moves are left to a
+ * full search that puts the crash off for as long as possible.
+ *
+ * The planner works out which ticks follow on from the last by the time and
+ * seed of the simulation, so it must be asked for a move every tick, after
+ * tick(). Anything else, such as a reset, starts the search over. Instances
+ * are not thread safe. Use one planner per thread.
+ */
+public class PlannerAutopilot implements Autopilot {
+	private static final int[] MOVES = { 0, -1, 1 };
+
+	private final int depth; // The columns searched ahead of the plane, or 0 for all of them
+	private final OraclePlanner fallback = new OraclePlanner();
+
+	private long[] safe = new long[0]; // The safe rows of each column in the window, as a ring
+	private long[] open = new long[0]; // The open rows of a single column
+	private int window; // The plane's column and the columns searched ahead of it
+	private int words; // The longs in each column
+
+	// The simulation and tick that the safe rows are for
+	private Simulation sim;
+	private long seed;
+	private long time = -1;
+
+	// Searches every column ahead of the plane that is on the grid
+	public PlannerAutopilot() {
+		this(0);
+	}
+
+	// Searches no more than the given number of columns ahead of the plane
+	public PlannerAutopilot(int depth) {
+		if (depth < 0) {
+			throw new IllegalArgumentException("The depth cannot be negative: " + depth);
+		}
+		this.depth = depth;
+	}
+
+	// A planner of its own with the same depth, for another thread
+	public PlannerAutopilot copy() {
+		return new PlannerAutopilot(depth);
+	}
+
+	public int nextMove(Simulation sim) {
+		update(sim);
+		int row = sim.getPlayerRow();
+		int best = 0;
+		int bestOptions = -1;
+		for (int move : MOVES) {
+			int landing = row + move;
+			if (isSafe(0, landing)) {
+				if (move == 0) {
+					return 0;
+				}
+				int options = 0;
+				for (int next = landing - 1; next <= landing + 1; next++) {
+					options += isSafe(1, next) ? 1 : 0;
+				}
+				if (options > bestOptions) {
+					best = move;
+					bestOptions = options;
+				}
+			}
+		}
+		return bestOptions >= 0 ? best : fallback.nextMove(sim);
+	}
+
+	// Brings the safe rows up to date with the cavern of the simulation
+	private void update(Simulation sim) {
+		long now = sim.getTime();
+		if (sim == this.sim && sim.getSeed() == seed) {
+			if (now == time) {
+				return; // Asked again in the same tick
+			} else if (now == time + 1) {
+				time = now;
+				scroll(sim);
+				return;
+			}
+		}
+		this.sim = sim;
+		this.seed = sim.getSeed();
+		this.time = now;
+		search(sim);
+	}
+
+	// Works out the safe rows of every column in the window from scratch
+	private void search(Simulation sim) {
+		var grid = sim.getGrid();
+		int ahead = grid.getWidth() - sim.getPlayerColumn();
+		window = depth == 0 ? ahead : Math.min(depth + 1, ahead);
+		words = grid.getWords();
+		if (safe.length != window * words) {
+			safe = new long[window * words];
+		}
+		if (open.length != words) {
+			open = new long[words];
+		}
+		grid.openRows(sim.getPlayerColumn() + window - 1, safe, slot(window - 1) * words);
+		for (int k = window - 2; k >= 0; k--) {
+			backward(sim, k);
+		}
+	}
+
+	/*
+	 * Takes the column that left the window off the ring and puts the one that
+	 * entered it in its place, then works back towards the plane until the safe
+	 * rows of a column no longer change.
+	 */
+	private void scroll(Simulation sim) {
+		sim.getGrid().openRows(sim.getPlayerColumn() + window - 1, safe, slot(window - 1) * words);
+		for (int k = window - 2; k >= 0; k--) {
+			if (!backward(sim, k)) {
+				break;
+			}
+		}
+	}
+
+	// Works out the safe rows of window column k from those of column k + 1 and returns true if they changed
+	private boolean backward(Simulation sim, int k) {
+		sim.getGrid().openRows(sim.getPlayerColumn() + k, open, 0);
+		int from = slot(k + 1) * words;
+		int to = slot(k) * words;
+		boolean changed = false;
+		for (int w = 0; w < words; w++) {
+			long next = safe[from + w];
+			long up = next >>> 1 | (w + 1 < words ? safe[from + w + 1] << 63 : 0);
+			long down = next << 1 | (w > 0 ? safe[from + w - 1] >>> 63 : 0);
+			long rows = (next | up | down) & open[w];
+			changed |= rows != safe[to + w];
+			safe[to + w] = rows;
+		}
+		return changed;
+	}
+
+	// True if the row of window column k is safe
+	boolean isSafe(int k, int row) {
+		if (row < 0 || row >= sim.getHeight()) {
+			return false;
+		} else if (k >= window) {
+			return true; // Past the window anything on the grid goes
+		}
+		return (safe[slot(k) * words + (row >>> 6)] >>> row & 1) != 0;
+	}
+
+	// The slot in the ring of window column k. The column on screen at x is column time + x of the cave.
+	private int slot(int k) {
+		return (int) Math.floorMod(time + k, (long) window);
+	}
+
+	// The number of columns searched, the plane's included
+	public int getWindow() {
+		return window;
+	}
+
+	public String toString() {
+		return "Planner (" + (depth == 0 ? "every column" : depth + " columns") + " ahead)";
+	}
+}
@@ -1,17 +1,33 @@
 package ie.atu.sw;
 
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
 import javax.swing.SwingUtilities;
 import static java.lang.System.*;
 
 public class Runner {
 	public static void main(String[] args) throws Exception {
-		
+		// The size of the world and its cave rules, e.g. --width 120 --height 60 --lanes 3 --forkChance 0.05
+		var rest = new ArrayList<String>();
+		var world = WorldConfig.from(TrainerConfig.extract(args, WorldConfig.NAMES, rest));
+
+		// The models to fly, e.g. --modelB resources/candidate.eg to A/B a new model against the old one.
+		// They are parsed here rather than on the event dispatch thread.
+		var models = TrainerConfig.extract(rest.toArray(String[]::new), List.of("model", "modelB"), new ArrayList<>());
+		var autopilot = new HotSwapAutopilot(world);
+		autopilot.load(HotSwapAutopilot.A, Paths.get(models.getProperty("model", GameView.MODEL_FILE)));
+		if (models.containsKey("modelB")) {
+			autopilot.load(HotSwapAutopilot.B, Paths.get(models.getProperty("modelB")));
+		}
+
 		/*
 		 * Always run a GUI in a separate thread from the main thread.
 		 */
 		SwingUtilities.invokeAndWait(() -> { //Sounds like the Command Pattern at work!
 			try {
-				new GameWindow();
+				new GameWindow(world, autopilot);
 			} catch (Exception e) {
 				out.println("[ERROR] Yikes...problem starting up " + e.getMessage());
 			}
@@ -0,0 +1,62 @@
+package ie.atu.sw;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+/*
+ * The original random walk cavern generator, driven by a seeded SplitMix64 so
+ * that the same seed always carves the same cave. Each column consumes exactly
+ * one number from the generator, two bits of which decide whether the top and
+ * the bottom of the opening move up or down.
+ */
+public class SeededCavernGenerator implements CavernGenerator {
+	private final int minTop;
+	private final int minBottom;
+	private final int minSpace; // Smaller values will create a cave with smaller spaces
+
+	private SplitMix64 random;
+	private long seed;
+
+	// These two variables are used by the cavern generator.
+	private int prevTop;
+	private int prevBot;
+
+	public SeededCavernGenerator(long seed) {
+		this(seed, Simulation.MIN_TOP, Simulation.MIN_BOTTOM, 4);
+	}
+
+	public SeededCavernGenerator(long seed, int minTop, int minBottom, int minSpace) {
+		this.minTop = minTop;
+		this.minBottom = minBottom;
+		this.minSpace = minSpace;
+		reseed(seed);
+	}
+
+	public void next() {
+		// Flip a coin to determine if we could grow or shrink the cave
+		long bits = random.nextLong();
+		prevTop += (bits & 1) != 0 ? 1 : -1;
+		prevBot += (bits & 2) != 0 ? 1 : -1;
+		prevTop = max(minTop, min(prevTop, prevBot - minSpace));
+		prevBot = min(minBottom, max(prevBot, prevTop + minSpace));
+	}
+
+	public int getTop() {
+		return prevTop;
+	}
+
+	public int getBottom() {
+		return prevBot;
+	}
+
+	public long getSeed() {
+		return seed;
+	}
+
+	public void reseed(long seed) {
+		this.seed = seed;
+		this.random = new SplitMix64(seed);
+		this.prevTop = minTop;
+		this.prevBot = minBottom;
+	}
+}
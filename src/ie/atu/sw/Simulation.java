@@ -0,0 +1,283 @@
+package ie.atu.sw;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/*
+ * The headless game engine. This class owns the cavern, the cavern generator,
+ * the position of the plane and the collision check, but knows nothing about
+ * Swing. GameLoop plays it at a fixed TIMER_INTERVAL per tick for GameView to
+ * render, while evaluation code can step it in a tight loop as fast as the CPU
+ * allows.
+ *
+ * A single tick of the game is: tick() to scroll the cavern one column, any
+ * number of move() calls, and then checkCollision() to see if the plane hit the
+ * wall. The step() and play() methods do all of this for an Autopilot.
+ *
+ * The shape of the cavern comes from a seeded CavernGenerator, so any episode
+ * can be replayed from its seed and the moves that were made (see EpisodeLog).
+ *
+ * Instances are not thread safe. Use one Simulation per thread, each with its
+ * own generator.
+ */
+public class Simulation {
+	// The default dimensions and rules of the game world (see WorldConfig)
+	public static final int MODEL_WIDTH = 30;
+	public static final int MODEL_HEIGHT = 20;
+	public static final int MIN_TOP = 2;
+	public static final int MIN_BOTTOM = 18;
+	public static final int PLAYER_COLUMN = 15;
+	public static final int START_ROW = 11;
+
+	// The number of past moves kept for the features (see getLastMove())
+	public static final int MOVE_HISTORY = 8;
+
+	// The number of milliseconds that a single tick represents in game time
+	public static final int TIMER_INTERVAL = 100;
+
+	// The dimensions of this game world
+	private final int width;
+	private final int height;
+	private final int playerColumn;
+	private final int startRow;
+
+	/*
+	 * The game grid is implemented as a ring buffer of columns, where each
+	 * column is bit-packed into longs with one bit per row.
+	 */
+	private final CavernGrid model;
+
+	private final CavernGenerator generator;
+
+	private long time;
+	private int playerRow;
+	private boolean gameOver;
+
+	// The moves made since the last collision check and an optional recorder
+	private int displacement;
+	private EpisodeLog recorder;
+
+	// The moves of the last MOVE_HISTORY ticks as a ring, and the slot of the next one
+	private final int[] moves = new int[MOVE_HISTORY];
+	private int nextMove;
+
+	// Turns the state into the vector returned by sample()
+	private FeatureExtractor features;
+
+	public Simulation() {
+		this(ThreadLocalRandom.current().nextLong());
+	}
+
+	public Simulation(long seed) {
+		this(new SeededCavernGenerator(seed));
+	}
+
+	// Create a simulation whose cavern is carved using the given generator
+	public Simulation(CavernGenerator generator) {
+		this(new WorldConfig(), generator);
+	}
+
+	/*
+	 * Create a simulation with a grid of the given size. The plane flies in the
+	 * middle column and starts at the same relative height as on the default
+	 * grid. The generator must keep the cavern inside of the given height.
+	 */
+	public Simulation(int width, int height, CavernGenerator generator) {
+		this(new WorldConfig(width, height), generator);
+	}
+
+	// Create a simulation of the given size with the original cavern rules
+	public Simulation(int width, int height, long seed) {
+		this(new WorldConfig(width, height), seed);
+	}
+
+	// Create a simulation of the given world, carving its cave from the seed
+	public Simulation(WorldConfig world, long seed) {
+		this(world, world.newGenerator(seed));
+	}
+
+	// Create a simulation of the given world whose cavern is carved using the given generator
+	public Simulation(WorldConfig world, CavernGenerator generator) {
+		this.width = world.getWidth();
+		this.height = world.getHeight();
+		this.playerColumn = world.getPlayerColumn();
+		this.startRow = world.getStartRow();
+		this.model = new CavernGrid(width, height, generator.getMaxOpenings());
+		this.generator = generator;
+		this.playerRow = startRow;
+		setFeatures(ClassicFeatures.INSTANCE);
+	}
+
+	// Advance the game by one unit of time and scroll the cavern along
+	public void tick() {
+		time++;
+		generateNext();
+	}
+
+	// Move the plane up or down
+	public void move(int step) {
+		playerRow += step;
+		displacement += step;
+	}
+
+	/*
+	 * Checks if the plane has hit the wall of the cavern. Flying off the top or the
+	 * bottom of the grid also counts as a crash. Once the plane has crashed the
+	 * game stays over until reset() is called. This closes the current tick, so
+	 * it is also where the moves made during the tick are recorded.
+	 */
+	public boolean checkCollision() {
+		if (!gameOver) {
+			gameOver = playerRow < 0 || playerRow >= height || isSolid(playerColumn, playerRow);
+			if (recorder != null) {
+				recorder.record(displacement);
+			}
+			moves[nextMove] = displacement;
+			nextMove = (nextMove + 1) % MOVE_HISTORY;
+		}
+		displacement = 0;
+		return gameOver;
+	}
+
+	/*
+	 * Plays a single tick of the game with the given autopilot at the controls.
+	 * Returns true if the plane is still flying afterwards.
+	 */
+	public boolean step(Autopilot pilot) {
+		tick();
+
+		// Validate the action before moving
+		int action = pilot.nextMove(this);
+		if (action >= -1 && action <= 1) {
+			move(action);
+		} else {
+			System.err.println("Warning: Invalid action received: " + action);
+		}
+		return !checkCollision();
+	}
+
+	/*
+	 * Plays the game with the given autopilot until the plane crashes or maxTicks
+	 * units of time have passed. Returns the number of ticks survived.
+	 */
+	public long play(Autopilot pilot, long maxTicks) {
+		while (!gameOver && time < maxTicks) {
+			step(pilot);
+		}
+		return time;
+	}
+
+	/*
+	 * Generate the next layer of the cavern. Let the generator decide whether to
+	 * increase or decrease the cavern, then push a column of wall onto the end of
+	 * the ring buffer in place of the oldest one and carve its openings.
+	 */
+	public void generateNext() {
+		generator.next();
+		model.pushWall();
+		for (int i = 0, n = generator.getOpeningCount(); i < n; i++) {
+			model.carve(generator.getTop(i), generator.getBottom(i));
+		}
+	}
+
+	/*
+	 * Use this method to get a snapshot of the game state as a vector of features,
+	 * (somewhat) ready to be used by a neural net. What goes into the vector, and
+	 * how far ahead of the plane it looks, is up to the FeatureExtractor set with
+	 * setFeatures(). The classic 5 features are used by default.
+	 */
+	public double[] sample() {
+		return sample(new double[features.getFeatureCount()]);
+	}
+
+	// Samples the current game state into the given vector and returns it, so a
+	// caller sampling every tick can reuse the same array.
+	public double[] sample(double[] vector) {
+		return features.extract(this, vector);
+	}
+
+	/*
+	 * Resets the game back to an empty cavern with the plane in the centre
+	 */
+	public void reset() {
+		model.clear(); // Zero out the grid
+		playerRow = startRow; // Centre the plane
+		time = 0; // Reset the clock
+		gameOver = false;
+		displacement = 0;
+		Arrays.fill(moves, 0);
+		nextMove = 0;
+	}
+
+	// Resets the game and starts carving a new cavern from the given seed
+	public void reset(long seed) {
+		generator.reseed(seed);
+		reset();
+	}
+
+	// Records every tick from now on into the given log (or stops if null)
+	public void setRecorder(EpisodeLog recorder) {
+		this.recorder = recorder;
+	}
+
+	// Sets the features produced by sample(). The horizon must fit on the grid ahead of the plane.
+	public void setFeatures(FeatureExtractor features) {
+		if (playerColumn + features.getHorizon() >= width) {
+			throw new IllegalArgumentException("Features " + features.getSpec() + " look past the edge of a grid "
+					+ width + " columns wide");
+		}
+		this.features = features;
+	}
+
+	public FeatureExtractor getFeatures() {
+		return features;
+	}
+
+	// The number of values produced by sample()
+	public int getFeatureCount() {
+		return features.getFeatureCount();
+	}
+
+	// The move made the given number of ticks before the last one (0 is the last move)
+	public int getLastMove(int ticksAgo) {
+		return moves[Math.floorMod(nextMove - 1 - ticksAgo, MOVE_HISTORY)];
+	}
+
+	public long getSeed() {
+		return generator.getSeed();
+	}
+
+	// Returns true if the cell at column x and row y of the grid is a wall
+	public boolean isSolid(int x, int y) {
+		return model.isSolid(x, y);
+	}
+
+	// The grid itself, for code that wants to scan whole columns at a time
+	public CavernGrid getGrid() {
+		return model;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	public int getPlayerColumn() {
+		return playerColumn;
+	}
+
+	public int getPlayerRow() {
+		return playerRow;
+	}
+
+	public long getTime() {
+		return time;
+	}
+
+	public boolean isGameOver() {
+		return gameOver;
+	}
+}
@@ -0,0 +1,119 @@
+package ie.atu.sw;
+
+/*
+ * A batch of simulations that are stepped together, one tick at a time, with
+ * a single network flying every plane. The features of all the planes that are
+ * still flying are gathered into one array each tick and pushed through the
+ * network in one call to CompiledNetwork.computeBatch(), instead of one call
+ * per plane.
+ *
+ * A plane that crashes drops out of the batch, so the batch gets smaller as
+ * the episodes end. Every tick follows the same order as Simulation.step():
+ * scroll the cavern, sample, move and check for a collision, so a batch plays
+ * exactly the same episodes as the same seeds played one at a time.
+ *
+ * Every plane is sampled with the batch's FeatureExtractor, which has to be
+ * the one the network was trained with.
+ *
+ * Instances are not thread safe. Use one batch per thread.
+ */
+public class SimulationBatch {
+	private final Simulation[] sims;
+	private final int[] alive; // The indexes of the planes still flying
+	private final FeatureExtractor features;
+	private final double[] state;
+	private final double[] inputs;
+	private double[] outputs = new double[0];
+
+	public SimulationBatch(int size) {
+		this(size, ClassicFeatures.INSTANCE);
+	}
+
+	public SimulationBatch(int size, FeatureExtractor features) {
+		this(size, features, new WorldConfig());
+	}
+
+	public SimulationBatch(int size, FeatureExtractor features, WorldConfig world) {
+		this.sims = new Simulation[size];
+		for (int i = 0; i < size; i++) {
+			sims[i] = world.newSimulation(0L);
+			sims[i].setFeatures(features);
+		}
+		this.features = features;
+		this.alive = new int[size];
+		this.state = new double[features.getFeatureCount()];
+		this.inputs = new double[size * state.length];
+	}
+
+	/*
+	 * Plays one episode per seed, each in a fresh cavern carved from its seed,
+	 * until every plane has crashed or reached maxTicks. Returns the number of
+	 * ticks each plane survived, in the order of the seeds.
+	 */
+	public long[] play(CompiledNetwork network, long[] seeds, long maxTicks) {
+		if (seeds.length > sims.length) {
+			throw new IllegalArgumentException("Batch of " + sims.length + " cannot play " + seeds.length + " seeds");
+		}
+		if (network.getInputCount() != state.length) {
+			throw new IllegalArgumentException("Network with " + network.getInputCount() + " inputs cannot use "
+					+ features.getSpec() + " features (" + state.length + ")");
+		}
+		int outputCount = network.getOutputCount();
+		if (outputs.length < seeds.length * outputCount) {
+			outputs = new double[seeds.length * outputCount];
+		}
+
+		int count = seeds.length;
+		for (int i = 0; i < count; i++) {
+			sims[i].reset(seeds[i]);
+			alive[i] = i;
+		}
+
+		while (count > 0) {
+			// Scroll every cavern and gather the features of every plane
+			for (int k = 0; k < count; k++) {
+				var sim = sims[alive[k]];
+				sim.tick();
+				System.arraycopy(sim.sample(state), 0, inputs, k * state.length, state.length);
+			}
+
+			network.computeBatch(inputs, outputs, count);
+
+			// Move each plane and keep the ones that are still flying
+			int flying = 0;
+			for (int k = 0; k < count; k++) {
+				var sim = sims[alive[k]];
+				sim.move(NetworkAutopilot.indexToAction(maxIndex(outputs, k * outputCount, outputCount)));
+				if (!sim.checkCollision() && sim.getTime() < maxTicks) {
+					alive[flying++] = alive[k];
+				}
+			}
+			count = flying;
+		}
+
+		var ticks = new long[seeds.length];
+		for (int i = 0; i < seeds.length; i++) {
+			ticks[i] = sims[i].getTime();
+		}
+		return ticks;
+	}
+
+	// The index of the largest of the length values from offset, relative to offset
+	private static int maxIndex(double[] values, int offset, int length) {
+		int max = 0;
+		for (int i = 1; i < length; i++) {
+			if (values[offset + i] > values[offset + max]) {
+				max = i;
+			}
+		}
+		return max;
+	}
+
+	public FeatureExtractor getFeatures() {
+		return features;
+	}
+
+	public int size() {
+		return sims.length;
+	}
+}
@@ -0,0 +1,43 @@
+package ie.atu.sw;
+
+import java.util.random.RandomGenerator;
+
+/*
+ * A small, fast and splittable pseudo-random number generator (Steele, Lea and
+ * Flood's SplitMix64, the same algorithm behind java.util.SplittableRandom).
+ * The state is a single counter that advances by a fixed odd constant, so the
+ * n-th number of any sequence can be reached in constant time with jump().
+ *
+ * Instances are not thread safe. Use split() to hand an independent generator
+ * to another thread.
+ */
+public class SplitMix64 implements RandomGenerator {
+	private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+	private long state;
+
+	public SplitMix64(long seed) {
+		this.state = seed;
+	}
+
+	public long nextLong() {
+		return mix(state += GOLDEN_GAMMA);
+	}
+
+	// Skips over the next n numbers of the sequence without generating them
+	public void jump(long n) {
+		state += n * GOLDEN_GAMMA;
+	}
+
+	// Returns a new generator that is statistically independent of this one
+	public SplitMix64 split() {
+		return new SplitMix64(nextLong());
+	}
+
+	// The 64-bit finaliser from MurmurHash3, as tuned by Stafford (variant 13)
+	static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+}
@@ -1,12 +1,12 @@
 package ie.atu.sw;
 
+import java.awt.GraphicsConfiguration;
 import java.awt.image.BufferedImage;
 
-import javax.imageio.ImageIO;
-
 public class Sprite {
 	private String name; 				//The name of this sprite
 	private BufferedImage[][] images; 	//The set of image frames to animate
+	private String[][] files; 			//The file of each frame, which SpriteAtlas knows it by
  	private int index = 0; 				//Initial starting direction that the sprite is facing
  	private int frame = 0; 				//Initial starting index of the image 
 	
@@ -14,12 +14,14 @@ public class Sprite {
 		this.name = name;
 		this.index = 0; //Initialise the starting index to zero
 		this.images = new BufferedImage[files.length / frames][frames]; //Initialise the image frames
+		this.files = new String[files.length / frames][frames];
 		
 		//Read the varargs list of images into a 2D array
 		var row = 0;
 		var col = 0;
 		for (int i = 0; i < files.length; i++){
-			images[row][col] = ImageIO.read(new java.io.File(files[i])); //Read in each image as a BufferedImage
+			images[row][col] = SpriteAtlas.load(files[i]); //Read in each image once, shared with other sprites
+			this.files[row][col] = files[i];
 
 			col++;
 			if (col % frames == 0){
@@ -38,6 +40,20 @@ public class Sprite {
 		return images[index][frame]; 
 	}
 	
+	/*
+	 * Returns the frame for the given tick of game time, scaled for cells of the
+	 * given size by the SpriteAtlas and compatible with the given configuration.
+	 * The animation moves on one frame per tick however often the sprite is painted.
+	 */
+	public BufferedImage getFrame(long tick, int cell, GraphicsConfiguration config){
+		var row = files[index];
+		return SpriteAtlas.get(row[(int) Math.floorMod(tick, (long) row.length)], cell, config);
+	}
+
+	public int getFrameCount(){
+		return files[index].length;
+	}
+	
 	public int getImageIndex(){
 		return this.index;
 	}
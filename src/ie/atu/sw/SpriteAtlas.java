@@ -0,0 +1,97 @@
+package ie.atu.sw;
+
+import java.awt.GraphicsConfiguration;
+import java.awt.GraphicsEnvironment;
+import java.awt.RenderingHints;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.imageio.ImageIO;
+
+/*
+ * A cache of the sprite images shared by every GameView. Each PNG is decoded
+ * once, and for each size of cell it is drawn at, a copy is scaled once and
+ * converted into an image compatible with the screen the view is on. Java2D
+ * keeps a compatible image in video memory as a managed image, so drawing a
+ * sprite is then a plain blit, instead of scaling and converting the pixel
+ * format of the PNG on every paint. The copies are kept per graphics
+ * configuration, so a window dragged onto another screen gets copies made for
+ * that screen instead of ones in the pixel format of the first.
+ *
+ * The images are drawn for cells of SPRITE_CELL pixels and shrink with the
+ * cells when the world is too big for the screen, but never below MIN_SIZE.
+ * A view with another cell size simply gets copies of its own, and views of
+ * the same size share theirs.
+ */
+public final class SpriteAtlas {
+	public static final int SPRITE_CELL = 30; // The size of cell the images were drawn for
+	private static final int MIN_SIZE = 8;
+
+	// A PNG scaled for cells of the given size on the given screen (null for the default one)
+	private record Key(String file, int cell, GraphicsConfiguration config) {
+	}
+
+	private static final Map<String, BufferedImage> originals = new ConcurrentHashMap<>();
+	private static final Map<Key, BufferedImage> scaled = new ConcurrentHashMap<>();
+
+	private SpriteAtlas() {
+	}
+
+	// The PNG as it was read, decoded on first use
+	public static BufferedImage load(String file) throws IOException {
+		try {
+			return originals.computeIfAbsent(file, f -> {
+				try {
+					var image = ImageIO.read(new File(f));
+					if (image == null) {
+						throw new IOException("Not an image: " + f);
+					}
+					return image;
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	/*
+	 * The PNG scaled for cells of the given size, in the pixel format of the given
+	 * configuration, which is that of the component it is drawn on. A null
+	 * configuration, as a component has before it is shown, means the default
+	 * screen.
+	 */
+	public static BufferedImage get(String file, int cell, GraphicsConfiguration config) {
+		return scaled.computeIfAbsent(new Key(file, cell, config), key -> {
+			try {
+				return scale(load(key.file()), key.cell(), key.config());
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		});
+	}
+
+	// Draws a scaled copy of the image into an image compatible with the configuration
+	private static BufferedImage scale(BufferedImage image, int cell, GraphicsConfiguration config) {
+		int width = Math.max(MIN_SIZE, image.getWidth() * cell / SPRITE_CELL);
+		int height = Math.max(MIN_SIZE, image.getHeight() * cell / SPRITE_CELL);
+		if (config == null && !GraphicsEnvironment.isHeadless()) {
+			config = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice()
+					.getDefaultConfiguration();
+		}
+		var result = config == null ? new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB)
+				: config.createCompatibleImage(width, height, Transparency.TRANSLUCENT);
+		var g = result.createGraphics();
+		g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+		g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+		g.drawImage(image, 0, 0, width, height, null);
+		g.dispose();
+		return result;
+	}
+}
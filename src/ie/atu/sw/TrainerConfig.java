@@ -0,0 +1,238 @@
+package ie.atu.sw;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+
+/*
+ * The settings for a training run of NeuralNetworkTrainer. The defaults are the
+ * hand-picked settings the original model was trained with. Settings can be
+ * read from a properties file with --config and overridden on the command
+ * line, e.g.
+ *
+ *   --algorithm rprop --threads 0 --maxEpochs 5000 --logEvery 500
+ *
+ * A bare argument is taken as the data file, for compatibility with the
+ * original usage. The data is split into training, validation and test sets
+ * by validationPercent and testPercent, or with --folds k the settings are
+ * cross-validated over k folds and no model is saved. The sgd algorithm
+ * trains in shuffled mini-batches streamed from the data file (see
+ * MiniBatchTrainer) and has settings of its own.
+ *
+ * The genetic algorithm needs no data at all. It evolves a population of
+ * networks by how long they survive in the cavern (see GeneticTrainer), with
+ * maxEpochs as the number of generations, e.g.
+ *
+ *   --algorithm genetic --maxEpochs 100 --logEvery 10 --population 50
+ *
+ * The features the network takes are chosen with --features (see
+ * FeatureExtractor), e.g. --features lookahead:8:2. They must match the
+ * header of the data file, and are saved with the model.
+ *
+ * With --preprocess dedupe, weight or resample the copies in the training
+ * split are collapsed into weighted rows first, and the classes optionally
+ * evened out (see DatasetPreprocessor).
+ */
+public class TrainerConfig implements Cloneable {
+	// The training algorithms that can be chosen with --algorithm
+	public enum Algorithm {
+		BACKPROP, RPROP, QUICKPROP, SCG, SGD, GENETIC
+	}
+
+	String dataFile = "resources/game_data.csv";
+	String modelFile = "resources/trainingModel.eg";
+	Algorithm algorithm = Algorithm.BACKPROP;
+	String hidden = "34,12"; // The sizes of the hidden layers
+	String activation = "tanh"; // The activation of the hidden layers, tanh or relu
+	String features = "classic"; // The spec of the FeatureExtractor the network takes
+	int threads = 0; // 0 lets Encog use every core
+	double learningRate = 0.001;
+	double momentum = 0.9;
+	int maxEpochs = 30000;
+	double targetError = 0.01;
+	int logEvery = 1000; // Print the error every this many epochs
+	int validateEvery = 1; // Check the validation error every this many epochs, to pick the best one
+	int validationPercent = 10; // Share of the data held out to pick the best epoch
+	int testPercent = 20; // Share of the data held out to test the final model
+	int folds = 0; // Cross-validate over this many folds instead of training a model
+	long seed = 42; // Seeds the data split and the shuffles
+	DatasetPreprocessor.Mode preprocess = DatasetPreprocessor.Mode.NONE; // What is done to the training rows first
+
+	// Settings that only apply to mini-batch SGD
+	int batchSize = 64;
+	String updateRule = "adam"; // adam, momentum, rmsprop or adagrad
+	MiniBatchTrainer.Schedule schedule = MiniBatchTrainer.Schedule.CONSTANT;
+	double decay = 0.5; // The factor applied by the step and exponential schedules
+	int stepEvery = 10; // Epochs between the drops of the step schedule
+	int blockSize = 1024; // Rows read from the data file in one go
+	int shuffleBlocks = 16; // Blocks shuffled together in memory
+	int patience = 10; // Epochs without improvement before stopping
+
+	// Settings that only apply to the genetic algorithm
+	int population = 100; // Networks in each generation
+	int episodes = 32; // Caverns each network flies to be scored
+	long maxTicks = 5_000; // The longest a single flight may last
+
+	// Builds a config from the command line, reading any --config file first
+	public static TrainerConfig parse(String[] args) throws IOException {
+		var config = new TrainerConfig();
+		var cli = new Properties();
+		for (int i = 0; i < args.length; i++) {
+			if (!args[i].startsWith("--")) {
+				cli.setProperty("dataFile", args[i]);
+				continue;
+			}
+			var option = args[i].substring(2);
+			int equals = option.indexOf('=');
+			if (equals >= 0) {
+				cli.setProperty(option.substring(0, equals), option.substring(equals + 1));
+			} else if (i + 1 < args.length) {
+				cli.setProperty(option, args[++i]);
+			} else {
+				throw new IllegalArgumentException("Missing value for --" + option);
+			}
+		}
+
+		if (cli.containsKey("config")) {
+			var file = new Properties();
+			try (Reader in = Files.newBufferedReader(Paths.get(cli.getProperty("config")))) {
+				file.load(in);
+			}
+			config.apply(file);
+		}
+		config.apply(cli);
+		config.validate();
+		return config;
+	}
+
+	// Rejects settings that cannot work together, before any training starts
+	void validate() {
+		if (logEvery < 1 || validateEvery < 1 || stepEvery < 1) {
+			throw new IllegalArgumentException("logEvery, validateEvery and stepEvery must be at least 1 epoch: "
+					+ logEvery + ", " + validateEvery + ", " + stepEvery);
+		}
+		if (validationPercent < 0 || testPercent < 0 || validationPercent + testPercent >= 100) {
+			throw new IllegalArgumentException("validationPercent and testPercent cannot be negative and must leave"
+					+ " some data to train on: " + validationPercent + "% + " + testPercent + "%");
+		}
+	}
+
+	/*
+	 * Moves the options with the given names out of the command line, so that a
+	 * tool can have settings of its own next to the trainer's. The options are
+	 * returned and everything else is added to rest, ready for parse().
+	 */
+	static Properties extract(String[] args, List<String> names, List<String> rest) {
+		var options = new Properties();
+		for (int i = 0; i < args.length; i++) {
+			var option = args[i].startsWith("--") ? args[i].substring(2) : "";
+			int equals = option.indexOf('=');
+			var name = equals >= 0 ? option.substring(0, equals) : option;
+			if (!names.contains(name)) {
+				rest.add(args[i]);
+			} else if (equals >= 0) {
+				options.setProperty(name, option.substring(equals + 1));
+			} else if (i + 1 < args.length) {
+				options.setProperty(name, args[++i]);
+			} else {
+				throw new IllegalArgumentException("Missing value for --" + name);
+			}
+		}
+		return options;
+	}
+
+	// Copies every recognised setting out of the properties
+	void apply(Properties properties) {
+		for (var key : properties.stringPropertyNames()) {
+			var value = properties.getProperty(key).trim();
+			switch (key) {
+			case "config" -> {
+			}
+			case "dataFile" -> dataFile = value;
+			case "modelFile" -> modelFile = value;
+			case "algorithm" -> algorithm = Algorithm.valueOf(value.toUpperCase(Locale.ROOT));
+			case "hidden" -> hidden = value;
+			case "activation" -> {
+				activation = value.toLowerCase(Locale.ROOT);
+				if (!activation.equals("tanh") && !activation.equals("relu")) {
+					throw new IllegalArgumentException("Unknown activation: " + value);
+				}
+			}
+			case "features" -> features = FeatureExtractor.forName(value).getSpec();
+			case "threads" -> threads = Integer.parseInt(value);
+			case "learningRate" -> learningRate = Double.parseDouble(value);
+			case "momentum" -> momentum = Double.parseDouble(value);
+			case "maxEpochs" -> maxEpochs = Integer.parseInt(value);
+			case "targetError" -> targetError = Double.parseDouble(value);
+			case "logEvery" -> logEvery = Integer.parseInt(value);
+			case "validateEvery" -> validateEvery = Integer.parseInt(value);
+			case "batchSize" -> batchSize = Integer.parseInt(value);
+			case "updateRule" -> updateRule = value.toLowerCase(Locale.ROOT);
+			case "schedule" -> schedule = MiniBatchTrainer.Schedule.valueOf(value.toUpperCase(Locale.ROOT));
+			case "decay" -> decay = Double.parseDouble(value);
+			case "stepEvery" -> stepEvery = Integer.parseInt(value);
+			case "blockSize" -> blockSize = Integer.parseInt(value);
+			case "shuffleBlocks" -> shuffleBlocks = Integer.parseInt(value);
+			case "validationPercent" -> validationPercent = Integer.parseInt(value);
+			case "patience" -> patience = Integer.parseInt(value);
+			case "seed" -> seed = Long.parseLong(value);
+			case "preprocess" -> preprocess = DatasetPreprocessor.Mode.valueOf(value.toUpperCase(Locale.ROOT));
+			case "testPercent" -> testPercent = Integer.parseInt(value);
+			case "folds" -> folds = Integer.parseInt(value);
+			case "population" -> population = Integer.parseInt(value);
+			case "episodes" -> episodes = Integer.parseInt(value);
+			case "maxTicks" -> maxTicks = Long.parseLong(value);
+			default -> throw new IllegalArgumentException("Unknown training setting: " + key);
+			}
+		}
+	}
+
+	// The sizes of the hidden layers as numbers
+	int[] hiddenLayers() {
+		if (hidden.isBlank()) {
+			return new int[0];
+		}
+		var parts = hidden.split(",");
+		var sizes = new int[parts.length];
+		for (int i = 0; i < parts.length; i++) {
+			sizes[i] = Integer.parseInt(parts[i].trim());
+		}
+		return sizes;
+	}
+
+	// A copy that can be changed without affecting this config
+	public TrainerConfig copy() {
+		try {
+			return (TrainerConfig) clone();
+		} catch (CloneNotSupportedException e) {
+			throw new AssertionError(e);
+		}
+	}
+
+	public String toString() {
+		if (algorithm == Algorithm.GENETIC) {
+			return "Algorithm: GENETIC, Hidden: " + hidden + " " + activation + ", Features: " + features
+					+ ", Threads: " + (threads == 0 ? "all" : threads) + ", Population: " + population
+					+ ", Generations: " + maxEpochs + ", Episodes: " + episodes + ", Max ticks: " + maxTicks;
+		}
+		if (algorithm == Algorithm.SGD) {
+			return "Algorithm: SGD (" + updateRule + "), Batch size: " + batchSize + ", Learning rate: " + learningRate
+					+ " (" + schedule + "), Max epochs: " + maxEpochs + ", Validation: " + validationPercent
+					+ "%, Patience: " + patience + preprocessing();
+		}
+		return "Algorithm: " + algorithm + ", Hidden: " + hidden + " " + activation + ", Features: " + features
+				+ ", Threads: " + (threads == 0 ? "all" : threads) + ", Learning rate: " + learningRate
+				+ ", Momentum: " + momentum + ", Max epochs: " + maxEpochs + ", Target error: " + targetError
+				+ preprocessing();
+	}
+
+	// The preprocessing for toString(), if there is any
+	private String preprocessing() {
+		return preprocess == DatasetPreprocessor.Mode.NONE ? ""
+				: ", Preprocess: " + preprocess.name().toLowerCase(Locale.ROOT);
+	}
+}
@@ -0,0 +1,288 @@
+package ie.atu.sw;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Appends labelled training samples to a CSV file without holding up the
+ * caller. Samples are handed to a bounded queue and a background thread
+ * drains it in batches, formats each batch in memory and writes it to a single
+ * file channel that stays open. A batch is written as soon as it holds
+ * batchSize samples or its oldest sample is flushMillis old.
+ *
+ * There are two policies for a full queue. submit() never blocks: when the
+ * writer falls so far behind that the queue is full, the sample is dropped
+ * and counted, and submit() returns false. That is the policy for the game,
+ * which keeps its frame rate while recording at any rate and shows the count
+ * on its HUD. put() waits for room instead, for producers such as DataFarm
+ * that would sooner slow down than lose samples.
+ *
+ * Producers count themselves in and out around each sample, so close() can
+ * wait until no sample is on its way into the queue, and then writes out any
+ * sample that got in behind the one that stops the background thread.
+ * Nothing that was accepted is lost, and nothing that was not is uncounted.
+ *
+ * If the file cannot be written the background thread stops and keeps the
+ * error. put() and close() throw it, and submit() drops every sample from
+ * then on. A producer waiting in put() looks every WAIT_MILLIS whether the
+ * background thread is still there, so it never waits on a dead one.
+ */
+public class TrainingDataWriter implements AutoCloseable {
+	private static final int DEFAULT_CAPACITY = 8192;
+	private static final int DEFAULT_BATCH_SIZE = 512;
+	private static final long DEFAULT_FLUSH_MILLIS = 1000;
+	private static final long WAIT_MILLIS = 100;
+
+	// A single labelled sample waiting to be written
+	private record Sample(double[] features, int action) {
+	}
+
+	// Tells the writer thread to finish up
+	private static final Sample POISON = new Sample(new double[0], 0);
+
+	private final Path path;
+	private final FileChannel channel;
+	private final BlockingQueue<Sample> queue;
+	private final int batchSize;
+	private final long flushNanos;
+	private final Thread writer;
+
+	private final AtomicLong written = new AtomicLong();
+	private final AtomicLong dropped = new AtomicLong();
+	private final AtomicInteger producers = new AtomicInteger(); // Samples on their way into the queue
+	private volatile boolean closed;
+	private volatile IOException failure; // Why the background thread stopped, if it could not write
+
+	public TrainingDataWriter(Path path, String... headers) throws IOException {
+		this(path, DEFAULT_CAPACITY, DEFAULT_BATCH_SIZE, DEFAULT_FLUSH_MILLIS, headers);
+	}
+
+	/*
+	 * Opens the file for appending, creating it and writing the header line if it
+	 * does not exist yet, and starts the background writer. An existing file with
+	 * a different header holds other features, so it is not appended to.
+	 */
+	public TrainingDataWriter(Path path, int capacity, int batchSize, long flushMillis, String... headers)
+			throws IOException {
+		this.path = path;
+		this.queue = new ArrayBlockingQueue<>(capacity);
+		this.batchSize = batchSize;
+		this.flushNanos = TimeUnit.MILLISECONDS.toNanos(flushMillis);
+
+		// Create directories for the file if they do not exist
+		if (path.getParent() != null) {
+			Files.createDirectories(path.getParent());
+		}
+		boolean isNew = !Files.exists(path) || Files.size(path) == 0;
+		if (!isNew && headers.length > 0) {
+			String existing;
+			try (var in = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+				existing = in.readLine();
+			}
+			if (!String.join(",", headers).equals(existing)) {
+				throw new IOException("The header of " + path + " does not match " + String.join(",", headers));
+			}
+		}
+		this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.APPEND);
+		if (isNew && headers.length > 0) {
+			write(String.join(",", headers) + "\n");
+		}
+
+		this.writer = new Thread(this::run, "training-data-writer");
+		this.writer.setDaemon(true);
+		this.writer.start();
+	}
+
+	/*
+	 * Queues a sample to be written. The writer takes ownership of the features
+	 * array, so it must not be changed afterwards. Returns false if the sample
+	 * was dropped because the queue is full or the writer is closed.
+	 */
+	public boolean submit(double[] features, int action) {
+		producers.incrementAndGet();
+		try {
+			if (!closed && failure == null && queue.offer(new Sample(features, action))) {
+				return true;
+			}
+		} finally {
+			producers.decrementAndGet();
+		}
+		dropped.incrementAndGet();
+		return false;
+	}
+
+	/*
+	 * Queues a sample to be written, waiting for room in the queue rather than
+	 * dropping it, for producers such as DataFarm that would sooner slow down
+	 * than lose samples. The writer takes ownership of the features array.
+	 * Throws the error that stopped the writer if it could not write the file.
+	 */
+	public void put(double[] features, int action) throws InterruptedException {
+		var sample = new Sample(features, action);
+		producers.incrementAndGet();
+		try {
+			if (closed) {
+				throw new IllegalStateException("The writer for " + path + " is closed");
+			}
+			checkFailure();
+			while (!queue.offer(sample, WAIT_MILLIS, TimeUnit.MILLISECONDS)) {
+				if (!writer.isAlive()) {
+					// Closed or failed while the queue was full, so the sample will never be taken
+					dropped.incrementAndGet();
+					checkFailure();
+					throw new IllegalStateException("The writer for " + path + " was closed");
+				}
+			}
+		} finally {
+			producers.decrementAndGet();
+		}
+	}
+
+	// Throws the error that stopped the background thread, if there was one
+	private void checkFailure() {
+		var e = failure;
+		if (e != null) {
+			throw new UncheckedIOException("Error writing to " + path, e);
+		}
+	}
+
+	// The header of a data file: the names of the features and then the action
+	public static String[] headers(FeatureExtractor features) {
+		var names = features.getFeatureNames();
+		var headers = Arrays.copyOf(names, names.length + 1);
+		headers[names.length] = "Action";
+		return headers;
+	}
+
+	// The body of the background thread
+	private void run() {
+		List<Sample> batch = new ArrayList<>(batchSize);
+		var text = new StringBuilder(batchSize * 64);
+		boolean done = false;
+		try {
+			while (!done) {
+				// Wait for the first sample of a batch, then give it flushMillis to fill up
+				batch.add(queue.take());
+				long deadline = System.nanoTime() + flushNanos;
+				while (batch.size() < batchSize) {
+					if (queue.drainTo(batch, batchSize - batch.size()) > 0) {
+						continue;
+					}
+					long wait = deadline - System.nanoTime();
+					if (wait <= 0 || closed) {
+						break;
+					}
+					var next = queue.poll(wait, TimeUnit.NANOSECONDS);
+					if (next == null) {
+						break;
+					}
+					batch.add(next);
+				}
+
+				// Format the whole batch and write it out in one go
+				done = batch.remove(POISON);
+				writeBatch(batch, text);
+				batch.clear();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (IOException e) {
+			System.err.println("Error writing to game data file: " + e.getMessage());
+			failure = e;
+		}
+	}
+
+	// Formats the samples and writes them out in one go
+	private void writeBatch(List<Sample> batch, StringBuilder text) throws IOException {
+		text.setLength(0);
+		for (var sample : batch) {
+			for (double value : sample.features()) {
+				text.append(value).append(',');
+			}
+			text.append(sample.action()).append('\n');
+		}
+		if (!text.isEmpty()) {
+			write(text);
+			written.addAndGet(batch.size());
+		}
+	}
+
+	private void write(CharSequence text) throws IOException {
+		var buffer = StandardCharsets.UTF_8.encode(text.toString());
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+
+	/*
+	 * Writes out everything that has been queued so far, stops the background
+	 * thread and closes the file. Samples submitted afterwards are dropped.
+	 * Throws the error that stopped the writer if it could not write the file.
+	 */
+	public synchronized void close() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		List<Sample> rest = new ArrayList<>();
+		try {
+			// A writer that has stopped will never take the poison from a full queue
+			while (writer.isAlive() && !queue.offer(POISON, WAIT_MILLIS, TimeUnit.MILLISECONDS)) {
+			}
+			writer.join();
+
+			// Once no producer is between its check of closed and the queue, nothing more can get in
+			while (producers.get() > 0) {
+				Thread.sleep(1);
+			}
+			queue.drainTo(rest);
+			rest.remove(POISON);
+			if (failure == null) {
+				writeBatch(rest, new StringBuilder(rest.size() * 64));
+			} else {
+				dropped.addAndGet(rest.size());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (IOException e) {
+			System.err.println("Error writing to game data file: " + e.getMessage());
+			failure = e;
+			dropped.addAndGet(rest.size());
+		}
+		try {
+			channel.close();
+		} catch (IOException e) {
+			System.err.println("Error closing game data file: " + e.getMessage());
+		}
+		if (dropped.get() > 0) {
+			System.err.println("Warning: " + dropped.get() + " samples were dropped while writing to " + path);
+		}
+		checkFailure();
+	}
+
+	public long getWritten() {
+		return written.get();
+	}
+
+	public long getDropped() {
+		return dropped.get();
+	}
+
+	public int getQueueDepth() {
+		return queue.size();
+	}
+}
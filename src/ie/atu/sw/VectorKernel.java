@@ -0,0 +1,85 @@
+package ie.atu.sw;
+
+import static jdk.incubator.vector.VectorOperators.GE;
+import static jdk.incubator.vector.VectorOperators.LE;
+import static jdk.incubator.vector.VectorOperators.TANH;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorSpecies;
+
+/*
+ * The SIMD inner loop of CompiledNetwork.computeBatch(), written with the
+ * incubating Vector API. The layers of a network like the autopilot's are only
+ * a handful of neurons wide, far too narrow to fill the lanes of a vector with
+ * the inputs of one row, so the vectors run across the batch instead: a batch
+ * is laid out one feature at a time, with the values of that feature for every
+ * row next to each other, and each weight is broadcast and multiplied with the
+ * values of as many rows as there are lanes at once.
+ *
+ * The sums are added up in the same order as the scalar code, with a separate
+ * multiply and add rather than a fused one, so the values going into the
+ * activations are exactly the same. Only tanh can differ, in the last bit or
+ * so, because the Vector API's TANH is allowed to be a little less exact than
+ * Math.tanh(). The fast approximation is done with the same arithmetic as
+ * CompiledNetwork.fastTanh() and matches it exactly.
+ *
+ * This class links against jdk.incubator.vector, which is only there when the
+ * JVM is started with --add-modules jdk.incubator.vector. It must not be
+ * touched unless CompiledNetwork.VECTOR_API is true.
+ */
+final class VectorKernel {
+	private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+	private VectorKernel() {
+	}
+
+	// The number of rows in each vector
+	static int lanes() {
+		return SPECIES.length();
+	}
+
+	// Rounds a number of rows up to a whole number of vectors
+	static int stride(int rows) {
+		return Math.max(1, (rows + lanes() - 1) / lanes()) * lanes();
+	}
+
+	/*
+	 * Feeds a batch of stride rows from one layer into the next. Feature i of row
+	 * r is at in[i * stride + r], and output o goes to out[o * stride + r]. The
+	 * weights of the layer start at w in the row-major layout of CompiledNetwork,
+	 * and bias is the product of the bias weight and the bias neuron, added to
+	 * each output last as in the scalar code.
+	 */
+	static void layer(double[] weights, int w, int inputs, int outputs, boolean bias, double biasValue,
+			boolean tanh, boolean fastTanh, boolean relu, double threshold, double[] in, double[] out, int stride) {
+		int columns = inputs + (bias ? 1 : 0);
+		int lanes = SPECIES.length();
+		for (int r = 0; r < stride; r += lanes) {
+			for (int o = 0, row = w; o < outputs; o++, row += columns) {
+				var sum = DoubleVector.zero(SPECIES);
+				for (int i = 0; i < inputs; i++) {
+					sum = sum.add(DoubleVector.fromArray(SPECIES, in, i * stride + r).mul(weights[row + i]));
+				}
+				if (bias) {
+					sum = sum.add(weights[row + inputs] * biasValue);
+				}
+
+				if (tanh) {
+					sum = fastTanh ? fastTanh(sum) : sum.lanewise(TANH);
+				} else if (relu) {
+					sum = sum.max(threshold);
+				}
+				sum.intoArray(out, o * stride + r);
+			}
+		}
+	}
+
+	// CompiledNetwork.fastTanh() on every lane
+	private static DoubleVector fastTanh(DoubleVector x) {
+		var x2 = x.mul(x);
+		var numerator = x.mul(x2.add(378).mul(x2).add(17325).mul(x2).add(135135));
+		var denominator = x2.mul(28).add(3150).mul(x2).add(62370).mul(x2).add(135135);
+		var y = numerator.div(denominator).max(-1).min(1);
+		return y.blend(1, x.compare(GE, 4.97)).blend(-1, x.compare(LE, -4.97));
+	}
+}
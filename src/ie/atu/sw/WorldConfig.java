@@ -0,0 +1,131 @@
+package ie.atu.sw;
+
+import java.util.List;
+import java.util.Properties;
+
+/*
+ * The size of the game world and the rules its caves are carved by. The
+ * defaults are the original 30x20 game with a single lane, so a simulation
+ * built from the default config plays exactly like the original. Any tool that
+ * flies the plane can take these settings on its command line, e.g.
+ *
+ *   --width 1000 --height 500 --minSpace 6 --lanes 4 --forkChance 0.05
+ *
+ * which is a world far bigger than the screen, whose cave forks into as many as
+ * four lanes. The bounds of the cave are given as margins, so they stay
+ * sensible whatever the height.
+ */
+public class WorldConfig {
+	// The names of the settings, for TrainerConfig.extract()
+	public static final List<String> NAMES = List.of("width", "height", "playerColumn", "topMargin", "bottomMargin",
+			"minSpace", "lanes", "forkChance");
+
+	int width = Simulation.MODEL_WIDTH;
+	int height = Simulation.MODEL_HEIGHT;
+	int playerColumn = -1; // -1 for the middle column
+	int topMargin = Simulation.MIN_TOP; // Rows above the cave that are always wall
+	int bottomMargin = Simulation.MODEL_HEIGHT - Simulation.MIN_BOTTOM; // Rows below the cave that are always wall
+	int minSpace = 4; // Smaller values will create a cave with smaller spaces
+	int lanes = 1; // The most lanes the cave can fork into
+	double forkChance = 0; // The chance that a lane forks in any column
+
+	// The original 30x20 world
+	public WorldConfig() {
+	}
+
+	// A world of the given size with the original rules
+	public WorldConfig(int width, int height) {
+		this.width = width;
+		this.height = height;
+		validate();
+	}
+
+	// Builds a config from settings, e.g. those taken out of a command line with TrainerConfig.extract()
+	public static WorldConfig from(Properties properties) {
+		var config = new WorldConfig();
+		for (var key : properties.stringPropertyNames()) {
+			var value = properties.getProperty(key).trim();
+			switch (key) {
+			case "width" -> config.width = Integer.parseInt(value);
+			case "height" -> config.height = Integer.parseInt(value);
+			case "playerColumn" -> config.playerColumn = Integer.parseInt(value);
+			case "topMargin" -> config.topMargin = Integer.parseInt(value);
+			case "bottomMargin" -> config.bottomMargin = Integer.parseInt(value);
+			case "minSpace" -> config.minSpace = Integer.parseInt(value);
+			case "lanes" -> config.lanes = Integer.parseInt(value);
+			case "forkChance" -> config.forkChance = Double.parseDouble(value);
+			default -> throw new IllegalArgumentException("Unknown world setting: " + key);
+			}
+		}
+		config.validate();
+		return config;
+	}
+
+	/*
+	 * Checks that a cave can be carved in this world and that the plane can see
+	 * the columns the default features look at ahead of it.
+	 */
+	void validate() {
+		int ahead = ClassicFeatures.INSTANCE.getHorizon();
+		if (getPlayerColumn() < 0 || getPlayerColumn() + ahead >= width) {
+			throw new IllegalArgumentException("The plane must fly inside a world " + width
+					+ " columns wide with at least " + ahead + " columns ahead of it");
+		}
+		if (minSpace < 1 || topMargin < 0 || bottomMargin < 0 || getMinBottom() - getMinTop() < minSpace) {
+			throw new IllegalArgumentException("No room for a cave of " + minSpace + " rows between the margins of "
+					+ topMargin + " and " + bottomMargin + " in a world " + height + " rows high");
+		}
+		if (lanes < 1 || forkChance < 0 || forkChance > 1) {
+			throw new IllegalArgumentException("Lanes must be at least 1 and the fork chance between 0 and 1");
+		}
+	}
+
+	// A new generator for the caves of this world
+	public CavernGenerator newGenerator(long seed) {
+		if (lanes == 1) {
+			return new SeededCavernGenerator(seed, getMinTop(), getMinBottom(), minSpace);
+		}
+		return new LaneCavernGenerator(seed, getMinTop(), getMinBottom(), minSpace, lanes, forkChance);
+	}
+
+	// A new simulation of this world carving its cave from the given seed
+	public Simulation newSimulation(long seed) {
+		return new Simulation(this, newGenerator(seed));
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	public int getPlayerColumn() {
+		return playerColumn < 0 ? width / 2 : playerColumn;
+	}
+
+	// The row the plane starts in, at the same relative height as in the original game
+	public int getStartRow() {
+		return (int) ((long) height * Simulation.START_ROW / Simulation.MODEL_HEIGHT);
+	}
+
+	// The first row the cave may open
+	public int getMinTop() {
+		return topMargin;
+	}
+
+	// The row below the lowest row the cave may open
+	public int getMinBottom() {
+		return height - bottomMargin;
+	}
+
+	public int getLanes() {
+		return lanes;
+	}
+
+	public String toString() {
+		return "World: " + width + "x" + height + ", Cave: " + minSpace + "+ rows"
+				+ (lanes > 1 ? " in up to " + lanes + " lanes (fork chance " + forkChance + ")" : "");
+	}
+}
@@ -7,4 +7,8 @@
 module G00385942 {
 	requires encog.core;
 	requires java.desktop;
+	requires java.management;
+	requires jdk.management;
+	requires jdk.jfr;
+	requires static jdk.incubator.vector;
 }
\ No newline at end of file
@@ -0,0 +1,87 @@
+package ie.atu.sw;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.encog.ml.data.basic.BasicMLData;
+import org.encog.ml.data.basic.BasicMLDataPair;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class BinaryDataSetTest {
+	@Test
+	void roundTripsCsv(@TempDir Path dir) throws IOException {
+		var csv = dir.resolve("game.csv");
+		var text = new StringBuilder("a,b,c,Action\n");
+		var random = new SplitMix64(4);
+		int rows = 1000;
+		var values = new float[rows][3];
+		var actions = new int[rows];
+		for (int r = 0; r < rows; r++) {
+			for (int f = 0; f < 3; f++) {
+				values[r][f] = (float) random.nextDouble(-1, 1);
+				text.append(values[r][f]).append(',');
+			}
+			actions[r] = random.nextInt(3) - 1;
+			text.append(actions[r]).append(r % 100 == 0 ? "\n\n" : "\n"); // Blank lines are skipped
+		}
+		Files.writeString(csv, text);
+
+		var bin = dir.resolve("game.bin");
+		BinaryDataSet.convert(csv, bin);
+		var data = BinaryDataSet.open(bin);
+		assertEquals(rows, data.getRecordCount());
+		assertEquals(3, data.getInputSize());
+		assertEquals(3, data.getIdealSize());
+
+		var pair = new BasicMLDataPair(new BasicMLData(3), new BasicMLData(3));
+		for (int r = 0; r < rows; r++) {
+			assertEquals(actions[r] + 1, data.getLabel(r), "row " + r);
+			data.getRecord(r, pair);
+			for (int f = 0; f < 3; f++) {
+				assertEquals(values[r][f], data.getFeature(r, f));
+				assertEquals(values[r][f], pair.getInputArray()[f]);
+			}
+			var ideal = new double[3];
+			ideal[actions[r] + 1] = 1;
+			assertArrayEquals(ideal, pair.getIdealArray());
+		}
+
+		int n = 0;
+		for (var record : data.openAdditional()) {
+			assertEquals(values[n][0], record.getInputArray()[0]);
+			n++;
+		}
+		assertEquals(rows, n);
+	}
+
+	@Test
+	void headerOnlyCsvIsEmpty(@TempDir Path dir) throws IOException {
+		var csv = dir.resolve("empty.csv");
+		Files.writeString(csv, "a,b,Action\n");
+		var bin = dir.resolve("empty.bin");
+		BinaryDataSet.convert(csv, bin);
+		var data = BinaryDataSet.open(bin);
+		assertEquals(0, data.getRecordCount());
+		assertEquals(2, data.getInputSize());
+		assertFalse(data.iterator().hasNext());
+	}
+
+	@Test
+	void refusesOtherFilesAndWrites(@TempDir Path dir) throws IOException {
+		var csv = dir.resolve("game.csv");
+		Files.writeString(csv, "a,b,Action\n" + "0.1,0.2,1\n".repeat(10));
+		assertThrows(IOException.class, () -> BinaryDataSet.open(csv));
+
+		var bin = dir.resolve("game.bin");
+		BinaryDataSet.convert(csv, bin);
+		var data = BinaryDataSet.open(bin);
+		assertThrows(UnsupportedOperationException.class, () -> data.add(data.get(0)));
+	}
+}
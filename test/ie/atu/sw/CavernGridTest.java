@@ -0,0 +1,86 @@
+package ie.atu.sw;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+class CavernGridTest {
+	// Scrolls random columns of up to two openings through a grid and a plain list of boolean columns
+	private static void scrollAndCompare(int width, int height) {
+		var grid = new CavernGrid(width, height, 2);
+		var model = new ArrayDeque<boolean[]>();
+		for (int x = 0; x < width; x++) {
+			model.add(new boolean[height]); // A new grid is all open
+		}
+		var random = new SplitMix64(width * 31L + height);
+		for (int step = 0; step < 3 * width; step++) {
+			var column = new boolean[height];
+			Arrays.fill(column, true);
+			grid.pushWall();
+			int top = random.nextInt(height);
+			int bottom = top + 1 + random.nextInt(height - top);
+			grid.carve(top, bottom);
+			for (int y = top; y < bottom; y++) {
+				column[y] = false;
+			}
+			if (bottom + 1 < height && random.nextBoolean()) {
+				int top2 = bottom + 1 + random.nextInt(height - bottom - 1);
+				grid.carve(top2, height);
+				for (int y = top2; y < height; y++) {
+					column[y] = false;
+				}
+			}
+			model.removeFirst();
+			model.addLast(column);
+			assertMatches(grid, model.toArray(new boolean[0][]));
+		}
+	}
+
+	private static void assertMatches(CavernGrid grid, boolean[][] model) {
+		int height = grid.getHeight();
+		for (int x = 0; x < model.length; x++) {
+			for (int y = 0; y < height; y++) {
+				assertEquals(model[x][y], grid.isSolid(x, y), "cell " + x + "," + y);
+				int above = 0;
+				while (y - above - 1 >= 0 && !model[x][y - above - 1]) {
+					above++;
+				}
+				int below = 0;
+				while (y + below + 1 < height && !model[x][y + below + 1]) {
+					below++;
+				}
+				assertEquals(above, grid.gapAbove(x, y), "gap above " + x + "," + y);
+				assertEquals(below, grid.gapBelow(x, y), "gap below " + x + "," + y);
+			}
+		}
+	}
+
+	@Test
+	void matchesPlainColumnsInOneWord() {
+		scrollAndCompare(9, 20);
+	}
+
+	@Test
+	void matchesPlainColumnsAcrossWords() {
+		scrollAndCompare(7, 150); // Three longs per column, the last one partly used
+	}
+
+	@Test
+	void offTheGridIsWall() {
+		var grid = new CavernGrid(5, 10); // Starts all open
+		assertFalse(grid.isSolid(0, 0));
+		assertTrue(grid.isSolid(-1, 0));
+		assertTrue(grid.isSolid(5, 0));
+		assertTrue(grid.isSolid(0, -1));
+		assertTrue(grid.isSolid(0, 10));
+		assertEquals(0, grid.gapAbove(5, 5));
+		assertEquals(0, grid.gapBelow(-1, 5));
+		assertThrows(IndexOutOfBoundsException.class, () -> grid.openings(5));
+	}
+}
@@ -0,0 +1,104 @@
+package ie.atu.sw;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.encog.engine.network.activation.ActivationLinear;
+import org.encog.engine.network.activation.ActivationReLU;
+import org.encog.engine.network.activation.ActivationSigmoid;
+import org.encog.engine.network.activation.ActivationTANH;
+import org.encog.neural.networks.BasicNetwork;
+import org.encog.neural.networks.layers.BasicLayer;
+import org.junit.jupiter.api.Test;
+
+class CompiledNetworkTest {
+	private static final int INPUTS = 5;
+	private static final int ROWS = 200;
+
+	// A network like the autopilot's, with every supported activation, and random weights
+	static BasicNetwork network() {
+		var network = new BasicNetwork();
+		network.addLayer(new BasicLayer(null, true, INPUTS));
+		network.addLayer(new BasicLayer(new ActivationTANH(), true, 34));
+		network.addLayer(new BasicLayer(new ActivationReLU(), true, 12));
+		network.addLayer(new BasicLayer(new ActivationLinear(), false, 3));
+		network.getStructure().finalizeStructure();
+		network.reset(7);
+		return network;
+	}
+
+	// Rows of random inputs in [-2, 2), one after another
+	static double[] inputs() {
+		var random = new SplitMix64(17);
+		var inputs = new double[ROWS * INPUTS];
+		for (int i = 0; i < inputs.length; i++) {
+			inputs[i] = random.nextDouble(-2, 2);
+		}
+		return inputs;
+	}
+
+	static double[] row(double[] inputs, int r) {
+		var row = new double[INPUTS];
+		System.arraycopy(inputs, r * INPUTS, row, 0, INPUTS);
+		return row;
+	}
+
+	@Test
+	void computeMatchesEncog() {
+		var network = network();
+		var compiled = new CompiledNetwork(network);
+		var inputs = inputs();
+		var output = new double[3];
+		for (int r = 0; r < ROWS; r++) {
+			var input = row(inputs, r);
+			network.compute(input, output);
+			assertArrayEquals(output, compiled.compute(input), 1e-12, "row " + r);
+		}
+	}
+
+	@Test
+	void fastTanhStaysClose() {
+		var network = network();
+		var compiled = new CompiledNetwork(network, true);
+		var inputs = inputs();
+		var output = new double[3];
+		for (int r = 0; r < ROWS; r++) {
+			var input = row(inputs, r);
+			network.compute(input, output);
+			assertArrayEquals(output, compiled.compute(input), 1e-3, "row " + r);
+		}
+		for (double x = -10; x <= 10; x += 1e-3) {
+			assertEquals(Math.tanh(x), CompiledNetwork.fastTanh(x), 1e-4, "tanh " + x);
+		}
+	}
+
+	@Test
+	void batchMatchesSingleInputs() {
+		var compiled = new CompiledNetwork(network());
+		if (compiled.isVectorized()) {
+			compiled.setVectorized(false); // VectorKernelTest covers the SIMD path
+		}
+		var inputs = inputs();
+		var outputs = new double[ROWS * 3];
+		compiled.computeBatch(inputs, outputs, ROWS);
+		var single = compiled.copy();
+		for (int r = 0; r < ROWS; r++) {
+			var expected = single.compute(row(inputs, r));
+			for (int o = 0; o < 3; o++) {
+				assertEquals(expected[o], outputs[r * 3 + o], 0, "row " + r);
+			}
+		}
+	}
+
+	@Test
+	void rejectsUnsupportedActivations() {
+		var network = new BasicNetwork();
+		network.addLayer(new BasicLayer(null, true, 2));
+		network.addLayer(new BasicLayer(new ActivationSigmoid(), false, 1));
+		network.getStructure().finalizeStructure();
+		var e = assertThrows(IllegalArgumentException.class, () -> new CompiledNetwork(network));
+		assertTrue(e.getMessage().contains("ActivationSigmoid"));
+	}
+}
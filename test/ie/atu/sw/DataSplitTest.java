@@ -0,0 +1,106 @@
+package ie.atu.sw;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import org.encog.ml.data.MLDataSet;
+import org.encog.ml.data.basic.BasicMLDataSet;
+import org.junit.jupiter.api.Test;
+
+class DataSplitTest {
+	private static final int[] CLASS_ROWS = { 200, 700, 100 }; // Mostly stay, like recorded play
+
+	// A dataset whose only feature is the number of the row, labelled with the classes in turn
+	private static MLDataSet data() {
+		int rows = Arrays.stream(CLASS_ROWS).sum();
+		var input = new double[rows][1];
+		var ideal = new double[rows][3];
+		var left = CLASS_ROWS.clone();
+		for (int row = 0, c = 0; row < rows; row++, c = (c + 1) % 3) {
+			while (left[c] == 0) {
+				c = (c + 1) % 3;
+			}
+			left[c]--;
+			input[row][0] = row;
+			ideal[row][c] = 1;
+		}
+		return new BasicMLDataSet(input, ideal);
+	}
+
+	// The rows of a part, by the feature that holds their number, and the rows of each class in it
+	private static int[] rows(MLDataSet part, int[] perClass) {
+		var rows = new int[(int) part.getRecordCount()];
+		int i = 0;
+		for (var pair : part) {
+			rows[i++] = (int) pair.getInputArray()[0];
+			perClass[NetworkAutopilot.getMaxIndex(pair.getIdealArray())]++;
+		}
+		return rows;
+	}
+
+	@Test
+	void holdoutKeepsTheMixOfEveryClass() {
+		var data = data();
+		var split = DataSplit.holdout(data, 20, 10, 3);
+		var seen = new HashSet<Integer>();
+		MLDataSet[] parts = { split.train(), split.validation(), split.test() };
+		int[] percents = { 70, 20, 10 };
+		for (int p = 0; p < parts.length; p++) {
+			var perClass = new int[3];
+			var rows = rows(parts[p], perClass);
+			for (int c = 0; c < 3; c++) {
+				assertEquals(CLASS_ROWS[c] * percents[p] / 100, perClass[c], "part " + p + ", class " + c);
+			}
+			var sorted = rows.clone();
+			Arrays.sort(sorted);
+			assertArrayEquals(sorted, rows, "rows are read in file order");
+			for (int row : rows) {
+				assertTrue(seen.add(row), "row " + row + " is in two parts");
+			}
+		}
+		assertEquals(data.getRecordCount(), seen.size());
+	}
+
+	@Test
+	void holdoutIsSeeded() {
+		var data = data();
+		var perClass = new int[3];
+		var first = rows(DataSplit.holdout(data, 20, 10, 3).test(), perClass);
+		assertArrayEquals(first, rows(DataSplit.holdout(data, 20, 10, 3).test(), perClass));
+		assertFalse(Arrays.equals(first, rows(DataSplit.holdout(data, 20, 10, 4).test(), perClass)));
+	}
+
+	@Test
+	void foldsAreStratifiedAndComplementary() {
+		var data = data();
+		int k = 7; // Divides none of the classes evenly
+		var folds = DataSplit.folds(data, k, 11);
+		var seen = new HashSet<Integer>();
+		int smallest = Integer.MAX_VALUE, largest = 0;
+		for (int f = 0; f < k; f++) {
+			var perClass = new int[3];
+			var rows = rows(DataSplit.subset(data, folds[f], folds[f].length), perClass);
+			for (int c = 0; c < 3; c++) {
+				assertTrue(Math.abs(perClass[c] * k - CLASS_ROWS[c]) < k, "fold " + f + ", class " + c);
+			}
+			for (int row : rows) {
+				assertTrue(seen.add(row), "row " + row + " is in two folds");
+			}
+			smallest = Math.min(smallest, rows.length);
+			largest = Math.max(largest, rows.length);
+
+			var rest = rows(DataSplit.allBut(data, folds, f), new int[3]);
+			assertEquals(data.getRecordCount(), rest.length + rows.length);
+			var inFold = new HashSet<Integer>();
+			Arrays.stream(rows).forEach(inFold::add);
+			assertTrue(Arrays.stream(rest).noneMatch(inFold::contains), "fold " + f + " is trained on");
+		}
+		assertEquals(data.getRecordCount(), seen.size());
+		assertTrue(largest - smallest <= 1, "folds of " + smallest + " to " + largest + " rows");
+	}
+}
@@ -0,0 +1,92 @@
+package ie.atu.sw;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+
+import org.encog.ml.data.MLDataSet;
+import org.encog.ml.data.basic.BasicMLDataSet;
+import org.junit.jupiter.api.Test;
+
+class DatasetPreprocessorTest {
+	// A dataset of one-feature rows with the given features and classes
+	private static MLDataSet data(double[] values, int[] classes) {
+		var input = new double[values.length][];
+		var ideal = new double[values.length][3];
+		for (int i = 0; i < values.length; i++) {
+			input[i] = new double[] { values[i] };
+			ideal[i][classes[i]] = 1;
+		}
+		return new BasicMLDataSet(input, ideal);
+	}
+
+	// The weight of each distinct row by its feature and class
+	private static HashMap<String, Double> weights(MLDataSet data) {
+		var weights = new HashMap<String, Double>();
+		for (int i = 0; i < data.getRecordCount(); i++) {
+			var pair = data.get(i);
+			String row = pair.getInputArray()[0] + "/" + NetworkAutopilot.getMaxIndex(pair.getIdealArray());
+			assertNull(weights.put(row, pair.getSignificance()), "row " + row + " is there twice");
+		}
+		return weights;
+	}
+
+	@Test
+	void dedupeWeighsRowsByTheirCopies() {
+		var data = data(new double[] { 0.5, 0.5, 0.25, 0.5, 0.25, 0.75 }, new int[] { 1, 1, 0, 1, 0, 1 });
+		var preprocessor = new DatasetPreprocessor(DatasetPreprocessor.Mode.DEDUPE, 1);
+		var weights = weights(preprocessor.process(data));
+		assertEquals(3, weights.size());
+		// Counts of 3, 2 and 1, scaled to average 1 over the three rows
+		assertEquals(1.5, weights.get("0.5/1"), 1e-12);
+		assertEquals(1.0, weights.get("0.25/0"), 1e-12);
+		assertEquals(0.5, weights.get("0.75/1"), 1e-12);
+	}
+
+	@Test
+	void copiesOfCollidingRowsStillMerge() {
+		/*
+		 * DataFarm.key() of a single feature is mix(action * 31 + the bits of the
+		 * value), and mix() is a bijection, so a stay row one step of 31 below an
+		 * up row in the bits of its value has the same hash.
+		 */
+		double up = 1.0;
+		double stay = Double.longBitsToDouble(Double.doubleToLongBits(up) - 31);
+		assertEquals(DataFarm.key(new double[] { up }, -1), DataFarm.key(new double[] { stay }, 0));
+
+		var data = data(new double[] { up, stay, stay, up, stay, stay }, new int[] { 0, 1, 1, 0, 1, 1 });
+		var preprocessor = new DatasetPreprocessor(DatasetPreprocessor.Mode.DEDUPE, 1);
+		var weights = weights(preprocessor.process(data));
+		assertEquals(2, weights.size(), "the copies of the colliding row were kept apart");
+		assertEquals(2.0 / 3, weights.get(up + "/0"), 1e-12);
+		assertEquals(4.0 / 3, weights.get(stay + "/1"), 1e-12);
+		var report = preprocessor.report();
+		assertTrue(report.contains("2 distinct"), report);
+		assertTrue(report.contains("1 hash collisions"), report);
+		assertTrue(report.contains("0 ambiguous"), report);
+	}
+
+	@Test
+	void weightEvensOutTheClasses() {
+		var data = data(new double[] { 0.1, 0.2, 0.3, 0.4, 0.5, 0.6, 0.7, 0.8 }, new int[] { 1, 1, 1, 1, 1, 1, 0, 2 });
+		var preprocessor = new DatasetPreprocessor(DatasetPreprocessor.Mode.WEIGHT, 1);
+		var processed = preprocessor.process(data);
+		var perClass = new double[3];
+		for (var pair : processed) {
+			perClass[NetworkAutopilot.getMaxIndex(pair.getIdealArray())] += pair.getSignificance();
+		}
+		assertEquals(perClass[0], perClass[1], 1e-12);
+		assertEquals(perClass[0], perClass[2], 1e-12);
+		assertEquals(8, perClass[0] + perClass[1] + perClass[2], 1e-12);
+	}
+
+	@Test
+	void findsAmbiguousRows() {
+		var data = data(new double[] { 0.5, 0.5, 0.25 }, new int[] { 1, 2, 1 });
+		var preprocessor = new DatasetPreprocessor(DatasetPreprocessor.Mode.DEDUPE, 1);
+		preprocessor.process(data);
+		assertTrue(preprocessor.report().contains("2 ambiguous"), preprocessor.report());
+	}
+}
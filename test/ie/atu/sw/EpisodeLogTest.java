@@ -0,0 +1,89 @@
+package ie.atu.sw;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Properties;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class EpisodeLogTest {
+	// A pilot that moves at random, but the same way for the same seed
+	private static Autopilot randomPilot(long seed) {
+		var random = new SplitMix64(seed);
+		return sim -> (int) Long.remainderUnsigned(random.nextLong(), 3) - 1;
+	}
+
+	// Everything a replay must get back: the time, the plane and every cell of the cave
+	private static String state(Simulation sim) {
+		var s = new StringBuilder(sim.getTime() + " " + sim.getPlayerRow() + " " + sim.isGameOver() + "\n");
+		for (int y = 0; y < sim.getHeight(); y++) {
+			for (int x = 0; x < sim.getWidth(); x++) {
+				s.append(sim.isSolid(x, y) ? '#' : '.');
+			}
+			s.append('\n');
+		}
+		return s.toString();
+	}
+
+	private static WorldConfig forkingWorld() {
+		var settings = new Properties();
+		settings.setProperty("width", "60");
+		settings.setProperty("height", "40");
+		settings.setProperty("lanes", "3");
+		settings.setProperty("forkChance", "0.1");
+		return WorldConfig.from(settings);
+	}
+
+	@Test
+	void replayEndsInTheRecordedState() {
+		var world = forkingWorld();
+		var sim = world.newSimulation(99);
+		var log = new EpisodeLog(world, 99);
+		sim.setRecorder(log);
+		sim.play(randomPilot(5), 500);
+
+		assertEquals(sim.getTime(), log.getTicks());
+		assertEquals(state(sim), state(log.replay()));
+	}
+
+	@Test
+	void replayStopsAtAnyTick() {
+		var sim = new Simulation(11);
+		var log = new EpisodeLog(11);
+		sim.setRecorder(log);
+		var pilot = randomPilot(8);
+		var states = new ArrayList<String>();
+		states.add(state(sim));
+		while (sim.step(pilot) && sim.getTime() < 300) {
+			states.add(state(sim));
+		}
+		states.add(state(sim));
+
+		for (int t = 0; t < states.size(); t += 7) {
+			assertEquals(states.get(t), state(log.replay(t)), "tick " + t);
+		}
+	}
+
+	@Test
+	void savedLogReplaysTheSame(@TempDir Path dir) throws IOException {
+		var world = forkingWorld();
+		var sim = world.newSimulation(1234);
+		var log = new EpisodeLog(world, 1234);
+		sim.setRecorder(log);
+		sim.play(randomPilot(1), 2000);
+		assertTrue(log.getTicks() > 0);
+
+		var file = dir.resolve("episode.log");
+		log.save(file);
+		var loaded = EpisodeLog.load(file);
+		assertEquals(log.getSeed(), loaded.getSeed());
+		assertEquals(log.getTicks(), loaded.getTicks());
+		assertEquals(world.toString(), loaded.getWorld().toString());
+		assertEquals(state(sim), state(loaded.replay()));
+	}
+}
@@ -0,0 +1,50 @@
+package ie.atu.sw;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+class GameLoopTest {
+	@Test
+	void ticksEveryStepAndForgetsKeysPressedAtACrash() throws InterruptedException {
+		var sim = new Simulation(3); // With nobody flying, the plane soon hits a wall
+		var loop = new GameLoop(sim);
+		loop.setSpeed(GameLoop.Speed.UNCAPPED);
+		var moves = new AtomicInteger();
+		var lastTick = new AtomicLong();
+		var gaps = new AtomicInteger();
+		var crashed = new CountDownLatch(1);
+		loop.setMoveListener((state, move) -> moves.incrementAndGet());
+		loop.setTickListener((state, time) -> gaps.addAndGet(time == lastTick.getAndSet(time) + 1 ? 0 : 1));
+		loop.setCrashListener(crashed::countDown);
+
+		loop.move(1); // Before the first tick, so it is made in it
+		loop.start();
+		try {
+			assertTrue(crashed.await(10, TimeUnit.SECONDS));
+			assertEquals(1, moves.get());
+			assertEquals(0, gaps.get(), "a tick was missed by the tick listener");
+			assertTrue(lastTick.get() > 0);
+
+			for (int i = 0; i < 5; i++) {
+				loop.move(-1); // At the wreck
+			}
+			var resumed = new CountDownLatch(10); // Walls take longer than that to scroll in to the plane
+			loop.submit(() -> {
+				sim.reset(4);
+				lastTick.set(0);
+				loop.setTickListener((state, time) -> resumed.countDown());
+			});
+			assertTrue(resumed.await(10, TimeUnit.SECONDS));
+			assertEquals(1, moves.get(), "keys pressed at the wreck were played in the next game");
+		} finally {
+			loop.stop();
+		}
+	}
+}
@@ -0,0 +1,54 @@
+package ie.atu.sw;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class LatencyHistogramTest {
+	@Test
+	void bucketsTileTheWholeRange() {
+		int last = LatencyHistogram.index(Long.MAX_VALUE);
+		assertEquals(Long.MAX_VALUE, LatencyHistogram.highestValue(last));
+		assertEquals(0, LatencyHistogram.index(0));
+		for (int i = 0; i < last; i++) {
+			long highest = LatencyHistogram.highestValue(i);
+			assertEquals(i, LatencyHistogram.index(highest), "bucket " + i);
+			assertEquals(i + 1, LatencyHistogram.index(highest + 1), "bucket after " + i);
+		}
+	}
+
+	@Test
+	void bucketsAreWithinThreePercent() {
+		var random = new SplitMix64(1);
+		for (int n = 0; n < 100_000; n++) {
+			long value = random.nextLong() >>> 1 + random.nextInt(63); // Every magnitude of positive long
+			long highest = LatencyHistogram.highestValue(LatencyHistogram.index(value));
+			assertTrue(highest >= value, "value " + value);
+			assertTrue(highest - value <= value / 32, "value " + value + " reported as " + highest);
+		}
+	}
+
+	@Test
+	void percentilesNeverUnderstate() {
+		var histogram = new LatencyHistogram("test");
+		for (long nanos = 1; nanos <= 10_000; nanos++) {
+			histogram.record(nanos * 1000);
+		}
+		assertEquals(10_000, histogram.getCount());
+		assertEquals(10_000_000, histogram.max());
+		assertEquals(5_000_500, histogram.mean(), 1e-6);
+		for (double percent : new double[] { 1, 50, 90, 99, 99.9 }) {
+			long exact = (long) Math.ceil(percent * 100) * 1000;
+			long reported = histogram.percentile(percent);
+			assertTrue(reported >= exact && reported - exact <= exact / 32, percent + "% reported as " + reported);
+		}
+		assertEquals(histogram.max(), histogram.percentile(100));
+
+		histogram.record(-5); // Counts as zero
+		assertEquals(0, histogram.percentile(0));
+		histogram.reset();
+		assertEquals(0, histogram.getCount());
+		assertEquals(0, histogram.percentile(99));
+	}
+}
@@ -0,0 +1,61 @@
+package ie.atu.sw;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashSet;
+
+import org.junit.jupiter.api.Test;
+
+class LongHashSetTest {
+	// Adds the keys to a LongHashSet and a HashSet and checks that they agree throughout
+	private static void addAndCompare(long[] keys) {
+		var set = new LongHashSet(4); // Small, so it has to grow many times
+		var expected = new HashSet<Long>();
+		for (long key : keys) {
+			assertEquals(expected.add(key), set.add(key), "key " + key);
+			assertEquals(expected.size(), set.size());
+		}
+		for (long key : keys) {
+			assertTrue(set.contains(key), "key " + key);
+			assertEquals(expected.contains(key + 1), set.contains(key + 1), "key " + (key + 1));
+		}
+	}
+
+	@Test
+	void matchesHashSetOnHashes() {
+		var random = new SplitMix64(5);
+		var keys = new long[50_000];
+		for (int i = 0; i < keys.length; i++) {
+			keys[i] = i % 10 == 0 ? keys[i / 2] : random.nextLong(); // Every tenth key again
+		}
+		addAndCompare(keys);
+	}
+
+	@Test
+	void probesPastKeysInTheSameSlot() {
+		// The low bits pick the slot, so these all start in slot 0 and chain along the table
+		var keys = new long[5000];
+		for (int i = 0; i < keys.length; i++) {
+			keys[i] = (long) (i % 2500 + 1) << 32;
+		}
+		addAndCompare(keys);
+		var set = new LongHashSet(4);
+		set.add(-1L); // The last slot, so a probe from it wraps round to slot 0
+		set.add(-1L << 40 | 0xFFFFFFFFL);
+		assertTrue(set.contains(-1L << 40 | 0xFFFFFFFFL));
+		assertFalse(set.contains(-1L << 41 | 0xFFFFFFFFL));
+	}
+
+	@Test
+	void keepsZeroApart() {
+		var set = new LongHashSet();
+		assertFalse(set.contains(0));
+		assertTrue(set.add(0));
+		assertFalse(set.add(0));
+		assertTrue(set.contains(0));
+		assertEquals(1, set.size());
+		addAndCompare(new long[] { 0, 1, 0, 1024, 0, 2048 });
+	}
+}
@@ -0,0 +1,48 @@
+package ie.atu.sw;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.HashMap;
+
+import org.junit.jupiter.api.Test;
+
+class LongIntHashMapTest {
+	@Test
+	void matchesHashMap() {
+		var map = new LongIntHashMap(4); // Small, so it has to grow many times
+		var expected = new HashMap<Long, Integer>();
+		var random = new SplitMix64(9);
+		var keys = new long[30_000];
+		for (int i = 0; i < keys.length; i++) {
+			// Random hashes, keys whose low bits all pick slot 0, and some keys again
+			keys[i] = i % 3 == 0 ? random.nextLong() : i % 3 == 1 ? (long) (i % 1000 + 1) << 32 : keys[i / 2];
+			map.put(keys[i], i);
+			expected.put(keys[i], i);
+			assertEquals(expected.size(), map.size());
+		}
+		for (long key : keys) {
+			assertEquals(expected.get(key), map.get(key), "key " + key);
+			assertEquals(expected.getOrDefault(key + 1, -1), map.get(key + 1), "key " + (key + 1));
+		}
+	}
+
+	@Test
+	void keepsZeroApart() {
+		var map = new LongIntHashMap();
+		assertEquals(-1, map.get(0));
+		map.put(0, 5);
+		map.put(0, 7);
+		map.put(1024, 3); // The slot 0 would pick
+		assertEquals(7, map.get(0));
+		assertEquals(3, map.get(1024));
+		assertEquals(2, map.size());
+	}
+
+	@Test
+	void rejectsNegativeValues() {
+		var map = new LongIntHashMap();
+		assertThrows(IllegalArgumentException.class, () -> map.put(1, -1));
+		assertEquals(0, map.size());
+	}
+}
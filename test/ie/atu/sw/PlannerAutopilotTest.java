@@ -0,0 +1,156 @@
+package ie.atu.sw;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.util.Properties;
+
+import org.junit.jupiter.api.Test;
+
+/*
+ * The planner scrolls its safe rows along with the cave instead of searching
+ * every tick. A copy has none yet and does the full search(), so asking a copy
+ * for the move of every tick, and comparing every safe row of the two, checks
+ * the incremental update against it.
+ */
+class PlannerAutopilotTest {
+	private static WorldConfig world(String... settings) {
+		var properties = new Properties();
+		for (int i = 0; i < settings.length; i += 2) {
+			properties.setProperty(settings[i], settings[i + 1]);
+		}
+		return WorldConfig.from(properties);
+	}
+
+	/*
+	 * Carves up to three short openings at random rows in every column. The caves
+	 * of the game never lead into a dead end, so every open row is safe there,
+	 * but here most are not, and a column entering the window changes the safe
+	 * rows of many columns behind it.
+	 */
+	private static class PocketGenerator implements CavernGenerator {
+		private final int height;
+		private final int[] tops = new int[3];
+		private final int[] bottoms = new int[3];
+		private int openings;
+		private SplitMix64 random;
+		private long seed;
+
+		PocketGenerator(int height, long seed) {
+			this.height = height;
+			reseed(seed);
+		}
+
+		public void next() {
+			openings = 0;
+			for (int row = random.nextInt(height / 2); openings < 3 && row < height; row += 2 + random.nextInt(6)) {
+				tops[openings] = row;
+				row = Math.min(height, row + 1 + random.nextInt(4));
+				bottoms[openings++] = row;
+			}
+		}
+
+		public int getTop() {
+			return tops[0];
+		}
+
+		public int getBottom() {
+			return bottoms[0];
+		}
+
+		public int getOpeningCount() {
+			return openings;
+		}
+
+		public int getTop(int i) {
+			return tops[i];
+		}
+
+		public int getBottom(int i) {
+			return bottoms[i];
+		}
+
+		public int getMaxOpenings() {
+			return 3;
+		}
+
+		public long getSeed() {
+			return seed;
+		}
+
+		public void reseed(long seed) {
+			this.seed = seed;
+			this.random = new SplitMix64(seed);
+		}
+	}
+
+	// Flies the incremental planner for the given ticks, resetting the game after each crash
+	private static void flyAndCompare(WorldConfig world, PlannerAutopilot planner, long ticks) {
+		flyAndCompare(world.newSimulation(1), planner, ticks);
+	}
+
+	private static void flyAndCompare(Simulation sim, PlannerAutopilot planner, long ticks) {
+		for (long flown = 0, seed = 2; flown < ticks; flown++) {
+			sim.tick();
+			int move = planner.nextMove(sim);
+			var full = planner.copy();
+			assertEquals(full.nextMove(sim), move, "tick " + sim.getTime() + " of seed " + sim.getSeed());
+			assertEquals(move, planner.nextMove(sim), "asked twice in a tick");
+			for (int k = 0; k < full.getWindow(); k++) {
+				for (int row = 0; row < sim.getHeight(); row++) {
+					if (full.isSafe(k, row) != planner.isSafe(k, row)) {
+						fail("Row " + row + " of column " + k + " at tick " + sim.getTime() + " of seed "
+								+ sim.getSeed());
+					}
+				}
+			}
+			sim.move(move);
+			if (sim.checkCollision()) {
+				sim.reset(seed++);
+			}
+		}
+	}
+
+	@Test
+	void scrollMatchesSearchOnTheOriginalWorld() {
+		flyAndCompare(new WorldConfig(), new PlannerAutopilot(), 3000);
+		flyAndCompare(new WorldConfig(), new PlannerAutopilot(4), 3000);
+	}
+
+	@Test
+	void scrollMatchesSearchInForkingLanes() {
+		var world = world("width", "80", "height", "40", "minSpace", "3", "lanes", "4", "forkChance", "0.1");
+		flyAndCompare(world, new PlannerAutopilot(), 3000);
+		flyAndCompare(world, new PlannerAutopilot(10), 3000);
+	}
+
+	@Test
+	void scrollMatchesSearchAcrossWords() {
+		// 150 rows are three longs per column, so safe rows carry between words
+		var world = world("width", "60", "height", "150", "minSpace", "2", "lanes", "6", "forkChance", "0.2");
+		flyAndCompare(world, new PlannerAutopilot(), 2000);
+	}
+
+	@Test
+	void scrollMatchesSearchAmongDeadEnds() {
+		flyAndCompare(new Simulation(40, 30, new PocketGenerator(30, 1)), new PlannerAutopilot(), 3000);
+		flyAndCompare(new Simulation(40, 30, new PocketGenerator(30, 1)), new PlannerAutopilot(6), 3000);
+		flyAndCompare(new Simulation(30, 150, new PocketGenerator(150, 1)), new PlannerAutopilot(), 2000);
+	}
+
+	@Test
+	void windowStopsAtTheEdgeOfTheGrid() {
+		var sim = new Simulation(3);
+		sim.tick();
+		var all = new PlannerAutopilot();
+		all.nextMove(sim);
+		assertEquals(Simulation.MODEL_WIDTH - sim.getPlayerColumn(), all.getWindow());
+		var some = new PlannerAutopilot(4);
+		some.nextMove(sim);
+		assertEquals(5, some.getWindow());
+		var deep = new PlannerAutopilot(1000);
+		deep.nextMove(sim);
+		assertTrue(deep.getWindow() <= Simulation.MODEL_WIDTH - sim.getPlayerColumn());
+	}
+}
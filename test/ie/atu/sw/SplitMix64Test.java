@@ -0,0 +1,42 @@
+package ie.atu.sw;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+
+class SplitMix64Test {
+	private static long[] draw(SplitMix64 random, int n) {
+		var values = new long[n];
+		for (int i = 0; i < n; i++) {
+			values[i] = random.nextLong();
+		}
+		return values;
+	}
+
+	@Test
+	void matchesSplittableRandom() {
+		// The same algorithm, so the same seed must give the same sequence
+		var expected = new SplittableRandom(42);
+		var random = new SplitMix64(42);
+		for (int i = 0; i < 1000; i++) {
+			assertEquals(expected.nextLong(), random.nextLong());
+		}
+	}
+
+	@Test
+	void sameSeedSameSequence() {
+		assertArrayEquals(draw(new SplitMix64(-7), 100), draw(new SplitMix64(-7), 100));
+	}
+
+	@Test
+	void jumpSkipsAhead() {
+		var stepped = new SplitMix64(3);
+		draw(stepped, 12345);
+		var jumped = new SplitMix64(3);
+		jumped.jump(12345);
+		assertArrayEquals(draw(stepped, 10), draw(jumped, 10));
+	}
+}
@@ -0,0 +1,122 @@
+package ie.atu.sw;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class TrainingDataWriterTest {
+	private static final String[] HEADERS = { "a", "b", "Action" };
+
+	@Test
+	void writesHeaderOnceAndEverySample(@TempDir Path dir) throws IOException {
+		var file = dir.resolve("data/game.csv"); // The directory is made on the way
+		try (var writer = new TrainingDataWriter(file, HEADERS)) {
+			for (int i = 0; i < 1000; i++) {
+				assertTrue(writer.submit(new double[] { i, -i }, i % 3 - 1));
+			}
+		}
+		var appender = new TrainingDataWriter(file, HEADERS);
+		appender.submit(new double[] { 0.5, 1 }, 1);
+		appender.close();
+		assertEquals(1, appender.getWritten());
+
+		var lines = Files.readAllLines(file);
+		assertEquals(1002, lines.size());
+		assertEquals("a,b,Action", lines.get(0));
+		assertEquals("0.0,0.0,-1", lines.get(1));
+		assertEquals("999.0,-999.0,-1", lines.get(1000));
+		assertEquals("0.5,1.0,1", lines.get(1001));
+	}
+
+	@Test
+	void refusesFileOfOtherFeatures(@TempDir Path dir) throws IOException {
+		var file = dir.resolve("game.csv");
+		Files.writeString(file, "x,y,z,Action\n");
+		assertThrows(IOException.class, () -> new TrainingDataWriter(file, HEADERS));
+	}
+
+	@Test
+	void dropsAndCountsAfterClose(@TempDir Path dir) throws IOException {
+		var writer = new TrainingDataWriter(dir.resolve("game.csv"), HEADERS);
+		writer.close();
+		assertFalse(writer.submit(new double[] { 1, 2 }, 0));
+		assertEquals(1, writer.getDropped());
+		assertThrows(IllegalStateException.class, () -> writer.put(new double[] { 1, 2 }, 0));
+		writer.close(); // Closing again does nothing
+	}
+
+	@Test
+	void closeLosesNoAcceptedSample(@TempDir Path dir) throws Exception {
+		for (int round = 0; round < 20; round++) {
+			var file = dir.resolve("race" + round + ".csv");
+			var writer = new TrainingDataWriter(file, 4, 2, 10, HEADERS); // A tiny queue, so put() has to wait
+			var accepted = new AtomicLong();
+			var stop = new AtomicBoolean();
+			List<Thread> producers = new ArrayList<>();
+			for (int p = 0; p < 4; p++) {
+				boolean blocking = p % 2 == 0;
+				var producer = new Thread(() -> {
+					try {
+						for (int i = 0; !stop.get(); i++) {
+							if (blocking) {
+								writer.put(new double[] { i, 0 }, 0);
+								accepted.incrementAndGet();
+							} else if (writer.submit(new double[] { i, 1 }, 1)) {
+								accepted.incrementAndGet();
+							}
+						}
+					} catch (IllegalStateException | InterruptedException e) {
+						// Closed or interrupted while waiting, so the last sample was not accepted
+					}
+				});
+				producers.add(producer);
+				producer.start();
+			}
+			Thread.sleep(5);
+			assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+				writer.close();
+				stop.set(true);
+				for (var producer : producers) {
+					producer.interrupt();
+					producer.join();
+				}
+			});
+			assertEquals(accepted.get(), writer.getWritten());
+			assertEquals(accepted.get() + 1, Files.readAllLines(file).size());
+		}
+	}
+
+	@Test
+	void reportsFailureToWrite() throws Exception {
+		var full = Path.of("/dev/full"); // Every write fails with "No space left on device"
+		assumeTrue(Files.isWritable(full));
+		var writer = new TrainingDataWriter(full, 4, 2, 10);
+		assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+			assertThrows(UncheckedIOException.class, () -> {
+				for (int i = 0; i < 1_000_000; i++) {
+					writer.put(new double[] { i }, 0);
+				}
+			});
+		});
+		assertFalse(writer.submit(new double[] { 1 }, 0));
+		assertThrows(UncheckedIOException.class, writer::close);
+		assertEquals(0, writer.getWritten());
+		assertTrue(writer.getDropped() > 0);
+	}
+}
@@ -0,0 +1,58 @@
+package ie.atu.sw;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assumptions.assumeFalse;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import org.junit.jupiter.api.Test;
+
+/*
+ * Runs the SIMD path of CompiledNetwork.computeBatch() against Encog and the
+ * scalar path. The JVM running the tests needs --add-modules
+ * jdk.incubator.vector for these, and otherwise only the fallback is checked.
+ */
+class VectorKernelTest {
+	private static final int ROWS = 197; // Not a whole number of vectors, so the last one is partly used
+
+	@Test
+	void vectorBatchMatchesEncog() {
+		assumeTrue(CompiledNetwork.VECTOR_API);
+		var network = CompiledNetworkTest.network();
+		var compiled = new CompiledNetwork(network);
+		compiled.setVectorized(true);
+		var inputs = CompiledNetworkTest.inputs();
+		var outputs = new double[ROWS * 3];
+		compiled.computeBatch(inputs, outputs, ROWS);
+
+		var expected = new double[3];
+		for (int r = 0; r < ROWS; r++) {
+			network.compute(CompiledNetworkTest.row(inputs, r), expected);
+			var actual = new double[3];
+			System.arraycopy(outputs, r * 3, actual, 0, 3);
+			assertArrayEquals(expected, actual, 1e-12, "row " + r);
+		}
+	}
+
+	@Test
+	void vectorFastTanhMatchesScalar() {
+		assumeTrue(CompiledNetwork.VECTOR_API);
+		var scalar = new CompiledNetwork(CompiledNetworkTest.network(), true);
+		scalar.setVectorized(false);
+		var vector = scalar.copy();
+		vector.setVectorized(true);
+		var inputs = CompiledNetworkTest.inputs();
+		var expected = new double[ROWS * 3];
+		var actual = new double[ROWS * 3];
+		scalar.computeBatch(inputs, expected, ROWS);
+		vector.computeBatch(inputs, actual, ROWS);
+		assertArrayEquals(expected, actual, 0);
+	}
+
+	@Test
+	void fallsBackWithoutTheModule() {
+		assumeFalse(CompiledNetwork.VECTOR_API);
+		var compiled = new CompiledNetwork(CompiledNetworkTest.network());
+		assertThrows(IllegalStateException.class, () -> compiled.setVectorized(true));
+	}
+}
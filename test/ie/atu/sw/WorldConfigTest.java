@@ -0,0 +1,49 @@
+package ie.atu.sw;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Properties;
+
+import org.junit.jupiter.api.Test;
+
+class WorldConfigTest {
+	private static WorldConfig world(String... settings) {
+		var properties = new Properties();
+		for (int i = 0; i < settings.length; i += 2) {
+			properties.setProperty(settings[i], settings[i + 1]);
+		}
+		return WorldConfig.from(properties);
+	}
+
+	@Test
+	void leavesRoomAheadOfThePlane() {
+		int ahead = ClassicFeatures.INSTANCE.getHorizon();
+		var world = world("playerColumn", String.valueOf(Simulation.MODEL_WIDTH - 1 - ahead));
+		var sim = world.newSimulation(1);
+		sim.tick();
+		assertEquals(ClassicFeatures.INSTANCE.getFeatureCount(), sim.sample().length);
+
+		for (int column = Simulation.MODEL_WIDTH - ahead; column <= Simulation.MODEL_WIDTH; column++) {
+			var setting = String.valueOf(column);
+			assertThrows(IllegalArgumentException.class, () -> world("playerColumn", setting), "column " + setting);
+		}
+		assertThrows(IllegalArgumentException.class, () -> new Simulation(ahead, 20, 1L));
+	}
+
+	@Test
+	void rejectsFeaturesThatLookOffTheGrid() {
+		var sim = world("width", "40").newSimulation(1);
+		sim.setFeatures(FeatureExtractor.forName("lookahead:19"));
+		assertThrows(IllegalArgumentException.class, () -> sim.setFeatures(FeatureExtractor.forName("lookahead:20")));
+	}
+
+	@Test
+	void rejectsWorldsWithNoRoomForACave() {
+		assertThrows(IllegalArgumentException.class, () -> world("height", "6"));
+		assertThrows(IllegalArgumentException.class, () -> world("minSpace", "0"));
+		assertThrows(IllegalArgumentException.class, () -> world("lanes", "0"));
+		assertThrows(IllegalArgumentException.class, () -> world("forkChance", "1.5"));
+		assertThrows(IllegalArgumentException.class, () -> world("depth", "3"));
+	}
+}